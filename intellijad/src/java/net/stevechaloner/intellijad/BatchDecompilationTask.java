@@ -0,0 +1,103 @@
+package net.stevechaloner.intellijad;
+
+import java.io.File;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import net.stevechaloner.intellijad.config.Config;
+import net.stevechaloner.intellijad.console.ConsoleContext;
+import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.console.IntelliJadConsole;
+import net.stevechaloner.intellijad.decompilers.BatchDecompilationDescriptor;
+import net.stevechaloner.intellijad.decompilers.BatchDecompiler;
+import net.stevechaloner.intellijad.decompilers.DecompilationException;
+import net.stevechaloner.intellijad.environment.EnvironmentContext;
+import net.stevechaloner.intellijad.environment.EnvironmentValidator;
+import net.stevechaloner.intellijad.environment.ValidationResult;
+import net.stevechaloner.intellijad.util.FileSystemUtil;
+import net.stevechaloner.intellijad.util.PluginUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decompiles a library or package in the background.
+ */
+public class BatchDecompilationTask extends Task.Backgroundable {
+    private final Logger LOG = Logger.getInstance(getClass());
+
+    private final IntelliJad intelliJad;
+    private final EnvironmentContext envContext;
+    private final BatchDecompilationDescriptor descriptor;
+
+    public BatchDecompilationTask(IntelliJad intelliJad, EnvironmentContext envContext, BatchDecompilationDescriptor descriptor) {
+        super(envContext.getProject(), IntelliJadResourceBundle.message("message.decompile.text.busyText"), true);
+        this.intelliJad = intelliJad;
+        this.envContext = envContext;
+        this.descriptor = descriptor;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        indicator.setFraction(0.0);
+
+        Project project = envContext.getProject();
+        if (!IntelliJad.isPrimed(project)) {
+            intelliJad.primeProject(project);
+        }
+
+        IntelliJadConsole console = intelliJad.getConsoleManager().getConsole(project);
+        ConsoleContext consoleContext = console.createConsoleContext("message.batch",
+                descriptor.getClassCount());
+        Config config = PluginUtil.getConfig(project);
+        ValidationResult validationResult = EnvironmentValidator.validateEnvironment(config,
+                envContext,
+                consoleContext);
+
+        if (!validationResult.isCancelled() && validationResult.isValid()) {
+            prepareOutputDirectory(config, project);
+            if (IntelliJadConstants.DECOMPILATION_DISABLED.get(project, false)) {
+                consoleContext.addSectionMessage(ConsoleEntryType.ERROR,
+                        "error",
+                        "Target directory " + config.getOutputDirectory() + " creation failed");
+            } else {
+                try {
+                    new BatchDecompiler(intelliJad.getAppInvoker(), intelliJad.getWorkerPool()).decompile(descriptor,
+                            project,
+                            consoleContext,
+                            indicator);
+                } catch (DecompilationException e) {
+                    LOG.warn("Batch decompilation failed", e);
+                    consoleContext.addSectionMessage(ConsoleEntryType.ERROR,
+                            "error",
+                            e.getMessage());
+                } catch (ProcessCanceledException e) {
+                    consoleContext.addSectionMessage(ConsoleEntryType.INFO,
+                            "message.batch-cancelled");
+                }
+            }
+            consoleContext.close();
+            intelliJad.checkConsole(config, console, consoleContext);
+        }
+        indicator.setFraction(1.0);
+    }
+
+    private void prepareOutputDirectory(Config config, Project project) {
+        LocalFileSystem lfs = LocalFileSystem.getInstance();
+        String outputDir = config.getOutputDirectory();
+        if (StringUtil.isEmptyOrSpaces(outputDir)) {
+            intelliJad.handleDisabledVirtualFs(lfs, config, project);
+        } else if (!new File(outputDir).isDirectory()) {
+            File targetDir = config.isCreateOutputDirectory() ? FileSystemUtil.createTargetDir(config) : null;
+            if (targetDir != null) {
+                lfs.refreshAndFindFileByIoFile(targetDir);
+            } else {
+                intelliJad.handleDisabledVirtualFs(lfs, config, project);
+            }
+        }
+    }
+}
@@ -3,6 +3,9 @@ package net.stevechaloner.intellijad;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileTypes.StdFileTypes;
+import com.intellij.openapi.progress.PerformInBackgroundOption;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
@@ -10,10 +13,21 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.testFramework.LightVirtualFile;
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import net.stevechaloner.intellijad.classfile.ClassSkeleton;
+import net.stevechaloner.intellijad.config.CodeStyle;
 import net.stevechaloner.intellijad.config.Config;
 import net.stevechaloner.intellijad.console.ConsoleContext;
 import net.stevechaloner.intellijad.console.ConsoleEntryType;
@@ -22,10 +36,13 @@ import net.stevechaloner.intellijad.console.IntelliJadConsole;
 import net.stevechaloner.intellijad.decompilers.DecompilationContext;
 import net.stevechaloner.intellijad.decompilers.DecompilationDescriptor;
 import net.stevechaloner.intellijad.decompilers.DecompilationEngine;
+import net.stevechaloner.intellijad.decompilers.DecompilationLane;
 import net.stevechaloner.intellijad.decompilers.DecompilationException;
 import net.stevechaloner.intellijad.decompilers.DecompilationResult;
+import net.stevechaloner.intellijad.decompilers.DecompilationWorkerPool;
 import net.stevechaloner.intellijad.decompilers.Decompiler;
 import net.stevechaloner.intellijad.decompilers.FileSystemDecompiler;
+import net.stevechaloner.intellijad.decompilers.ScratchSpaceManager;
 import net.stevechaloner.intellijad.environment.EnvironmentContext;
 import net.stevechaloner.intellijad.environment.EnvironmentValidator;
 import net.stevechaloner.intellijad.environment.ValidationResult;
@@ -33,11 +50,17 @@ import net.stevechaloner.intellijad.util.AppInvoker;
 import net.stevechaloner.intellijad.util.FileSystemUtil;
 import net.stevechaloner.intellijad.util.PluginUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Created by Lukasz on 25.02.14.
  */
-public class DecompilationTask extends Task.Modal implements Callable<DecompilationResult> {
+public class DecompilationTask extends Task.ConditionalModal implements Callable<DecompilationResult> {
+    /**
+     * How often a queued or running decompilation is checked for cancellation, in milliseconds.
+     */
+    private static final long CANCEL_CHECK_INTERVAL = 100L;
+
     private final Logger LOG = Logger.getInstance(getClass());
 
     private final IntelliJad intelliJad;
@@ -45,34 +68,171 @@ public class DecompilationTask extends Task.Modal implements Callable<Decompilat
     private final DecompilationDescriptor descriptor;
     private final AppInvoker appInvoker;
     private final ConsoleManager consoleManager;
+    private final String key;
 
     private FutureTask<DecompilationResult> result;
 
-    private ProgressIndicator indicator;
+    private volatile ProgressIndicator indicator;
+
+    /**
+     * True while nobody has explicitly asked for the result, so the decompilation may be cancelled in favour of
+     * one that has.
+     */
+    private volatile boolean speculative;
+
+    /**
+     * The job on the worker pool, once it has been submitted.
+     */
+    private volatile Future<VirtualFile> job;
 
-    public DecompilationTask(IntelliJad intelliJad, EnvironmentContext envContext, DecompilationDescriptor descriptor) {
-        super(envContext.getProject(), IntelliJadResourceBundle.message("message.decompile.text.busyText"), false);
+    public DecompilationTask(IntelliJad intelliJad, final EnvironmentContext envContext, DecompilationDescriptor descriptor) {
+        super(envContext.getProject(),
+                IntelliJadResourceBundle.message("message.decompile.text.busyText"),
+                true,
+                backgroundOption(envContext.getProject()));
         this.intelliJad = intelliJad;
         this.envContext = envContext;
         this.descriptor = descriptor;
         appInvoker = intelliJad.getAppInvoker();
         consoleManager = intelliJad.getConsoleManager();
 
-        result = new FutureTask<DecompilationResult>(this);
+        speculative = Boolean.TRUE.equals(envContext.getUserData(EnvironmentContext.SPECULATIVE));
+        key = InFlightDecompilations.keyOf(envContext.getProject(),
+                descriptor,
+                envContext.getUserData(EnvironmentContext.CODE_STYLE));
+        result = new TaskResult(this);
     }
 
     public Future<DecompilationResult> result() {
         return result;
     }
 
-    private void reopenEditor(final FileEditorManager editorManager, final VirtualFile file) {
+    /**
+     * Gets the task a result belongs to.
+     *
+     * @param result the result of a decompilation, e.g. one that has been joined
+     * @return the task, or null if the result isn't the result of a task
+     */
+    @Nullable
+    public static DecompilationTask of(@NotNull Future<DecompilationResult> result) {
+        return result instanceof TaskResult ? ((TaskResult) result).task : null;
+    }
+
+    /**
+     * Marks a navigation-triggered decompilation as explicitly requested, because the user has asked for the same
+     * class while it's under way.  It's no longer cancelled in favour of other explicit requests, and its job is
+     * moved to the foreground lane, or is submitted there if it hasn't been yet.
+     */
+    public void makeExplicit() {
+        if (!speculative) {
+            return;
+        }
+        speculative = false;
+        runningSpeculative(envContext.getProject()).remove(this);
+        Future<VirtualFile> submitted = job;
+        if (submitted != null) {
+            intelliJad.getWorkerPool().promote(envContext.getProject(), submitted);
+        }
+    }
+
+    /**
+     * Gets the key of the decompilation in {@link InFlightDecompilations}.
+     *
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    private static PerformInBackgroundOption backgroundOption(final Project project) {
+        return new PerformInBackgroundOption() {
+            @Override
+            public boolean shouldStartInBackground() {
+                return PluginUtil.getConfig(project).isDecompileInBackground();
+            }
+
+            @Override
+            public void processSentToBackground() {
+            }
+        };
+    }
+
+    private void reopenEditor(final FileEditorManager editorManager, final VirtualFile file, @Nullable final VirtualFile preview) {
         appInvoker.invokeAndWait(new Runnable() {
             @Override
             public void run() {
                 editorManager.closeFile(descriptor.getClassFile());
+                if (preview != null) {
+                    editorManager.closeFile(preview);
+                }
+                editorManager.openFile(file, true);
+            }
+        });
+    }
+
+    /**
+     * Opens the skeleton of the class, rendered from its class file, to look at while it's being decompiled.
+     *
+     * @return the skeleton, or null if the class file can't be read
+     */
+    @Nullable
+    private VirtualFile showSkeleton(final FileEditorManager editorManager, ConsoleContext consoleContext) {
+        long startTime = System.currentTimeMillis();
+        final LightVirtualFile skeleton;
+        try {
+            skeleton = new LightVirtualFile(descriptor.getClassName() + IntelliJadConstants.DOT_JAVA_EXTENSION,
+                    StdFileTypes.JAVA,
+                    ClassSkeleton.render(descriptor.getClassFile().contentsToByteArray()));
+        } catch (IOException e) {
+            LOG.debug("Could not render the skeleton of " + descriptor.getFullyQualifiedName(), e);
+            return null;
+        }
+        skeleton.setWritable(false);
+        appInvoker.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                editorManager.openFile(skeleton, true);
+            }
+        });
+        consoleContext.addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                "message.skeleton",
+                descriptor.getClassName(),
+                System.currentTimeMillis() - startTime);
+        return skeleton;
+    }
+
+    /**
+     * Opens a file the output of the decompiler is streamed into as it arrives.
+     *
+     * @param skeleton the skeleton of the class, which is replaced by the output, or null to open a new file
+     * @return the streamed source
+     */
+    private StreamedSource streamOutput(final FileEditorManager editorManager, @Nullable VirtualFile skeleton) {
+        if (skeleton != null) {
+            return new StreamedSource(skeleton);
+        }
+        final LightVirtualFile file = new LightVirtualFile(descriptor.getClassName() + IntelliJadConstants.DOT_JAVA_EXTENSION,
+                StdFileTypes.JAVA,
+                "");
+        file.setWritable(false);
+        appInvoker.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
                 editorManager.openFile(file, true);
             }
         });
+        return new StreamedSource(file);
+    }
+
+    private void closePreview(final FileEditorManager editorManager, @Nullable final VirtualFile preview) {
+        if (preview != null) {
+            appInvoker.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    editorManager.closeFile(preview);
+                }
+            });
+        }
     }
 
     private SdkHandler sdkHandler() {
@@ -145,26 +305,36 @@ public class DecompilationTask extends Task.Modal implements Callable<Decompilat
                         "error",
                         "Target directory "+config.getOutputDirectory()+" creation failed");
             } else {
-                DecompilationEngine engine = DecompilationEngine.selector.get(project);
-                DecompilationContext context = new DecompilationContext(project, consoleContext, engine);
-                Decompiler decompiler = new FileSystemDecompiler(appInvoker);
+                final DecompilationEngine engine = DecompilationEngine.selector.get(project);
+                final Decompiler decompiler = new FileSystemDecompiler(appInvoker);
                 if (debug) {
                     LOG.debug("Decompiler engine in use: "+engine.getClass().getSimpleName()
                             +"/"+decompiler.getClass().getSimpleName());
                 }
                 try {
-                    final VirtualFile file = decompiler.getVirtualFile(descriptor, context);
+                    final VirtualFile file = findDecompiledFile(project, consoleContext, engine, decompiler);
                     final FileEditorManager editorManager = FileEditorManager.getInstance(project);
                     if (file != null && editorManager.isFileOpen(file)) {
                         result = new DecompilationResult(file);
                         console.closeConsole();
-                        reopenEditor(editorManager, file);
-                    } else if (!CurrentDecompilation.isInProgress(project, descriptor)) {
-                        CurrentDecompilation.set(project, descriptor);
-                        final VirtualFile decompiledFile = decompiler.decompile(descriptor, context);
+                        reopenEditor(editorManager, file, null);
+                    } else {
+                        // the skeleton or the streamed output stays if the decompilation fails, it's better than nothing
+                        final VirtualFile skeleton = config.isShowSkeleton() ? showSkeleton(editorManager, consoleContext) : null;
+                        final StreamedSource streamedSource = config.isStreamOutput() ? streamOutput(editorManager, skeleton) : null;
+                        final VirtualFile preview = streamedSource != null ? streamedSource.getFile() : skeleton;
+                        final VirtualFile decompiledFile;
+                        try {
+                            decompiledFile = decompileOnWorker(project, consoleContext, engine, decompiler, streamedSource);
+                        } catch (ProcessCanceledException e) {
+                            closePreview(editorManager, preview);
+                            throw e;
+                        }
                         if (decompiledFile != null) {
                             result = new DecompilationResult(decompiledFile);
-                            reopenEditor(editorManager, decompiledFile);
+                            reopenEditor(editorManager, decompiledFile, preview);
+                            // the next class opened is most likely one this class refers to
+                            intelliJad.getPrefetcher().prefetch(project, descriptor);
                         }
                         consoleContext.addSectionMessage(ConsoleEntryType.INFO,
                                 "message.operation-time",
@@ -174,8 +344,10 @@ public class DecompilationTask extends Task.Modal implements Callable<Decompilat
                     consoleContext.addSectionMessage(ConsoleEntryType.ERROR,
                             "error",
                             e.getMessage());
-                } finally {
-                    CurrentDecompilation.clear(project, descriptor);
+                } catch (ProcessCanceledException e) {
+                    consoleContext.addSectionMessage(ConsoleEntryType.INFO,
+                            "message.decompilation-cancelled",
+                            descriptor.getClassName());
                 }
             }
             consoleContext.close();
@@ -191,9 +363,175 @@ public class DecompilationTask extends Task.Modal implements Callable<Decompilat
         return result;
     }
 
+    private VirtualFile findDecompiledFile(Project project,
+                                           ConsoleContext consoleContext,
+                                           DecompilationEngine engine,
+                                           Decompiler decompiler) {
+        // the decompilation itself runs in the scratch directory of a worker
+        ScratchSpaceManager.Lease lease = ScratchSpaceManager.getInstance().lease(project);
+        try {
+            DecompilationContext context = new DecompilationContext(project, consoleContext, engine, lease.getDirectory());
+            applyCodeStyle(context);
+            return decompiler.getVirtualFile(descriptor, context);
+        } finally {
+            lease.release();
+        }
+    }
+
+    /**
+     * Runs the decompilation on a worker of the pool, which provides its own scratch directory.
+     */
+    private VirtualFile decompileOnWorker(final Project project,
+                                          final ConsoleContext consoleContext,
+                                          final DecompilationEngine engine,
+                                          final Decompiler decompiler,
+                                          @Nullable final StreamedSource streamedSource) throws DecompilationException, InterruptedException {
+        final DecompilationWorkerPool workerPool = intelliJad.getWorkerPool();
+        consoleContext.addMessage(ConsoleEntryType.INFO,
+                "message.queue-depth",
+                workerPool.getQueueDepth(DecompilationLane.FOREGROUND),
+                workerPool.getQueueDepth(DecompilationLane.NAVIGATION),
+                workerPool.getQueueDepth(DecompilationLane.BACKGROUND));
+        while (true) {
+            DecompilationLane lane = speculative ? DecompilationLane.NAVIGATION : DecompilationLane.FOREGROUND;
+            try {
+                return awaitOnWorker(project, consoleContext, engine, decompiler, streamedSource, lane);
+            } catch (CancellationException e) {
+                // superseded by a later navigation, unless the user asked for the class in the meantime
+                if (speculative || lane != DecompilationLane.NAVIGATION || project.isDisposed()) {
+                    throw new ProcessCanceledException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits the decompilation to a lane of the worker pool and waits for it.
+     *
+     * @throws CancellationException if the job is cancelled by the pool
+     */
+    private VirtualFile awaitOnWorker(final Project project,
+                                      final ConsoleContext consoleContext,
+                                      final DecompilationEngine engine,
+                                      final Decompiler decompiler,
+                                      @Nullable final StreamedSource streamedSource,
+                                      final DecompilationLane lane) throws DecompilationException, InterruptedException {
+        final DecompilationWorkerPool workerPool = intelliJad.getWorkerPool();
+        Future<VirtualFile> decompiled = workerPool.submit(project, new DecompilationWorkerPool.Job<VirtualFile>() {
+            @Override
+            public VirtualFile run(@NotNull File scratchDirectory) throws Exception {
+                DecompilationContext context = new DecompilationContext(project, consoleContext, engine, scratchDirectory);
+                context.putUserData(DecompilationContext.PROGRESS_INDICATOR, indicator);
+                context.putUserData(DecompilationContext.WORKER_POOL, workerPool);
+                context.putUserData(DecompilationContext.LANE, lane);
+                if (streamedSource != null) {
+                    context.putUserData(DecompilationContext.OUTPUT_LISTENER, streamedSource.getListener());
+                }
+                applyCodeStyle(context);
+                return decompiler.decompile(descriptor, context);
+            }
+        }, lane);
+        job = decompiled;
+        if (lane == DecompilationLane.NAVIGATION && !speculative) {
+            // made explicit while it was being submitted
+            workerPool.promote(project, decompiled);
+        }
+        try {
+            while (true) {
+                try {
+                    return decompiled.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (indicator.isCanceled()) {
+                        // a running job notices the cancellation itself and kills its process
+                        decompiled.cancel(false);
+                        throw new ProcessCanceledException();
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DecompilationException) {
+                throw (DecompilationException) cause;
+            }
+            if (cause instanceof ProcessCanceledException) {
+                throw (ProcessCanceledException) cause;
+            }
+            throw new DecompilationException(cause);
+        }
+    }
+
+    private void applyCodeStyle(DecompilationContext context) {
+        CodeStyle codeStyle = envContext.getUserData(EnvironmentContext.CODE_STYLE);
+        if (codeStyle != null) {
+            context.putUserData(DecompilationContext.CODE_STYLE, codeStyle);
+        }
+    }
+
+    /**
+     * Cancels the navigation-triggered decompilations of the project that are running, except those with the key,
+     * so they don't hold on to the workers an explicitly requested decompilation is waiting for.  Their processes
+     * are destroyed as soon as the cancellation is noticed.
+     *
+     * @param project the project
+     * @param key     the key of the decompilations that are left running, e.g. because they have been joined
+     */
+    public static void cancelSpeculative(@NotNull Project project,
+                                         @NotNull String key) {
+        DecompilationTask[] running;
+        Set<DecompilationTask> tasks = runningSpeculative(project);
+        synchronized (tasks) {
+            running = tasks.toArray(new DecompilationTask[tasks.size()]);
+        }
+        for (DecompilationTask task : running) {
+            ProgressIndicator taskIndicator = task.indicator;
+            // a task may have been made explicit since it was copied
+            if (task.speculative && !task.key.equals(key) && taskIndicator != null) {
+                taskIndicator.cancel();
+            }
+        }
+    }
+
+    @NotNull
+    private static Set<DecompilationTask> runningSpeculative(@NotNull Project project) {
+        synchronized (DecompilationTask.class) {
+            Set<DecompilationTask> tasks = IntelliJadConstants.RUNNING_SPECULATIVE.get(project);
+            if (tasks == null) {
+                tasks = Collections.synchronizedSet(new HashSet<DecompilationTask>());
+                IntelliJadConstants.RUNNING_SPECULATIVE.set(project, tasks);
+            }
+            return tasks;
+        }
+    }
+
     @Override
     public void run(@NotNull ProgressIndicator indicator) {
         this.indicator = indicator;
-        result.run();
+        Set<DecompilationTask> running = runningSpeculative(envContext.getProject());
+        if (speculative) {
+            running.add(this);
+        }
+        try {
+            result.run();
+        } finally {
+            running.remove(this);
+        }
+    }
+
+    /**
+     * The result of a task, which leads back to the task when it's joined.
+     */
+    private static class TaskResult extends FutureTask<DecompilationResult> {
+        @NotNull
+        private final DecompilationTask task;
+
+        TaskResult(@NotNull DecompilationTask task) {
+            super(task);
+            this.task = task;
+        }
+
+        @Override
+        protected void done() {
+            InFlightDecompilations.finished(task.envContext.getProject(), task.key, this);
+        }
     }
 }
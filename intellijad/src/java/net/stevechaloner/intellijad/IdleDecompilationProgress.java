@@ -0,0 +1,90 @@
+package net.stevechaloner.intellijad;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records the jars of a project that have been decompiled while the IDE was idle, so the work carries on where it
+ * stopped after a restart.
+ * <p>
+ * Each jar is recorded with a signature of everything its decompiled sources depend on, such as its size and
+ * modification time and the settings of the decompiler.  A jar whose signature has changed since is decompiled
+ * again.
+ * </p>
+ */
+public class IdleDecompilationProgress {
+    private static final Logger LOG = Logger.getInstance(IdleDecompilationProgress.class);
+
+    private final File file;
+
+    private final Properties done = new Properties();
+
+    /**
+     * Initialises a new instance of this class with the progress recorded in the file, if there is any.
+     *
+     * @param file the file the progress is kept in
+     */
+    public IdleDecompilationProgress(@NotNull File file) {
+        this.file = file;
+        if (file.isFile()) {
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    done.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // the jars are decompiled again, which costs time but nothing else
+                LOG.info("Could not read " + file.getAbsolutePath(), e);
+                done.clear();
+            }
+        }
+    }
+
+    /**
+     * Checks if a jar has been decompiled.
+     *
+     * @param jarPath   the path of the jar
+     * @param signature the signature the jar would be decompiled with now
+     * @return true if the jar has been decompiled with the same signature
+     */
+    public synchronized boolean isDone(@NotNull String jarPath,
+                                       @NotNull String signature) {
+        return signature.equals(done.getProperty(jarPath));
+    }
+
+    /**
+     * Records a jar as decompiled, and saves the progress.
+     *
+     * @param jarPath   the path of the jar
+     * @param signature the signature the jar was decompiled with
+     */
+    public synchronized void markDone(@NotNull String jarPath,
+                                      @NotNull String signature) {
+        done.setProperty(jarPath, signature);
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            LOG.info("Could not create " + directory.getAbsolutePath());
+            return;
+        }
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                done.store(out, null);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            LOG.info("Could not write " + file.getAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package net.stevechaloner.intellijad;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import com.intellij.ide.IdeEventQueue;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Processor;
+import net.stevechaloner.intellijad.config.Config;
+import net.stevechaloner.intellijad.console.ConsoleContext;
+import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.decompilers.BatchDecompilationDescriptor;
+import net.stevechaloner.intellijad.decompilers.BatchDecompiler;
+import net.stevechaloner.intellijad.decompilers.DecompilationEngine;
+import net.stevechaloner.intellijad.decompilers.DecompilationException;
+import net.stevechaloner.intellijad.environment.EnvironmentValidator;
+import net.stevechaloner.intellijad.util.PluginUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decompiles the libraries configured to be pre-decompiled in the background while the IDE is idle, so their
+ * sources are in place before anybody navigates to them.
+ * <p>
+ * The libraries are decompiled jar by jar into the output directory, which is attached as their source root, the
+ * same way a library decompiled on request is.  The decompilation starts once the user has been inactive for a
+ * while and the project is not being indexed, and is cancelled as soon as the user is active again.  A jar that was
+ * cancelled is decompiled again from the start the next time, the jars completed before it are not - not even after
+ * a restart, see {@link IdleDecompilationProgress}.
+ * </p>
+ */
+public class IdleDecompiler {
+    private static final Logger LOG = Logger.getInstance(IdleDecompiler.class);
+
+    /**
+     * The number of milliseconds the user must have been inactive for.
+     */
+    private static final int IDLE_TIMEOUT = 60000;
+
+    @NotNull
+    private final Project project;
+
+    @NotNull
+    private final IntelliJad intelliJad;
+
+    @NotNull
+    private final IdleDecompilationProgress progress;
+
+    /**
+     * The indicator of the running decompilation, if there is one.
+     */
+    private final AtomicReference<ProgressIndicator> running = new AtomicReference<ProgressIndicator>();
+
+    private final Runnable idleListener = new Runnable() {
+        public void run() {
+            onIdle();
+        }
+    };
+
+    private final Runnable activityListener = new Runnable() {
+        public void run() {
+            ProgressIndicator indicator = running.get();
+            if (indicator != null) {
+                indicator.cancel();
+            }
+        }
+    };
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param project    the project whose libraries are decompiled
+     * @param intelliJad the plugin
+     */
+    public IdleDecompiler(@NotNull Project project,
+                          @NotNull IntelliJad intelliJad) {
+        this.project = project;
+        this.intelliJad = intelliJad;
+        this.progress = new IdleDecompilationProgress(new File(PathManager.getSystemPath(),
+                "intellijad" + File.separator + "idle" + File.separator + project.getLocationHash() + ".properties"));
+    }
+
+    /**
+     * Starts waiting for the IDE to become idle.
+     */
+    public void start() {
+        IdeEventQueue eventQueue = IdeEventQueue.getInstance();
+        eventQueue.addIdleListener(idleListener, IDLE_TIMEOUT);
+        eventQueue.addActivityListener(activityListener);
+    }
+
+    /**
+     * Stops waiting for the IDE to become idle, and cancels any running decompilation.
+     */
+    public void dispose() {
+        IdeEventQueue eventQueue = IdeEventQueue.getInstance();
+        eventQueue.removeIdleListener(idleListener);
+        eventQueue.removeActivityListener(activityListener);
+        activityListener.run();
+    }
+
+    private void onIdle() {
+        if (project.isDisposed() || DumbService.getInstance(project).isDumb()) {
+            return;
+        }
+        final Config config = PluginUtil.getConfig(project);
+        final List<Pattern> patterns = compile(config.getPredecompiledLibraries());
+        if (patterns.isEmpty()
+                || StringUtil.isEmptyOrSpaces(config.getOutputDirectory())
+                || !new File(config.getOutputDirectory()).isDirectory()
+                || !EnvironmentValidator.isValid(config)) {
+            // nobody is there to be asked to fix the configuration, the user does so when decompiling on request
+            return;
+        }
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        if (running.compareAndSet(null, indicator)) {
+            ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+                public void run() {
+                    try {
+                        decompile(config, patterns, indicator);
+                    } finally {
+                        running.compareAndSet(indicator, null);
+                    }
+                }
+            });
+        }
+    }
+
+    private void decompile(@NotNull Config config,
+                           @NotNull List<Pattern> patterns,
+                           @NotNull ProgressIndicator indicator) {
+        DecompilationEngine engine = DecompilationEngine.selector.get(config);
+        BatchDecompiler decompiler = new BatchDecompiler(intelliJad.getAppInvoker(), intelliJad.getWorkerPool());
+        ConsoleContext consoleContext = null;
+        for (final VirtualFile jarRoot : findJarRoots(patterns)) {
+            if (indicator.isCanceled() || project.isDisposed() || DumbService.getInstance(project).isDumb()) {
+                break;
+            }
+            VirtualFile jar = JarFileSystem.getInstance().getVirtualFileForJar(jarRoot);
+            if (jar == null) {
+                continue;
+            }
+            String signature = jar.getLength() + "/" + jar.getTimeStamp() + "/" + engine.getFingerprint(project)
+                    + "/" + config.getOutputDirectory();
+            if (progress.isDone(jar.getPath(), signature)) {
+                continue;
+            }
+            BatchDecompilationDescriptor descriptor = ApplicationManager.getApplication().runReadAction(new Computable<BatchDecompilationDescriptor>() {
+                public BatchDecompilationDescriptor compute() {
+                    return BatchDecompilationDescriptor.create(new VirtualFile[]{jarRoot});
+                }
+            });
+            if (descriptor.getClassCount() > 0) {
+                if (consoleContext == null) {
+                    consoleContext = intelliJad.getConsoleManager().getConsole(project).createConsoleContext("message.idle-decompilation");
+                }
+                try {
+                    decompiler.decompile(descriptor, project, consoleContext, indicator);
+                } catch (DecompilationException e) {
+                    LOG.info("Could not decompile " + jar.getPresentableUrl() + " while idle", e);
+                    consoleContext.addSectionMessage(ConsoleEntryType.ERROR,
+                            "error",
+                            e.getMessage());
+                    continue;
+                } catch (ProcessCanceledException e) {
+                    break;
+                }
+            }
+            if (!indicator.isCanceled()) {
+                progress.markDone(jar.getPath(), signature);
+            }
+        }
+        if (consoleContext != null) {
+            if (indicator.isCanceled()) {
+                consoleContext.addSectionMessage(ConsoleEntryType.INFO,
+                        "message.idle-decompilation-paused");
+            }
+            consoleContext.close();
+        }
+    }
+
+    /**
+     * Finds the jars of the project libraries whose names match any of the patterns.
+     */
+    @NotNull
+    private List<VirtualFile> findJarRoots(@NotNull final List<Pattern> patterns) {
+        return ApplicationManager.getApplication().runReadAction(new Computable<List<VirtualFile>>() {
+            public List<VirtualFile> compute() {
+                final Set<VirtualFile> jarRoots = new LinkedHashSet<VirtualFile>();
+                if (!project.isDisposed()) {
+                    OrderEnumerator.orderEntries(project).librariesOnly().forEachLibrary(new Processor<Library>() {
+                        public boolean process(Library library) {
+                            if (matches(patterns, library.getName())) {
+                                for (VirtualFile root : library.getFiles(OrderRootType.CLASSES)) {
+                                    if (root.getFileSystem() instanceof JarFileSystem) {
+                                        jarRoots.add(root);
+                                    }
+                                }
+                            }
+                            return true;
+                        }
+                    });
+                }
+                return new ArrayList<VirtualFile>(jarRoots);
+            }
+        });
+    }
+
+    private static boolean matches(@NotNull List<Pattern> patterns,
+                                   String libraryName) {
+        if (libraryName != null) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(libraryName).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles the comma-separated library names, in which <code>*</code> matches any number of characters.
+     */
+    @NotNull
+    private static List<Pattern> compile(String libraryNames) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        if (libraryNames != null) {
+            for (String name : libraryNames.split(",")) {
+                name = name.trim();
+                if (name.length() > 0) {
+                    StringBuilder regex = new StringBuilder();
+                    for (String part : name.split("\\*", -1)) {
+                        if (regex.length() > 0) {
+                            regex.append(".*");
+                        }
+                        regex.append(Pattern.quote(part));
+                    }
+                    patterns.add(Pattern.compile(regex.toString()));
+                }
+            }
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,122 @@
+package net.stevechaloner.intellijad;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.config.CodeStyle;
+import net.stevechaloner.intellijad.decompilers.DecompilationContext;
+import net.stevechaloner.intellijad.decompilers.DecompilationDescriptor;
+import net.stevechaloner.intellijad.decompilers.DecompilationResult;
+import net.stevechaloner.intellijad.util.PluginUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The decompilations of a project that haven't finished yet, so a class requested again while it's being
+ * decompiled, e.g. by navigation and an action at the same time, joins the decompilation under way.
+ * <p>
+ * A decompilation is identified by the name of the class, a digest of its class file and the code style it's
+ * reformatted to, so the same class from a changed library is decompiled again, and a class asked for in one style
+ * doesn't get the source of another.
+ * </p>
+ */
+public final class InFlightDecompilations {
+    private static final Logger LOG = Logger.getInstance(InFlightDecompilations.class);
+
+    private InFlightDecompilations() {
+    }
+
+    /**
+     * Creates the key a decompilation of the descriptor is registered under.
+     *
+     * @param project    the project
+     * @param descriptor the decompilation descriptor
+     * @param codeStyle  the code style asked for instead of the configured one, if any
+     * @return the key
+     */
+    @NotNull
+    public static String keyOf(@NotNull Project project,
+                               @NotNull DecompilationDescriptor descriptor,
+                               @Nullable CodeStyle codeStyle) {
+        VirtualFile classFile = descriptor.getClassFile();
+        String identity;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            identity = new BigInteger(1, digest.digest(classFile.contentsToByteArray())).toString(16);
+        } catch (IOException e) {
+            LOG.info("Could not read " + classFile.getPath(), e);
+            identity = classFile.getPath() + '@' + classFile.getModificationStamp();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String reformatStyle = DecompilationContext.getReformatStyle(PluginUtil.getConfig(project), codeStyle);
+        return descriptor.getFullyQualifiedName() + '#' + identity + '@' + reformatStyle;
+    }
+
+    /**
+     * Registers a decompilation unless one with the same key is under way already.
+     *
+     * @param project       the project
+     * @param key           the key of the decompilation
+     * @param decompilation the result of the decompilation
+     * @return the result of the decompilation under way, which is the given one if there was none
+     */
+    @NotNull
+    public static Future<DecompilationResult> join(@NotNull Project project,
+                                                   @NotNull String key,
+                                                   @NotNull Future<DecompilationResult> decompilation) {
+        Future<DecompilationResult> inFlight = decompilations(project).putIfAbsent(key, decompilation);
+        if (inFlight == null) {
+            return decompilation;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Joining decompilation of " + key);
+        }
+        return inFlight;
+    }
+
+    /**
+     * Checks if a decompilation is under way.
+     *
+     * @param project the project
+     * @param key     the key of the decompilation
+     * @return true if the decompilation hasn't finished yet
+     */
+    public static boolean isInFlight(@NotNull Project project,
+                                     @NotNull String key) {
+        return decompilations(project).containsKey(key);
+    }
+
+    /**
+     * Unregisters a finished decompilation.
+     *
+     * @param project       the project
+     * @param key           the key of the decompilation
+     * @param decompilation the result of the decompilation
+     */
+    public static void finished(@NotNull Project project,
+                                @NotNull String key,
+                                @NotNull Future<DecompilationResult> decompilation) {
+        decompilations(project).remove(key, decompilation);
+    }
+
+    @NotNull
+    private static ConcurrentMap<String, Future<DecompilationResult>> decompilations(@NotNull Project project) {
+        synchronized (InFlightDecompilations.class) {
+            ConcurrentMap<String, Future<DecompilationResult>> decompilations = IntelliJadConstants.CURRENTLY_DECOMPILING.get(project);
+            if (decompilations == null) {
+                decompilations = new ConcurrentHashMap<String, Future<DecompilationResult>>();
+                IntelliJadConstants.CURRENTLY_DECOMPILING.set(project, decompilations);
+            }
+            return decompilations;
+        }
+    }
+}
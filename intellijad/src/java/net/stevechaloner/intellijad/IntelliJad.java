@@ -27,18 +27,24 @@ import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.xdebugger.XDebuggerManager;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Future;
+import net.stevechaloner.intellijad.actions.DebuggerListener;
 import net.stevechaloner.intellijad.actions.NavigationListener;
 import net.stevechaloner.intellijad.config.Config;
 import net.stevechaloner.intellijad.console.ConsoleContext;
 import net.stevechaloner.intellijad.console.ConsoleManager;
 import net.stevechaloner.intellijad.console.IntelliJadConsole;
+import net.stevechaloner.intellijad.decompilers.BatchDecompilationDescriptor;
 import net.stevechaloner.intellijad.decompilers.DecompilationChoiceListener;
+import net.stevechaloner.intellijad.decompilers.DecompilationContext;
 import net.stevechaloner.intellijad.decompilers.DecompilationDescriptor;
 import net.stevechaloner.intellijad.decompilers.DecompilationResult;
+import net.stevechaloner.intellijad.decompilers.DecompilationWorkerPool;
+import net.stevechaloner.intellijad.decompilers.ScratchSpaceManager;
 import net.stevechaloner.intellijad.environment.EnvironmentContext;
 import net.stevechaloner.intellijad.util.AppInvoker;
 import net.stevechaloner.intellijad.util.FileSystemUtil;
@@ -68,10 +74,15 @@ public class IntelliJad implements ApplicationComponent,
 
     private final Application application;
     private final AppInvoker appInvoker;
+
+    private final DecompilationWorkerPool workerPool = new DecompilationWorkerPool();
+
+    private final ReferencePrefetcher prefetcher;
     
     public IntelliJad(Application _application) {
         application = _application;
         appInvoker = AppInvoker.create(application);
+        prefetcher = new ReferencePrefetcher(this);
     }
 
     /**
@@ -199,6 +210,14 @@ public class IntelliJad implements ApplicationComponent,
         NavigationListener navigationListener = new NavigationListener(project, this);
         project.getMessageBus().connect().subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, navigationListener);
         IntelliJadConstants.DECOMPILE_LISTENER.set(project, navigationListener);
+        project.getMessageBus().connect().subscribe(XDebuggerManager.TOPIC, new DebuggerListener(project, prefetcher));
+        IdleDecompiler idleDecompiler = IntelliJadConstants.IDLE_DECOMPILER.get(project);
+        if (idleDecompiler != null) {
+            idleDecompiler.dispose();
+        }
+        idleDecompiler = new IdleDecompiler(project, this);
+        idleDecompiler.start();
+        IntelliJadConstants.IDLE_DECOMPILER.set(project, idleDecompiler);
 
         ProjectClosingTasks.getInstance(project).addTask(new Runnable()
         {
@@ -233,8 +252,18 @@ public class IntelliJad implements ApplicationComponent,
      * {@inheritDoc}
      */
     public void projectClosed(Project project) {
+        workerPool.cancel(project);
         consoleManager.disposeConsole(project);
+        NavigationListener navigationListener = IntelliJadConstants.DECOMPILE_LISTENER.get(project);
+        if (navigationListener != null) {
+            navigationListener.cancelPending();
+        }
         IntelliJadConstants.DECOMPILE_LISTENER.set(project, null);
+        IdleDecompiler idleDecompiler = IntelliJadConstants.IDLE_DECOMPILER.get(project);
+        if (idleDecompiler != null) {
+            idleDecompiler.dispose();
+        }
+        IntelliJadConstants.IDLE_DECOMPILER.set(project, null);
         TempMemoryVFS.dispose(project);        
         List<Library> libraries = IntelliJadConstants.GENERATED_SOURCE_LIBRARIES.get(project);
         if (libraries != null) {
@@ -253,12 +282,26 @@ public class IntelliJad implements ApplicationComponent,
     public void onStartup() {
         Config config = PluginUtil.getApplicationConfig();        
         forceDecompilationToDirectory(config);            
+        removeStaleScratchSpace(config);
     }
     
     public void onStartup(Project project) {
         Config config = PluginUtil.getConfig(project);
         //this will reconfigure project to decompile to file system
         forceDecompilationToDirectory(config, project);        
+        removeStaleScratchSpace(config);
+    }
+
+    private void removeStaleScratchSpace(final Config config) {
+        application.executeOnPooledThread(new Runnable() {
+            public void run() {
+                try {
+                    ScratchSpaceManager.getInstance().removeStale(DecompilationContext.getTempDirectory(config));
+                } catch (IllegalStateException e) {
+                    LOG.warn("Temporary directory not available", e);
+                }
+            }
+        });
     }
     /**
      * {@inheritDoc}
@@ -272,6 +315,7 @@ public class IntelliJad implements ApplicationComponent,
      */
     public void disposeComponent() {
         ProjectManager.getInstance().removeProjectManagerListener(this);
+        workerPool.shutdown();
     }
 
     @Nullable
@@ -305,9 +349,42 @@ public class IntelliJad implements ApplicationComponent,
      * {@inheritDoc}
      */
     public Future<DecompilationResult> decompile(EnvironmentContext envContext, DecompilationDescriptor descriptor) {
+        Project project = envContext.getProject();
+        boolean speculative = Boolean.TRUE.equals(envContext.getUserData(EnvironmentContext.SPECULATIVE));
+        if (!speculative) {
+            // an explicit request wins over a navigation-triggered one
+            NavigationListener navigationListener = IntelliJadConstants.DECOMPILE_LISTENER.get(project);
+            if (navigationListener != null) {
+                navigationListener.cancelPending();
+            }
+        }
         DecompilationTask task = new DecompilationTask(this, envContext, descriptor);
-        task.queue();
-        return task.result();
+        Future<DecompilationResult> decompilation = InFlightDecompilations.join(project,
+                task.getKey(),
+                task.result());
+        if (!speculative) {
+            DecompilationTask joined = DecompilationTask.of(decompilation);
+            if (joined != null) {
+                // the decompilation under way is now waited for, so nothing may cancel it in favour of other work
+                joined.makeExplicit();
+            }
+            // a running navigation-triggered decompilation of another class would keep a worker from it
+            DecompilationTask.cancelSpeculative(project, task.getKey());
+        }
+        if (decompilation == task.result()) {
+            task.queue();
+        }
+        return decompilation;
+    }
+
+    /**
+     * Decompiles the classes of the descriptor in the background.
+     *
+     * @param envContext the environment context
+     * @param descriptor the classes to decompile
+     */
+    public void decompile(EnvironmentContext envContext, BatchDecompilationDescriptor descriptor) {
+        new BatchDecompilationTask(this, envContext, descriptor).queue();
     }
 
     /**
@@ -345,4 +422,12 @@ public class IntelliJad implements ApplicationComponent,
     public AppInvoker getAppInvoker() {
         return appInvoker;
     }
+
+    public DecompilationWorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    public ReferencePrefetcher getPrefetcher() {
+        return prefetcher;
+    }
 }
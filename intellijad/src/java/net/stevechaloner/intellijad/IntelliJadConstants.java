@@ -16,10 +16,14 @@
 package net.stevechaloner.intellijad;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.util.Key;
 import net.stevechaloner.intellijad.actions.NavigationListener;
+import net.stevechaloner.intellijad.decompilers.DecompilationResult;
 import net.stevechaloner.intellijad.vfs.MemoryVFS;
 
 /**
@@ -89,6 +93,11 @@ public class IntelliJadConstants
      */
     public static final Key<NavigationListener> DECOMPILE_LISTENER = new Key<NavigationListener>("decompile-listener");
 
+    /**
+     * The key for retrieving the idle decompiler from the user data.
+     */
+    public static final Key<IdleDecompiler> IDLE_DECOMPILER = new Key<IdleDecompiler>("idle-decompiler");
+
     /**
      * The key for checking if a file was decompiled by IntelliJad.
      */
@@ -103,5 +112,10 @@ public class IntelliJadConstants
     
     public static final Key<MemoryVFS> MEMORY_VFS = new Key<MemoryVFS>("memory-virtual-file-system");
     
-    public static final Key<String> CURRENTLY_DECOMPILING = new Key<String>("currently-decompiling");
+    /**
+     * The key for retrieving the navigation-triggered decompilations of a project that are running.
+     */
+    public static final Key<Set<DecompilationTask>> RUNNING_SPECULATIVE = new Key<Set<DecompilationTask>>("running-speculative");
+
+    public static final Key<ConcurrentMap<String, Future<DecompilationResult>>> CURRENTLY_DECOMPILING = new Key<ConcurrentMap<String, Future<DecompilationResult>>>("currently-decompiling");
 }
@@ -0,0 +1,225 @@
+package net.stevechaloner.intellijad;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.classfile.ClassFileHeader;
+import net.stevechaloner.intellijad.config.CodeStyle;
+import net.stevechaloner.intellijad.config.Config;
+import net.stevechaloner.intellijad.console.ConsoleContext;
+import net.stevechaloner.intellijad.decompilers.DecompilationContext;
+import net.stevechaloner.intellijad.decompilers.DecompilationDescriptor;
+import net.stevechaloner.intellijad.decompilers.DecompilationDescriptorFactory;
+import net.stevechaloner.intellijad.decompilers.DecompilationEngine;
+import net.stevechaloner.intellijad.decompilers.DecompilationException;
+import net.stevechaloner.intellijad.decompilers.DecompilationLane;
+import net.stevechaloner.intellijad.decompilers.DecompilationWorkerPool;
+import net.stevechaloner.intellijad.decompilers.FileSystemDecompiler;
+import net.stevechaloner.intellijad.decompilers.JarDecompilationDescriptor;
+import net.stevechaloner.intellijad.util.Exclusion;
+import net.stevechaloner.intellijad.util.LibraryUtil;
+import net.stevechaloner.intellijad.util.PluginUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decompiles the library classes a decompiled class refers to in the background, so following one of its
+ * references finds the source in the decompilation cache instead of waiting for the decompiler.
+ * <p>
+ * The references are read from the constant pool of the class file and looked up in the jars of the libraries
+ * containing the class.  Classes found nowhere else, such as those of the JDK, are left alone, as are excluded
+ * packages.  A nested class is decompiled along with its outer class, and no more classes than the prefetch
+ * budget are queued for a single decompilation.
+ * </p>
+ * <p>
+ * Other sources of likely next classes, such as the stack of a suspended debugger, queue them here as well.
+ * </p>
+ */
+public class ReferencePrefetcher {
+    private static final Logger LOG = Logger.getInstance(ReferencePrefetcher.class);
+
+    /**
+     * The number of prefetched classes remembered per project, so they aren't queued again every time a class
+     * referring to them is opened.
+     */
+    private static final int MAX_REMEMBERED = 4096;
+
+    private static final String CLASS_SUFFIX = '.' + IntelliJadConstants.CLASS_EXTENSION;
+
+    private static final Key<Set<String>> PREFETCHED = new Key<Set<String>>("ReferencePrefetcher.prefetched");
+
+    private final IntelliJad intelliJad;
+
+    public ReferencePrefetcher(@NotNull IntelliJad intelliJad) {
+        this.intelliJad = intelliJad;
+    }
+
+    /**
+     * Queues the classes the class of the descriptor refers to on the background lane of the worker pool.
+     *
+     * @param project    the project
+     * @param descriptor the descriptor of the class that has just been decompiled
+     */
+    public void prefetch(@NotNull Project project,
+                         @NotNull DecompilationDescriptor descriptor) {
+        Integer budget = PluginUtil.getConfig(project).getPrefetchBudget();
+        if (budget == null || budget <= 0 || descriptor.getClassPathType() != DecompilationDescriptor.ClassPathType.JAR) {
+            return;
+        }
+        List<String> referencedClasses;
+        try {
+            referencedClasses = ClassFileHeader.read(descriptor.getClassFile().contentsToByteArray()).getReferencedClasses();
+        } catch (IOException e) {
+            LOG.info("Could not read the references of " + descriptor.getFullyQualifiedName(), e);
+            return;
+        }
+
+        Set<String> outerClasses = new LinkedHashSet<String>();
+        for (String referencedClass : referencedClasses) {
+            outerClasses.add(outerClassOf(referencedClass));
+        }
+        outerClasses.remove(outerClassOf(descriptor.getFullyQualifiedName().replace('.', '/')));
+
+        List<VirtualFile> roots = findClassRoots(project, (JarDecompilationDescriptor) descriptor);
+        List<DecompilationDescriptor> references = new ArrayList<DecompilationDescriptor>();
+        for (String outerClass : outerClasses) {
+            if (references.size() >= budget) {
+                break;
+            }
+            VirtualFile classFile = findClassFile(roots, outerClass + CLASS_SUFFIX);
+            if (classFile != null) {
+                references.add(DecompilationDescriptorFactory.getFactoryForFile(classFile).create(classFile));
+            }
+        }
+        queue(project, references, null, "message.prefetch", descriptor.getClassName());
+    }
+
+    /**
+     * Queues classes on the background lane of the worker pool.  Excluded classes, classes being decompiled and
+     * classes queued before are skipped.
+     *
+     * @param project     the project
+     * @param descriptors the descriptors of the classes
+     * @param codeStyle   the code style to decompile in instead of the configured one, if any
+     * @param message     the message of the console context the classes are reported in
+     * @param parameters  the parameters of the message
+     */
+    public void queue(@NotNull final Project project,
+                      @NotNull List<DecompilationDescriptor> descriptors,
+                      @Nullable final CodeStyle codeStyle,
+                      @NotNull String message,
+                      Object... parameters) {
+        Config config = PluginUtil.getConfig(project);
+        if (!config.isUseDecompilationCache()) {
+            // without the cache there's nothing for the prefetched classes to be found in
+            return;
+        }
+        Exclusion exclusion = new Exclusion(config);
+        Set<String> prefetched = prefetched(project);
+        List<DecompilationDescriptor> queued = new ArrayList<DecompilationDescriptor>();
+        for (DecompilationDescriptor descriptor : descriptors) {
+            String key = InFlightDecompilations.keyOf(project, descriptor, codeStyle);
+            if (!exclusion.isExcluded(descriptor)
+                    && !InFlightDecompilations.isInFlight(project, key)
+                    && prefetched.add(key)) {
+                queued.add(descriptor);
+            }
+        }
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        final ConsoleContext consoleContext = intelliJad.getConsoleManager().getConsole(project).createConsoleContext(message,
+                parameters);
+        final DecompilationEngine engine = DecompilationEngine.selector.get(project);
+        final DecompilationWorkerPool workerPool = intelliJad.getWorkerPool();
+        for (final DecompilationDescriptor descriptor : queued) {
+            workerPool.submit(project, new DecompilationWorkerPool.Job<VirtualFile>() {
+                public VirtualFile run(@NotNull File scratchDirectory) throws Exception {
+                    DecompilationContext context = new DecompilationContext(project, consoleContext, engine, scratchDirectory);
+                    context.putUserData(DecompilationContext.WORKER_POOL, workerPool);
+                    context.putUserData(DecompilationContext.LANE, DecompilationLane.BACKGROUND);
+                    if (codeStyle != null) {
+                        context.putUserData(DecompilationContext.CODE_STYLE, codeStyle);
+                    }
+                    try {
+                        return new FileSystemDecompiler(intelliJad.getAppInvoker()).decompile(descriptor, context);
+                    } catch (DecompilationException e) {
+                        // nobody is waiting for the class, it's decompiled again when it's opened
+                        LOG.info("Could not prefetch " + descriptor.getFullyQualifiedName(), e);
+                        return null;
+                    }
+                }
+            }, DecompilationLane.BACKGROUND);
+        }
+    }
+
+    /**
+     * Finds the roots of the jar of the class, and of all other jars of the libraries containing it.
+     */
+    @NotNull
+    private static List<VirtualFile> findClassRoots(@NotNull final Project project,
+                                                    @NotNull final JarDecompilationDescriptor descriptor) {
+        return ApplicationManager.getApplication().runReadAction(new Computable<List<VirtualFile>>() {
+            public List<VirtualFile> compute() {
+                Set<VirtualFile> roots = new LinkedHashSet<VirtualFile>();
+                roots.add(descriptor.getJarFile());
+                for (Library library : LibraryUtil.findLibrariesByClass(descriptor.getFullyQualifiedName(), project)) {
+                    roots.addAll(Arrays.asList(library.getFiles(OrderRootType.CLASSES)));
+                }
+                return new ArrayList<VirtualFile>(roots);
+            }
+        });
+    }
+
+    @Nullable
+    private static VirtualFile findClassFile(@NotNull List<VirtualFile> roots,
+                                             @NotNull String path) {
+        for (VirtualFile root : roots) {
+            VirtualFile classFile = root.isValid() ? root.findFileByRelativePath(path) : null;
+            if (classFile != null) {
+                return classFile;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private static String outerClassOf(@NotNull String internalName) {
+        int nested = internalName.indexOf('$', internalName.lastIndexOf('/') + 1);
+        return nested == -1 ? internalName : internalName.substring(0, nested);
+    }
+
+    @NotNull
+    private static Set<String> prefetched(@NotNull Project project) {
+        synchronized (ReferencePrefetcher.class) {
+            Set<String> prefetched = PREFETCHED.get(project);
+            if (prefetched == null) {
+                prefetched = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                        return size() > MAX_REMEMBERED;
+                    }
+                }));
+                PREFETCHED.set(project, prefetched);
+            }
+            return prefetched;
+        }
+    }
+}
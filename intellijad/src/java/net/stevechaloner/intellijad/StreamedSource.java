@@ -0,0 +1,102 @@
+package net.stevechaloner.intellijad;
+
+import java.nio.charset.Charset;
+
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.CommandProcessor;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.util.OutputBuffer;
+import net.stevechaloner.intellijad.util.TextStreamer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Appends the output of the decompiler to the document of a read-only file as it arrives, so the top of a large
+ * class can be read long before the decompiler has finished with the rest.
+ * <p>
+ * The output is shown as the decompiler writes it, the reformatted source replaces the file once it's complete.
+ * Whatever the file showed before, e.g. the skeleton of the class, is replaced by the first output.
+ * </p>
+ */
+class StreamedSource {
+    @NotNull
+    private final VirtualFile file;
+
+    @NotNull
+    private final TextStreamer streamer;
+
+    /**
+     * Confined to the event dispatch thread.
+     */
+    private boolean started;
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param file the read-only file the output is shown in
+     */
+    StreamedSource(@NotNull VirtualFile file) {
+        this.file = file;
+        // the charset the output is decoded with once it's complete
+        this.streamer = new TextStreamer(Charset.defaultCharset(), new Runnable() {
+            public void run() {
+                Application application = ApplicationManager.getApplication();
+                application.invokeLater(new Runnable() {
+                    public void run() {
+                        append();
+                    }
+                }, application.getAnyModalityState());
+            }
+        });
+    }
+
+    /**
+     * Gets the listener to attach to the output of the decompiler.
+     *
+     * @return the listener
+     */
+    @NotNull
+    OutputBuffer.Listener getListener() {
+        return streamer;
+    }
+
+    /**
+     * Gets the file the output is shown in.
+     *
+     * @return the file
+     */
+    @NotNull
+    VirtualFile getFile() {
+        return file;
+    }
+
+    private void append() {
+        final TextStreamer.Chunk chunk = streamer.take();
+        final Document document = FileDocumentManager.getInstance().getDocument(file);
+        if (chunk == null || document == null) {
+            return;
+        }
+        final boolean replacing = chunk.isReplacing() || !started;
+        started = true;
+        ApplicationManager.getApplication().runWriteAction(new Runnable() {
+            public void run() {
+                CommandProcessor.getInstance().runUndoTransparentAction(new Runnable() {
+                    public void run() {
+                        document.setReadOnly(false);
+                        try {
+                            if (replacing) {
+                                document.setText(chunk.getText());
+                            } else {
+                                document.insertString(document.getTextLength(), chunk.getText());
+                            }
+                        } finally {
+                            document.setReadOnly(true);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,192 @@
+package net.stevechaloner.intellijad.actions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.xdebugger.XDebugProcess;
+import com.intellij.xdebugger.XDebugSession;
+import com.intellij.xdebugger.XDebugSessionAdapter;
+import com.intellij.xdebugger.XDebuggerManager;
+import com.intellij.xdebugger.XDebuggerManagerListener;
+import com.intellij.xdebugger.XSourcePosition;
+import com.intellij.xdebugger.frame.XExecutionStack;
+import com.intellij.xdebugger.frame.XStackFrame;
+import com.intellij.xdebugger.frame.XSuspendContext;
+import net.stevechaloner.intellijad.ReferencePrefetcher;
+import net.stevechaloner.intellijad.config.CodeStyle;
+import net.stevechaloner.intellijad.config.NavigationTriggeredDecompile;
+import net.stevechaloner.intellijad.decompilers.DecompilationDescriptor;
+import net.stevechaloner.intellijad.decompilers.DecompilationDescriptorFactory;
+import net.stevechaloner.intellijad.util.PluginUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decompiles the library classes on the stack of a suspended debugger in the background, so stepping through
+ * them doesn't wait for the decompiler at every frame.
+ * <p>
+ * The classes are decompiled in the debuggable style, whose line numbers match those the debugger reports, and
+ * so are classes opened by navigation while the debugger is suspended.  Like navigation, this only happens when
+ * classes are configured to be decompiled on navigation.
+ * </p>
+ */
+public class DebuggerListener implements XDebuggerManagerListener {
+    private static final Logger LOG = Logger.getInstance(DebuggerListener.class);
+
+    /**
+     * The number of frames from the top of the stack whose classes are decompiled.
+     */
+    private static final int MAX_FRAMES = 10;
+
+    @NotNull
+    private final Project project;
+
+    @NotNull
+    private final ReferencePrefetcher prefetcher;
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param project    the project this listener is interested in
+     * @param prefetcher queues the classes of the stack
+     */
+    public DebuggerListener(@NotNull Project project,
+                            @NotNull ReferencePrefetcher prefetcher) {
+        this.project = project;
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Checks if a debugger of the project is suspended, in which case classes are decompiled in the debuggable
+     * style.
+     *
+     * @param project the project
+     * @return true if the current debug session is suspended
+     */
+    public static boolean isSuspended(@NotNull Project project) {
+        XDebugSession session = XDebuggerManager.getInstance(project).getCurrentSession();
+        return session != null && session.isSuspended();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void processStarted(@NotNull XDebugProcess debugProcess) {
+        final XDebugSession session = debugProcess.getSession();
+        session.addSessionListener(new XDebugSessionAdapter() {
+            @Override
+            public void sessionPaused() {
+                onPause(session);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void processStopped(@NotNull XDebugProcess debugProcess) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void currentSessionChanged(@Nullable XDebugSession previousSession,
+                                      @Nullable XDebugSession currentSession) {
+        // no-op
+    }
+
+    private void onPause(@NotNull XDebugSession session) {
+        NavigationTriggeredDecompile mode = NavigationTriggeredDecompile.getByName(PluginUtil.getConfig(project).getDecompileOnNavigation());
+        XSuspendContext suspendContext = session.getSuspendContext();
+        XExecutionStack stack = suspendContext == null ? null : suspendContext.getActiveExecutionStack();
+        if (mode == NavigationTriggeredDecompile.ALWAYS && stack != null) {
+            stack.computeStackFrames(0, new FrameCollector(session, stack.getDisplayName()));
+        }
+    }
+
+    /**
+     * Queues the classes of the frames that have no source.
+     */
+    private void prefetch(@NotNull final List<XStackFrame> frames,
+                          @NotNull String stackName) {
+        Set<VirtualFile> classFiles = ApplicationManager.getApplication().runReadAction(new Computable<Set<VirtualFile>>() {
+            public Set<VirtualFile> compute() {
+                Set<VirtualFile> classFiles = new LinkedHashSet<VirtualFile>();
+                for (XStackFrame frame : frames) {
+                    XSourcePosition position = frame.getSourcePosition();
+                    VirtualFile file = position == null ? null : position.getFile();
+                    if (file != null && "class".equals(file.getExtension())) {
+                        classFiles.add(file);
+                    }
+                }
+                return classFiles;
+            }
+        });
+        List<DecompilationDescriptor> descriptors = new ArrayList<DecompilationDescriptor>();
+        for (VirtualFile classFile : classFiles) {
+            descriptors.add(DecompilationDescriptorFactory.getFactoryForFile(classFile).create(classFile));
+        }
+        if (!descriptors.isEmpty()) {
+            prefetcher.queue(project, descriptors, CodeStyle.DEBUGGABLE_STYLE, "message.prefetch-stack", stackName);
+        }
+    }
+
+    /**
+     * Collects the top frames of a stack, which the debugger may hand over in several parts.
+     */
+    private class FrameCollector implements XExecutionStack.XStackFrameContainer {
+        private final XDebugSession session;
+
+        private final String stackName;
+
+        private final List<XStackFrame> frames = new ArrayList<XStackFrame>();
+
+        private boolean complete;
+
+        FrameCollector(@NotNull XDebugSession session,
+                       @NotNull String stackName) {
+            this.session = session;
+            this.stackName = stackName;
+        }
+
+        public void addStackFrames(@NotNull List<? extends XStackFrame> stackFrames,
+                                   boolean last) {
+            final List<XStackFrame> collected;
+            synchronized (this) {
+                if (complete) {
+                    return;
+                }
+                frames.addAll(stackFrames);
+                if (!last && frames.size() < MAX_FRAMES) {
+                    return;
+                }
+                complete = true;
+                collected = new ArrayList<XStackFrame>(frames.subList(0, Math.min(MAX_FRAMES, frames.size())));
+            }
+            // the frames are handed over on the debugger's thread, which mustn't be held up
+            ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+                public void run() {
+                    prefetch(collected, stackName);
+                }
+            });
+        }
+
+        public void errorOccurred(@NotNull String errorMessage) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Could not compute the frames of " + stackName + ": " + errorMessage);
+            }
+        }
+
+        public synchronized boolean isObsolete() {
+            return complete || !session.isSuspended();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package net.stevechaloner.intellijad.actions;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.DataKeys;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.IntelliJad;
+import net.stevechaloner.intellijad.decompilers.BatchDecompilationDescriptor;
+import net.stevechaloner.intellijad.environment.EnvironmentContext;
+import net.stevechaloner.intellijad.util.PluginUtil;
+
+/**
+ * Action for decompiling whole libraries, packages or a selection of classes in one go.
+ */
+public class DecompileLibraryAction extends AnAction {
+    /** {@inheritDoc} */
+    public void update(AnActionEvent e) {
+        super.update(e);
+
+        VirtualFile[] files = DataKeys.VIRTUAL_FILE_ARRAY.getData(e.getDataContext());
+        boolean applicable = DataKeys.PROJECT.getData(e.getDataContext()) != null
+                && BatchDecompilationDescriptor.isApplicable(files);
+        e.getPresentation().setEnabled(applicable);
+        e.getPresentation().setVisible(applicable);
+    }
+
+    /** {@inheritDoc} */
+    public void actionPerformed(AnActionEvent e) {
+        Project project = DataKeys.PROJECT.getData(e.getDataContext());
+        VirtualFile[] files = DataKeys.VIRTUAL_FILE_ARRAY.getData(e.getDataContext());
+        if (project != null && files != null) {
+            BatchDecompilationDescriptor descriptor = BatchDecompilationDescriptor.create(files);
+            if (!descriptor.isEmpty()) {
+                IntelliJad intelliJad = PluginUtil.getComponent(IntelliJad.class);
+                intelliJad.decompile(new EnvironmentContext(project), descriptor);
+            }
+        }
+    }
+}
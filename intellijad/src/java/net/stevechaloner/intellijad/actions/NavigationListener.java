@@ -23,6 +23,8 @@ import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Alarm;
+import net.stevechaloner.intellijad.config.CodeStyle;
 import net.stevechaloner.intellijad.config.Config;
 import net.stevechaloner.intellijad.config.NavigationTriggeredDecompile;
 import net.stevechaloner.intellijad.decompilers.DecompilationChoiceListener;
@@ -39,6 +41,11 @@ import org.jetbrains.annotations.NotNull;
  * @author Steve Chaloner
  */
 public class NavigationListener implements FileEditorManagerListener {
+    /**
+     * The time navigation has to settle before the class navigated to is decompiled, in milliseconds.
+     */
+    private static final int NAVIGATION_DELAY = 300;
+
     /**
      * Handler classes for the result of navigation actions.
      */
@@ -47,11 +54,26 @@ public class NavigationListener implements FileEditorManagerListener {
             put(NavigationTriggeredDecompile.ALWAYS,
                     new NavigationOption() {
                         public void execute(@NotNull Config config,
-                                            @NotNull DecompilationDescriptor descriptor) {
+                                            @NotNull final DecompilationDescriptor descriptor) {
                             boolean excluded = new Exclusion(config).isExcluded(descriptor);
                             if (!excluded) {
-                                decompilationListener.decompile(new EnvironmentContext(project),
-                                        descriptor);
+                                // only the class the user stays on is worth decompiling, the classes passed
+                                // through on the way, e.g. by stepping through library code, are dropped
+                                alarm.cancelAllRequests();
+                                alarm.addRequest(new Runnable() {
+                                    public void run() {
+                                        if (isSelected(descriptor.getClassFile())) {
+                                            EnvironmentContext context = new EnvironmentContext(project);
+                                            context.setUserData(EnvironmentContext.SPECULATIVE, Boolean.TRUE);
+                                            if (DebuggerListener.isSuspended(project)) {
+                                                // the lines have to match those the debugger reports
+                                                context.setUserData(EnvironmentContext.CODE_STYLE, CodeStyle.DEBUGGABLE_STYLE);
+                                            }
+                                            decompilationListener.decompile(context,
+                                                    descriptor);
+                                        }
+                                    }
+                                }, NAVIGATION_DELAY);
                             }
                         }
                     });
@@ -84,6 +106,11 @@ public class NavigationListener implements FileEditorManagerListener {
     @NotNull
     private final Project project;
 
+    /**
+     * Delays navigation-triggered decompilations until navigation has settled.
+     */
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD);
+
     /**
      * Initialises a new instance of this class.
      *
@@ -96,6 +123,22 @@ public class NavigationListener implements FileEditorManagerListener {
         this.decompilationListener = decompilationListener;
     }
 
+    /**
+     * Drops the navigation-triggered decompilation that hasn't started yet, if there is one.
+     */
+    public void cancelPending() {
+        alarm.cancelAllRequests();
+    }
+
+    private boolean isSelected(@NotNull VirtualFile file) {
+        for (VirtualFile selected : FileEditorManager.getInstance(project).getSelectedFiles()) {
+            if (file.equals(selected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private NavigationTriggeredDecompile getDecompileMode() {
         Config config = PluginUtil.getConfig(project);
         return NavigationTriggeredDecompile.getByName(config.getDecompileOnNavigation());
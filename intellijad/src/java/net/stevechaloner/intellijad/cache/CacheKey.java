@@ -0,0 +1,88 @@
+package net.stevechaloner.intellijad.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Identifies an entry of the {@link DecompilationCache}.
+ * <p>
+ * The key is a digest of the bytes of a class (and its nested classes) combined with a fingerprint
+ * of the settings that influence the decompiled source, so any change to either produces a new key.
+ * </p>
+ */
+public final class CacheKey {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String hash;
+
+    private CacheKey(@NotNull String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Creates a key for the given class files.
+     *
+     * @param classFiles          the class file and all its nested class files, in a stable order
+     * @param settingsFingerprint the settings affecting the decompiled output
+     * @return the key
+     * @throws IOException if a class file can't be read
+     */
+    @NotNull
+    public static CacheKey create(@NotNull List<File> classFiles,
+                                  @NotNull String settingsFingerprint) throws IOException {
+        MessageDigest digest = newDigest();
+        for (File classFile : classFiles) {
+            digest.update(classFile.getName().getBytes(Charsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(FileUtil.loadFileBytes(classFile));
+            digest.update((byte) 0);
+        }
+        digest.update(settingsFingerprint.getBytes(Charsets.UTF_8));
+        return new CacheKey(toHex(digest.digest()));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    // javadoc unnecessary
+    @NotNull
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof CacheKey && hash.equals(((CacheKey) o).hash));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return hash;
+    }
+}
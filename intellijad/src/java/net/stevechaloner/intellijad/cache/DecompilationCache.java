@@ -0,0 +1,150 @@
+package net.stevechaloner.intellijad.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Persistent store of finished (watermarked and reformatted) decompiled sources.
+ * <p>
+ * Entries live in the IDE system directory and therefore survive restarts.  The store is content-addressed,
+ * so stale entries are never returned - they are simply no longer looked up, and are eventually evicted
+ * once the store grows beyond its size limit.
+ * </p>
+ */
+public class DecompilationCache {
+    private static final Logger LOG = Logger.getInstance(DecompilationCache.class);
+
+    private static final String ENTRY_EXTENSION = ".java";
+
+    /**
+     * Size the cache is trimmed to once per session, least recently used entries go first.
+     */
+    private static final long MAX_SIZE = 256L * 1024 * 1024;
+
+    private static volatile DecompilationCache instance;
+
+    private final File directory;
+
+    private final AtomicBoolean trimmed = new AtomicBoolean();
+
+    DecompilationCache(@NotNull File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the application-wide cache.
+     *
+     * @return the cache
+     */
+    @NotNull
+    public static DecompilationCache getInstance() {
+        if (instance == null) {
+            synchronized (DecompilationCache.class) {
+                if (instance == null) {
+                    instance = new DecompilationCache(new File(PathManager.getSystemPath(),
+                            "intellijad" + File.separator + "decompiled"));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the cached source for the key.
+     *
+     * @param key the key
+     * @return the source, or null if the key is not cached
+     */
+    @Nullable
+    public String get(@NotNull CacheKey key) {
+        File entry = entryFile(key);
+        if (entry.isFile()) {
+            try {
+                String content = FileUtil.loadFile(entry, CharsetToolkit.UTF8);
+                if (!entry.setLastModified(System.currentTimeMillis()) && LOG.isDebugEnabled()) {
+                    LOG.debug("Could not touch " + entry.getAbsolutePath());
+                }
+                return content;
+            } catch (IOException e) {
+                LOG.warn("Could not read cache entry " + entry.getAbsolutePath(), e);
+                FileUtil.delete(entry);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the source under the key.  Failures are logged but otherwise ignored, the cache is only an optimisation.
+     *
+     * @param key     the key
+     * @param content the decompiled source
+     */
+    public void put(@NotNull CacheKey key,
+                    @NotNull String content) {
+        if (trimmed.compareAndSet(false, true)) {
+            trim();
+        }
+        File entry = entryFile(key);
+        File temp = new File(entry.getPath() + '.' + Thread.currentThread().getId() + ".tmp");
+        try {
+            FileUtil.writeToFile(temp, content.getBytes(CharsetToolkit.UTF8));
+            FileUtil.delete(entry);
+            FileUtil.rename(temp, entry);
+        } catch (IOException e) {
+            LOG.warn("Could not store cache entry " + entry.getAbsolutePath(), e);
+            FileUtil.delete(temp);
+        }
+    }
+
+    private File entryFile(@NotNull CacheKey key) {
+        String hash = key.getHash();
+        return new File(new File(directory, hash.substring(0, 2)), hash + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Removes the least recently used entries until the cache is below its size limit.
+     */
+    private void trim() {
+        List<File> entries = new ArrayList<File>();
+        File[] buckets = directory.listFiles();
+        long size = 0;
+        if (buckets != null) {
+            for (File bucket : buckets) {
+                File[] files = bucket.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        entries.add(file);
+                        size += file.length();
+                    }
+                }
+            }
+        }
+        if (size > MAX_SIZE) {
+            Collections.sort(entries, new Comparator<File>() {
+                public int compare(File o1, File o2) {
+                    long l1 = o1.lastModified();
+                    long l2 = o2.lastModified();
+                    return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < entries.size() && size > MAX_SIZE * 3 / 4; i++) {
+                File entry = entries.get(i);
+                size -= entry.length();
+                FileUtil.delete(entry);
+            }
+            LOG.info("Decompilation cache trimmed to " + size + " bytes");
+        }
+    }
+}
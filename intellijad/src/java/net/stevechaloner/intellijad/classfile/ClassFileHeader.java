@@ -0,0 +1,185 @@
+package net.stevechaloner.intellijad.classfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The version and name of a class, the classes it refers to and the classes nested in it, read from its class file
+ * without loading the class.
+ */
+public final class ClassFileHeader {
+    private static final String INNER_CLASSES = "InnerClasses";
+    private static final String NEST_MEMBERS = "NestMembers";
+
+    private final int majorVersion;
+
+    private final int minorVersion;
+
+    private final String internalName;
+
+    private final List<String> referencedClasses;
+
+    private final List<String> nestedClasses;
+
+    private ClassFileHeader(int majorVersion,
+                            int minorVersion,
+                            @NotNull String internalName,
+                            @NotNull List<String> referencedClasses,
+                            @NotNull List<String> nestedClasses) {
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        this.internalName = internalName;
+        this.referencedClasses = referencedClasses;
+        this.nestedClasses = nestedClasses;
+    }
+
+    /**
+     * Reads only the major version of a class file, without reading any more of the file than its first eight
+     * bytes.
+     *
+     * @param classFile the class file
+     * @return the major version, e.g. 50 for Java 6
+     * @throws IOException if the file can't be read or is not a class file
+     */
+    public static int readMajorVersion(@NotNull File classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(classFile));
+        try {
+            return ConstantPool.readVersion(in)[0];
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the header of a class file.
+     *
+     * @param bytes the content of the class file
+     * @return the header
+     * @throws IOException if the content is not a valid class file
+     */
+    @NotNull
+    public static ClassFileHeader read(@NotNull byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int[] version = ConstantPool.readVersion(in);
+        ConstantPool pool = ConstantPool.read(in);
+        in.readUnsignedShort();
+        String internalName = pool.className(in.readUnsignedShort());
+        if (internalName == null) {
+            throw new IOException("Invalid class reference");
+        }
+        Set<String> referencedClasses = new LinkedHashSet<String>();
+        for (int i = 1; i < pool.size(); i++) {
+            String referencedClass = elementClass(pool.className(i));
+            if (referencedClass != null && !referencedClass.equals(internalName)) {
+                referencedClasses.add(referencedClass);
+            }
+        }
+
+        // super class, interfaces, fields and methods
+        ConstantPool.skipFully(in, 2);
+        ConstantPool.skipFully(in, 2 * in.readUnsignedShort());
+        ConstantPool.skipMembers(in);
+        ConstantPool.skipMembers(in);
+
+        Set<String> nestedClasses = new LinkedHashSet<String>();
+        int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            String name = pool.utf8(in.readUnsignedShort());
+            int length = in.readInt();
+            if (INNER_CLASSES.equals(name)) {
+                for (int classes = in.readUnsignedShort(); classes > 0; classes--) {
+                    String innerClass = pool.className(in.readUnsignedShort());
+                    String outerClass = pool.className(in.readUnsignedShort());
+                    in.skipBytes(4);
+                    // members of the class name it as their outer class, local and anonymous classes name none,
+                    // but only the class declaring them refers to them
+                    if (innerClass != null && !innerClass.equals(internalName)
+                            && (outerClass == null || outerClass.equals(internalName))) {
+                        nestedClasses.add(innerClass);
+                    }
+                }
+            } else if (NEST_MEMBERS.equals(name)) {
+                for (int classes = in.readUnsignedShort(); classes > 0; classes--) {
+                    String member = pool.className(in.readUnsignedShort());
+                    if (member != null) {
+                        nestedClasses.add(member);
+                    }
+                }
+            } else {
+                ConstantPool.skipFully(in, length);
+            }
+        }
+        return new ClassFileHeader(version[0],
+                version[1],
+                internalName,
+                Collections.unmodifiableList(new ArrayList<String>(referencedClasses)),
+                Collections.unmodifiableList(new ArrayList<String>(nestedClasses)));
+    }
+
+    /**
+     * Gets the class a class constant stands for, which for an array class is the class of its elements.
+     *
+     * @param name the name of the class constant
+     * @return the internal name of the class, or null for an array of primitives
+     */
+    private static String elementClass(String name) {
+        if (name == null || !name.startsWith("[")) {
+            return name;
+        }
+        int start = name.lastIndexOf('[') + 1;
+        return name.charAt(start) == 'L' && name.endsWith(";") ? name.substring(start + 1, name.length() - 1) : null;
+    }
+
+    // javadoc unnecessary
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    // javadoc unnecessary
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    /**
+     * Gets the name of the class with slashes separating the packages, e.g. {@code java/util/Map$Entry}.
+     *
+     * @return the internal name
+     */
+    @NotNull
+    public String getInternalName() {
+        return internalName;
+    }
+
+    /**
+     * Gets the classes the class refers to, in the order of its constant pool.  Arrays stand for the class of their
+     * elements, and the class itself is left out.
+     *
+     * @return the internal names of the classes
+     */
+    @NotNull
+    public List<String> getReferencedClasses() {
+        return referencedClasses;
+    }
+
+    /**
+     * Gets the classes nested directly in the class, as listed by its {@code InnerClasses} and
+     * {@code NestMembers} attributes.  Member classes of nested classes are listed by their own class files, except
+     * that the nest members of a Java 11 class include the whole nest.
+     *
+     * @return the internal names of the classes
+     */
+    @NotNull
+    public List<String> getNestedClasses() {
+        return nestedClasses;
+    }
+}
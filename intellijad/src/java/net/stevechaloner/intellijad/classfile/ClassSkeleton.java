@@ -0,0 +1,414 @@
+package net.stevechaloner.intellijad.classfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Renders the declarations of a class straight from its class file - package, imports, the class declaration,
+ * fields and method signatures - without running a decompiler, so there is something to look at within
+ * milliseconds while the class is decompiled.
+ * <p>
+ * Method bodies are replaced by a comment with the first line the method was compiled from, if the class file
+ * has line numbers.  Types are rendered as erased by the compiler, and synthetic members are left out.
+ * </p>
+ */
+public final class ClassSkeleton {
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SYNCHRONIZED = 0x0020;
+    private static final int ACC_VOLATILE = 0x0040;
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_TRANSIENT = 0x0080;
+    private static final int ACC_VARARGS = 0x0080;
+    private static final int ACC_NATIVE = 0x0100;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_ENUM = 0x4000;
+
+    private static final String INDENT = "    ";
+
+    private static final String JAVA_LANG = "java/lang/";
+
+    private final ConstantPool pool;
+
+    private final String internalName;
+
+    private final String packageName;
+
+    /**
+     * The types the skeleton refers to, mapped to the names they are rendered with.
+     */
+    private final Map<String, String> typeNames = new HashMap<String, String>();
+
+    /**
+     * The simple names in use, mapped to the type they stand for.
+     */
+    private final Map<String, String> simpleNames = new HashMap<String, String>();
+
+    private final TreeSet<String> imports = new TreeSet<String>();
+
+    private ClassSkeleton(@NotNull ConstantPool pool,
+                          @NotNull String internalName) {
+        this.pool = pool;
+        this.internalName = internalName;
+        int lastSlash = internalName.lastIndexOf('/');
+        this.packageName = lastSlash == -1 ? "" : internalName.substring(0, lastSlash + 1);
+        // the class itself is always known by its simple name
+        typeNames.put(internalName, simpleNameOf(internalName));
+        simpleNames.put(typeNames.get(internalName), internalName);
+    }
+
+    /**
+     * Renders the skeleton of a class.
+     *
+     * @param bytes the content of the class file
+     * @return the source of the skeleton
+     * @throws IOException if the content is not a valid class file
+     */
+    @NotNull
+    public static String render(@NotNull byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        ConstantPool.readVersion(in);
+        ConstantPool pool = ConstantPool.read(in);
+        int access = in.readUnsignedShort();
+        String internalName = pool.className(in.readUnsignedShort());
+        if (internalName == null) {
+            throw new IOException("Invalid class reference");
+        }
+        return new ClassSkeleton(pool, internalName).render(in, access);
+    }
+
+    @NotNull
+    private String render(@NotNull DataInputStream in,
+                          int access) throws IOException {
+        StringBuilder body = new StringBuilder();
+        String superName = pool.className(in.readUnsignedShort());
+        List<String> interfaces = new ArrayList<String>();
+        for (int count = in.readUnsignedShort(); count > 0; count--) {
+            String name = pool.className(in.readUnsignedShort());
+            if (name != null) {
+                interfaces.add(name);
+            }
+        }
+        boolean isInterface = (access & ACC_INTERFACE) != 0;
+        boolean isEnum = (access & ACC_ENUM) != 0;
+        renderDeclaration(body, access, superName, interfaces);
+
+        body.append(" {\n");
+        List<String> constants = new ArrayList<String>();
+        StringBuilder fields = new StringBuilder();
+        for (int count = in.readUnsignedShort(); count > 0; count--) {
+            renderField(fields, constants, in, isInterface);
+        }
+        if (!constants.isEmpty() || isEnum) {
+            body.append(INDENT);
+            for (int i = 0; i < constants.size(); i++) {
+                body.append(i == 0 ? "" : ", ").append(constants.get(i));
+            }
+            body.append(";\n\n");
+        }
+        if (fields.length() > 0) {
+            body.append(fields).append('\n');
+        }
+        for (int count = in.readUnsignedShort(); count > 0; count--) {
+            renderMethod(body, in, isInterface, isEnum);
+        }
+        body.append("}\n");
+
+        StringBuilder source = new StringBuilder();
+        if (packageName.length() > 0) {
+            source.append("package ").append(toJavaName(packageName.substring(0, packageName.length() - 1)))
+                    .append(";\n\n");
+        }
+        for (String imported : imports) {
+            source.append("import ").append(imported).append(";\n");
+        }
+        if (!imports.isEmpty()) {
+            source.append('\n');
+        }
+        return source.append(body).toString();
+    }
+
+    private void renderDeclaration(@NotNull StringBuilder out,
+                                   int access,
+                                   @Nullable String superName,
+                                   @NotNull List<String> interfaces) {
+        boolean isInterface = (access & ACC_INTERFACE) != 0;
+        boolean isEnum = (access & ACC_ENUM) != 0;
+        if ((access & ACC_PUBLIC) != 0) {
+            out.append("public ");
+        }
+        if ((access & ACC_ABSTRACT) != 0 && !isInterface) {
+            out.append("abstract ");
+        }
+        if ((access & ACC_FINAL) != 0 && !isEnum) {
+            out.append("final ");
+        }
+        if ((access & ACC_ANNOTATION) != 0) {
+            out.append("@interface ");
+        } else if (isInterface) {
+            out.append("interface ");
+        } else if (isEnum) {
+            out.append("enum ");
+        } else {
+            out.append("class ");
+        }
+        out.append(simpleNameOf(internalName));
+        if (superName != null && !isInterface && !isEnum && !"java/lang/Object".equals(superName)) {
+            out.append(" extends ").append(typeName(superName));
+        }
+        if ((access & ACC_ANNOTATION) == 0 && !interfaces.isEmpty()) {
+            out.append(isInterface ? " extends " : " implements ");
+            for (int i = 0; i < interfaces.size(); i++) {
+                out.append(i == 0 ? "" : ", ").append(typeName(interfaces.get(i)));
+            }
+        }
+    }
+
+    private void renderField(@NotNull StringBuilder out,
+                             @NotNull List<String> constants,
+                             @NotNull DataInputStream in,
+                             boolean isInterface) throws IOException {
+        int access = in.readUnsignedShort();
+        String name = pool.utf8(in.readUnsignedShort());
+        String descriptor = pool.utf8(in.readUnsignedShort());
+        ConstantPool.skipAttributes(in);
+        if ((access & ACC_SYNTHETIC) != 0 || name == null || descriptor == null) {
+            return;
+        }
+        if ((access & ACC_ENUM) != 0) {
+            constants.add(name);
+            return;
+        }
+        out.append(INDENT);
+        if (!isInterface) {
+            appendVisibility(out, access);
+            appendFlag(out, access, ACC_STATIC, "static");
+            appendFlag(out, access, ACC_FINAL, "final");
+            appendFlag(out, access, ACC_VOLATILE, "volatile");
+            appendFlag(out, access, ACC_TRANSIENT, "transient");
+        }
+        out.append(descriptorType(descriptor, new int[]{0})).append(' ').append(name).append(";\n");
+    }
+
+    private void renderMethod(@NotNull StringBuilder out,
+                              @NotNull DataInputStream in,
+                              boolean isInterface,
+                              boolean isEnum) throws IOException {
+        int access = in.readUnsignedShort();
+        String name = pool.utf8(in.readUnsignedShort());
+        String descriptor = pool.utf8(in.readUnsignedShort());
+        int firstLine = Integer.MAX_VALUE;
+        List<String> exceptions = new ArrayList<String>();
+        for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+            String attribute = pool.utf8(in.readUnsignedShort());
+            int length = in.readInt();
+            if ("Code".equals(attribute)) {
+                firstLine = Math.min(firstLine, readFirstLine(in));
+            } else if ("Exceptions".equals(attribute)) {
+                for (int count = in.readUnsignedShort(); count > 0; count--) {
+                    String exception = pool.className(in.readUnsignedShort());
+                    if (exception != null) {
+                        exceptions.add(exception);
+                    }
+                }
+            } else {
+                ConstantPool.skipFully(in, length);
+            }
+        }
+        if ((access & (ACC_SYNTHETIC | ACC_BRIDGE)) != 0 || name == null || descriptor == null
+                || "<clinit>".equals(name)) {
+            return;
+        }
+
+        out.append(INDENT);
+        boolean isAbstract = (access & ACC_ABSTRACT) != 0;
+        if (isInterface) {
+            appendFlag(out, access, ACC_PRIVATE, "private");
+            appendFlag(out, access, ACC_STATIC, "static");
+            if (!isAbstract && (access & (ACC_STATIC | ACC_PRIVATE)) == 0) {
+                out.append("default ");
+            }
+        } else {
+            // enum constructors are private whatever the class file says
+            if (!isEnum || !"<init>".equals(name)) {
+                appendVisibility(out, access);
+            }
+            appendFlag(out, access, ACC_STATIC, "static");
+            appendFlag(out, access, ACC_FINAL, "final");
+            appendFlag(out, access, ACC_SYNCHRONIZED, "synchronized");
+            appendFlag(out, access, ACC_NATIVE, "native");
+            appendFlag(out, access, ACC_ABSTRACT, "abstract");
+        }
+
+        int[] position = {descriptor.indexOf('(') + 1};
+        List<String> parameters = new ArrayList<String>();
+        while (position[0] < descriptor.length() && descriptor.charAt(position[0]) != ')') {
+            parameters.add(descriptorType(descriptor, position));
+        }
+        position[0]++;
+        String returnType = descriptorType(descriptor, position);
+        if ("<init>".equals(name)) {
+            out.append(simpleNameOf(internalName));
+        } else {
+            out.append(returnType).append(' ').append(name);
+        }
+        out.append('(');
+        for (int i = 0; i < parameters.size(); i++) {
+            String parameter = parameters.get(i);
+            if (i == parameters.size() - 1 && (access & ACC_VARARGS) != 0 && parameter.endsWith("[]")) {
+                parameter = parameter.substring(0, parameter.length() - 2) + "...";
+            }
+            out.append(i == 0 ? "" : ", ").append(parameter).append(" arg").append(i);
+        }
+        out.append(')');
+        for (int i = 0; i < exceptions.size(); i++) {
+            out.append(i == 0 ? " throws " : ", ").append(typeName(exceptions.get(i)));
+        }
+        if (isAbstract || (access & ACC_NATIVE) != 0) {
+            out.append(";\n");
+        } else if (firstLine == Integer.MAX_VALUE) {
+            out.append(" { /* compiled code */ }\n");
+        } else {
+            out.append(" { /* line ").append(firstLine).append(" */ }\n");
+        }
+    }
+
+    /**
+     * Reads a {@code Code} attribute, positioned after its length, for the lowest line number of its
+     * {@code LineNumberTable}.
+     *
+     * @return the line number, or {@link Integer#MAX_VALUE} if the code has none
+     */
+    private int readFirstLine(@NotNull DataInputStream in) throws IOException {
+        // max stack, max locals, code, exception table
+        ConstantPool.skipFully(in, 4);
+        ConstantPool.skipFully(in, in.readInt());
+        ConstantPool.skipFully(in, 8 * in.readUnsignedShort());
+        int firstLine = Integer.MAX_VALUE;
+        for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+            String attribute = pool.utf8(in.readUnsignedShort());
+            int length = in.readInt();
+            if ("LineNumberTable".equals(attribute)) {
+                for (int count = in.readUnsignedShort(); count > 0; count--) {
+                    in.readUnsignedShort();
+                    firstLine = Math.min(firstLine, in.readUnsignedShort());
+                }
+            } else {
+                ConstantPool.skipFully(in, length);
+            }
+        }
+        return firstLine;
+    }
+
+    /**
+     * Renders the type at a position of a descriptor, and moves the position past it.
+     */
+    @NotNull
+    private String descriptorType(@NotNull String descriptor,
+                                  @NotNull int[] position) throws IOException {
+        int dimensions = 0;
+        while (position[0] < descriptor.length() && descriptor.charAt(position[0]) == '[') {
+            dimensions++;
+            position[0]++;
+        }
+        if (position[0] >= descriptor.length()) {
+            throw new IOException("Invalid descriptor " + descriptor);
+        }
+        String type;
+        char c = descriptor.charAt(position[0]++);
+        switch (c) {
+            case 'B': type = "byte"; break;
+            case 'C': type = "char"; break;
+            case 'D': type = "double"; break;
+            case 'F': type = "float"; break;
+            case 'I': type = "int"; break;
+            case 'J': type = "long"; break;
+            case 'S': type = "short"; break;
+            case 'Z': type = "boolean"; break;
+            case 'V': type = "void"; break;
+            case 'L':
+                int end = descriptor.indexOf(';', position[0]);
+                if (end == -1) {
+                    throw new IOException("Invalid descriptor " + descriptor);
+                }
+                type = typeName(descriptor.substring(position[0], end));
+                position[0] = end + 1;
+                break;
+            default:
+                throw new IOException("Invalid descriptor " + descriptor);
+        }
+        StringBuilder sb = new StringBuilder(type);
+        for (int i = 0; i < dimensions; i++) {
+            sb.append("[]");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the name a class is rendered with, importing it if its simple name isn't taken yet.
+     */
+    @NotNull
+    private String typeName(@NotNull String internalName) {
+        String typeName = typeNames.get(internalName);
+        if (typeName == null) {
+            int nested = internalName.indexOf('$', internalName.lastIndexOf('/') + 1);
+            String outerClass = nested == -1 ? internalName : internalName.substring(0, nested);
+            String simpleName = simpleNameOf(outerClass);
+            String owner = simpleNames.get(simpleName);
+            if (owner == null || owner.equals(outerClass)) {
+                simpleNames.put(simpleName, outerClass);
+                String outerPackage = outerClass.substring(0, outerClass.length() - simpleName.length());
+                if (!outerPackage.equals(packageName) && !outerPackage.equals(JAVA_LANG)) {
+                    imports.add(toJavaName(outerClass));
+                }
+                typeName = toJavaName(simpleName + (nested == -1 ? "" : internalName.substring(nested)));
+            } else {
+                typeName = toJavaName(internalName);
+            }
+            typeNames.put(internalName, typeName);
+        }
+        return typeName;
+    }
+
+    private static void appendVisibility(@NotNull StringBuilder out,
+                                         int access) {
+        appendFlag(out, access, ACC_PUBLIC, "public");
+        appendFlag(out, access, ACC_PROTECTED, "protected");
+        appendFlag(out, access, ACC_PRIVATE, "private");
+    }
+
+    private static void appendFlag(@NotNull StringBuilder out,
+                                   int access,
+                                   int flag,
+                                   @NotNull String modifier) {
+        if ((access & flag) != 0) {
+            out.append(modifier).append(' ');
+        }
+    }
+
+    @NotNull
+    private static String simpleNameOf(@NotNull String internalName) {
+        String name = internalName.substring(internalName.lastIndexOf('/') + 1);
+        return name.substring(name.lastIndexOf('$') + 1);
+    }
+
+    @NotNull
+    private static String toJavaName(@NotNull String internalName) {
+        return internalName.replace('/', '.').replace('$', '.');
+    }
+}
@@ -0,0 +1,174 @@
+package net.stevechaloner.intellijad.classfile;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The names in the constant pool of a class file, which is all the class file readers of this package need from
+ * it.  Other constants are skipped rather than decoded.
+ */
+final class ConstantPool {
+    static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String[] utf8;
+
+    private final int[] classNames;
+
+    private ConstantPool(@NotNull String[] utf8,
+                         @NotNull int[] classNames) {
+        this.utf8 = utf8;
+        this.classNames = classNames;
+    }
+
+    /**
+     * Reads the constant pool, including the count preceding it.
+     *
+     * @param in the class file, positioned after its version
+     * @return the constant pool
+     * @throws IOException if the constant pool is invalid
+     */
+    @NotNull
+    static ConstantPool read(@NotNull DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNames = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    // eight byte constants take up two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + " at entry " + i);
+            }
+        }
+        return new ConstantPool(utf8, classNames);
+    }
+
+    /**
+     * Reads the magic number and version of a class file.
+     *
+     * @param in the class file
+     * @return the major and the minor version
+     * @throws IOException if the content is not a class file
+     */
+    @NotNull
+    static int[] readVersion(@NotNull DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        int minorVersion = in.readUnsignedShort();
+        return new int[]{in.readUnsignedShort(), minorVersion};
+    }
+
+    /**
+     * Skips the fields or methods of a class file, along with their attributes.
+     *
+     * @param in the class file, positioned at the count of the members
+     * @throws IOException if the class file ends early
+     */
+    static void skipMembers(@NotNull DataInputStream in) throws IOException {
+        for (int members = in.readUnsignedShort(); members > 0; members--) {
+            // access flags, name and descriptor
+            skipFully(in, 6);
+            skipAttributes(in);
+        }
+    }
+
+    /**
+     * Skips the attributes of a class file structure, including their count.
+     *
+     * @param in the class file, positioned at the count of the attributes
+     * @throws IOException if the class file ends early
+     */
+    static void skipAttributes(@NotNull DataInputStream in) throws IOException {
+        for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+            skipFully(in, 2);
+            skipFully(in, in.readInt());
+        }
+    }
+
+    static void skipFully(@NotNull DataInputStream in,
+                          int length) throws IOException {
+        if (length < 0 || in.skipBytes(length) != length) {
+            throw new EOFException();
+        }
+    }
+
+    // javadoc unnecessary
+    int size() {
+        return classNames.length;
+    }
+
+    /**
+     * Gets a string constant.
+     *
+     * @param index the index of the constant
+     * @return the string, or null if the index doesn't refer to a string constant
+     */
+    @Nullable
+    String utf8(int index) {
+        return index > 0 && index < utf8.length ? utf8[index] : null;
+    }
+
+    /**
+     * Gets the name of a class constant.
+     *
+     * @param index the index of the constant
+     * @return the name, or null if the index doesn't refer to a class constant
+     */
+    @Nullable
+    String className(int index) {
+        return index > 0 && index < classNames.length ? utf8(classNames[index]) : null;
+    }
+}
@@ -37,7 +37,13 @@ public enum CodeStyle
      * The debuggable style - lots of empty lines, inlined code, etc.
      */
     DEBUGGABLE_STYLE("Debuggable-Style",
-                    IntelliJadResourceBundle.message("config.reformat.debuggable-style"));
+                    IntelliJadResourceBundle.message("config.reformat.debuggable-style")),
+
+    /**
+     * Jad's own layout, with the debugger mapping the original line numbers onto it.
+     */
+    LINE_MAPPED_STYLE("Line-Mapped-Style",
+                      IntelliJadResourceBundle.message("config.reformat.line-mapped-style"));
 
     /**
      * Mapping of the entry name to the entry.
@@ -48,6 +54,8 @@ public enum CodeStyle
                 PREFERRED_STYLE);
             put(DEBUGGABLE_STYLE.getName(),
                 DEBUGGABLE_STYLE);
+            put(LINE_MAPPED_STYLE.getName(),
+                LINE_MAPPED_STYLE);
         }
 
         /**
@@ -105,6 +113,16 @@ public enum CodeStyle
         return displayName;
     }
 
+    /**
+     * Checks if the style lets the debugger show the lines the code was compiled from.
+     *
+     * @return true if the source is decompiled with line numbers
+     */
+    public boolean isDebuggable()
+    {
+        return this != PREFERRED_STYLE;
+    }
+
     /**
      * Look up the enum entry by name.
      *
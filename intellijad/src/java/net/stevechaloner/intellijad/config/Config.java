@@ -16,8 +16,10 @@
 package net.stevechaloner.intellijad.config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import com.intellij.execution.configurations.ParametersList;
 import com.intellij.openapi.util.text.StringUtil;
 import net.stevechaloner.idea.util.properties.DOMable;
 import net.stevechaloner.idea.util.properties.DOMableCollectionContentType;
@@ -45,6 +47,7 @@ public class Config implements DOMable {
     private static final PropertyDescriptor<Boolean> CLEAR_AND_CLOSE_CONSOLE_ON_SUCCESS = new ImmutablePropertyDescriptor<Boolean>("clear-and-close-console-on-success");        
     private static final PropertyDescriptor<ExclusionTableModel> EXCLUSION_TABLE_MODEL = new ImmutablePropertyDescriptor<ExclusionTableModel>("exclusion-table-model");
     private static final PropertyDescriptor<String> JAD_PATH = new ImmutablePropertyDescriptor<String>("jad-path");
+    private static final PropertyDescriptor<String> DECOMPILATION_ENGINE = new ImmutablePropertyDescriptor<String>("decompilation-engine", "jad");
     private static final PropertyDescriptor<Integer> LIMIT_INDENTATION = new ImmutablePropertyDescriptor<Integer>("indentation", 4);
     private static final PropertyDescriptor<Boolean> READ_ONLY = new ImmutablePropertyDescriptor<Boolean>("read-only");
     private static final PropertyDescriptor<Boolean> SORT = new ImmutablePropertyDescriptor<Boolean>("sort");
@@ -56,6 +59,15 @@ public class Config implements DOMable {
     private static final PropertyDescriptor<Boolean> FORCED_DECOMPILE_TO_MEMORY = new ImmutablePropertyDescriptor<Boolean>("forced-decompile-to-memory", Boolean.FALSE);
     private static final PropertyDescriptor<Boolean> CUSTOM_TEMP_DIR = new ImmutablePropertyDescriptor<Boolean>("use-custom-temp-dir", Boolean.FALSE);
     private static final PropertyDescriptor<String> CUSTOM_TEMP_DIR_PATH = new ImmutablePropertyDescriptor<String>("custom-temp-dir-path");
+    private static final PropertyDescriptor<Boolean> USE_DECOMPILATION_CACHE = new ImmutablePropertyDescriptor<Boolean>("use-decompilation-cache", Boolean.TRUE);
+    private static final PropertyDescriptor<Boolean> DECOMPILE_IN_BACKGROUND = new ImmutablePropertyDescriptor<Boolean>("decompile-in-background", Boolean.TRUE);
+    private static final PropertyDescriptor<Integer> DECOMPILER_TIMEOUT = new ImmutablePropertyDescriptor<Integer>("decompiler-timeout", 60);
+    private static final PropertyDescriptor<Integer> MAX_DECOMPILER_OUTPUT = new ImmutablePropertyDescriptor<Integer>("max-decompiler-output", 16384);
+    private static final PropertyDescriptor<Integer> COALESCING_WINDOW = new ImmutablePropertyDescriptor<Integer>("coalescing-window", 30);
+    private static final PropertyDescriptor<Integer> PREFETCH_BUDGET = new ImmutablePropertyDescriptor<Integer>("prefetch-budget", 8);
+    private static final PropertyDescriptor<Boolean> SHOW_SKELETON = new ImmutablePropertyDescriptor<Boolean>("show-skeleton", Boolean.TRUE);
+    private static final PropertyDescriptor<Boolean> STREAM_OUTPUT = new ImmutablePropertyDescriptor<Boolean>("stream-output", Boolean.FALSE);
+    private static final PropertyDescriptor<String> PREDECOMPILED_LIBRARIES = new ImmutablePropertyDescriptor<String>("predecompiled-libraries", "");
     //keep deprecated properties to support users coming from older plugin version
     @Deprecated
     private static final PropertyDescriptor<Boolean> DECOMPILE_TO_MEMORY = new ImmutablePropertyDescriptor<Boolean>("decompile-to-memory", Boolean.FALSE);
@@ -132,12 +144,22 @@ public class Config implements DOMable {
         registerBooleanProperty(JadOptions.USE_TABS, dpc);
         registerBooleanProperty(JadOptions.VERBOSE, dpc);
         registerStringProperty(JAD_PATH, dpc);
+        registerStringProperty(DECOMPILATION_ENGINE, dpc);
         registerBooleanProperty(USE_PROJECT_SPECIFIC_SETTINGS, dpc);
         registerStringProperty(REFORMAT_STYLE, dpc);
         registerBooleanProperty(CLEANUP_SOURCE_ROOTS, dpc);
         registerBooleanProperty(FORCED_DECOMPILE_TO_MEMORY, dpc);
         registerBooleanProperty(CUSTOM_TEMP_DIR, dpc);
         registerStringProperty(CUSTOM_TEMP_DIR_PATH, dpc);
+        registerBooleanProperty(USE_DECOMPILATION_CACHE, dpc);
+        registerBooleanProperty(DECOMPILE_IN_BACKGROUND, dpc);
+        registerIntegerProperty(DECOMPILER_TIMEOUT, dpc);
+        registerIntegerProperty(MAX_DECOMPILER_OUTPUT, dpc);
+        registerIntegerProperty(COALESCING_WINDOW, dpc);
+        registerIntegerProperty(PREFETCH_BUDGET, dpc);
+        registerStringProperty(PREDECOMPILED_LIBRARIES, dpc);
+        registerBooleanProperty(SHOW_SKELETON, dpc);
+        registerBooleanProperty(STREAM_OUTPUT, dpc);
 
         dpc.put(EXCLUSION_TABLE_MODEL,
                 new DOMableTableModel(EXCLUSION_TABLE_MODEL,
@@ -655,6 +677,21 @@ public class Config implements DOMable {
         value.setValue(jadPath);
     }
 
+    /**
+     * Gets the name of the engine classes are decompiled with.
+     *
+     * @return the name of the engine
+     * @see net.stevechaloner.intellijad.decompilers.DecompilationEngine#getName()
+     */
+    public String getDecompilationEngine() {
+        return DECOMPILATION_ENGINE.getValue(propertyContainer.get(DECOMPILATION_ENGINE));
+    }
+
+    public void setDecompilationEngine(String decompilationEngine) {
+        DOMableGeneric<String> value = (DOMableGeneric<String>) propertyContainer.get(DECOMPILATION_ENGINE);
+        value.setValue(decompilationEngine);
+    }
+
     @Deprecated
     public boolean isDecompileToMemory() {
         return DECOMPILE_TO_MEMORY.getValue(propertyContainer.get(DECOMPILE_TO_MEMORY));
@@ -758,6 +795,123 @@ public class Config implements DOMable {
         return CUSTOM_TEMP_DIR_PATH.getValue(propertyContainer.get(CUSTOM_TEMP_DIR_PATH));
     }
 
+    public boolean isUseDecompilationCache() {
+        return USE_DECOMPILATION_CACHE.getValue(propertyContainer.get(USE_DECOMPILATION_CACHE));
+    }
+
+    public void setUseDecompilationCache(boolean useCache) {
+        DOMableGeneric<Boolean> value = (DOMableGeneric<Boolean>) propertyContainer.get(USE_DECOMPILATION_CACHE);
+        value.setValue(useCache);
+    }
+
+    public boolean isDecompileInBackground() {
+        return DECOMPILE_IN_BACKGROUND.getValue(propertyContainer.get(DECOMPILE_IN_BACKGROUND));
+    }
+
+    public void setDecompileInBackground(boolean decompileInBackground) {
+        DOMableGeneric<Boolean> value = (DOMableGeneric<Boolean>) propertyContainer.get(DECOMPILE_IN_BACKGROUND);
+        value.setValue(decompileInBackground);
+    }
+
+    /**
+     * Gets the time a decompiler process may run before it is destroyed.
+     *
+     * @return the timeout in seconds, zero or less for none
+     */
+    public Integer getDecompilerTimeout() {
+        return DECOMPILER_TIMEOUT.getValue(propertyContainer.get(DECOMPILER_TIMEOUT));
+    }
+
+    public void setDecompilerTimeout(Integer decompilerTimeout) {
+        DOMableGeneric<Integer> value = (DOMableGeneric<Integer>) propertyContainer.get(DECOMPILER_TIMEOUT);
+        value.setValue(decompilerTimeout);
+    }
+
+    /**
+     * Gets the amount of output captured from each stream of a decompiler process.
+     *
+     * @return the limit in kilobytes, zero or less for none
+     */
+    public Integer getMaxDecompilerOutput() {
+        return MAX_DECOMPILER_OUTPUT.getValue(propertyContainer.get(MAX_DECOMPILER_OUTPUT));
+    }
+
+    public void setMaxDecompilerOutput(Integer maxDecompilerOutput) {
+        DOMableGeneric<Integer> value = (DOMableGeneric<Integer>) propertyContainer.get(MAX_DECOMPILER_OUTPUT);
+        value.setValue(maxDecompilerOutput);
+    }
+
+    /**
+     * Gets the time a decompilation waits for others to share a decompiler process with.
+     *
+     * @return the window in milliseconds, zero or less to run every decompilation on its own
+     */
+    public Integer getCoalescingWindow() {
+        return COALESCING_WINDOW.getValue(propertyContainer.get(COALESCING_WINDOW));
+    }
+
+    public void setCoalescingWindow(Integer coalescingWindow) {
+        DOMableGeneric<Integer> value = (DOMableGeneric<Integer>) propertyContainer.get(COALESCING_WINDOW);
+        value.setValue(coalescingWindow);
+    }
+
+    /**
+     * Gets the number of classes referenced by a decompiled class that are decompiled ahead of navigation.
+     *
+     * @return the number of classes, zero or less for none
+     */
+    public Integer getPrefetchBudget() {
+        return PREFETCH_BUDGET.getValue(propertyContainer.get(PREFETCH_BUDGET));
+    }
+
+    public void setPrefetchBudget(Integer prefetchBudget) {
+        DOMableGeneric<Integer> value = (DOMableGeneric<Integer>) propertyContainer.get(PREFETCH_BUDGET);
+        value.setValue(prefetchBudget);
+    }
+
+    /**
+     * Checks if the skeleton of a class, its declarations without any code, is shown while it's being decompiled.
+     *
+     * @return true if the skeleton is shown
+     */
+    public boolean isShowSkeleton() {
+        return SHOW_SKELETON.getValue(propertyContainer.get(SHOW_SKELETON));
+    }
+
+    public void setShowSkeleton(boolean showSkeleton) {
+        DOMableGeneric<Boolean> value = (DOMableGeneric<Boolean>) propertyContainer.get(SHOW_SKELETON);
+        value.setValue(showSkeleton);
+    }
+
+    /**
+     * Checks if the output of the decompiler is shown as it arrives, before it's been reformatted.
+     *
+     * @return true if the output is streamed into an editor
+     */
+    public boolean isStreamOutput() {
+        return STREAM_OUTPUT.getValue(propertyContainer.get(STREAM_OUTPUT));
+    }
+
+    public void setStreamOutput(boolean streamOutput) {
+        DOMableGeneric<Boolean> value = (DOMableGeneric<Boolean>) propertyContainer.get(STREAM_OUTPUT);
+        value.setValue(streamOutput);
+    }
+
+    /**
+     * Gets the libraries decompiled in the background while the IDE is idle, as a comma-separated list of library
+     * names, which may contain <code>*</code> wildcards.
+     *
+     * @return the library names, empty for none
+     */
+    public String getPredecompiledLibraries() {
+        return PREDECOMPILED_LIBRARIES.getValue(propertyContainer.get(PREDECOMPILED_LIBRARIES));
+    }
+
+    public void setPredecompiledLibraries(String predecompiledLibraries) {
+        DOMableGeneric<String> value = (DOMableGeneric<String>) propertyContainer.get(PREDECOMPILED_LIBRARIES);
+        value.setValue(predecompiledLibraries);
+    }
+
     @NotNull
     public PropertyDescriptor getPropertyDescriptor() {
         return domable.getPropertyDescriptor();
@@ -801,13 +955,19 @@ public class Config implements DOMable {
         return EXCLUSION_TABLE_MODEL.getValue(propertyContainer.get(EXCLUSION_TABLE_MODEL));
     }
 
+    /**
+     * Gets the command line options as separate arguments, an option with a value yields two of them.  A value
+     * containing spaces is kept together if it's quoted, as it would be on the command line.
+     *
+     * @return the arguments
+     */
     public List<String> getArguments() {
         List<String> arguments = new ArrayList<String>();
         for (CommandLinePropertyDescriptor pd : commandLinePropertyDescriptors) {
             String option = pd.getOption(ruleContext,
                     propertyContainer.get(pd));
             if (option != null) {
-                arguments.add(option);
+                arguments.addAll(Arrays.asList(ParametersList.parse(option)));
             }
         }
         return arguments;
@@ -859,6 +1019,7 @@ public class Config implements DOMable {
         setStatistics(config.isStatistics());
         setRestorePackages(config.isRestorePackages());
         setJadPath(config.getJadPath());
+        setDecompilationEngine(config.getDecompilationEngine());
         setDecompileToMemory(config.isDecompileToMemory());
         setCreateOutputDirectory(config.isCreateOutputDirectory());
         setAlwaysExcludeRecursively(config.isAlwaysExcludeRecursively());
@@ -869,6 +1030,15 @@ public class Config implements DOMable {
         setForcedDecompileToMemory(config.isForcedDecompileToMemory());
         setUseCustomTempDir(config.isUseCustomTempDir());
         setCustomTempDirPath(config.getCustomTempDirPath());
+        setUseDecompilationCache(config.isUseDecompilationCache());
+        setDecompileInBackground(config.isDecompileInBackground());
+        setDecompilerTimeout(config.getDecompilerTimeout());
+        setMaxDecompilerOutput(config.getMaxDecompilerOutput());
+        setCoalescingWindow(config.getCoalescingWindow());
+        setPrefetchBudget(config.getPrefetchBudget());
+        setPredecompiledLibraries(config.getPredecompiledLibraries());
+        setShowSkeleton(config.isShowSkeleton());
+        setStreamOutput(config.isStreamOutput());
     }
 
     public boolean isOutputDirectoryNotSet() {
@@ -52,6 +52,7 @@ import net.stevechaloner.idea.util.fs.ApplicationFileSelectionAction;
 import net.stevechaloner.idea.util.fs.FileSelectionDescriptor;
 import net.stevechaloner.idea.util.fs.ProjectFileSelectionAction;
 import net.stevechaloner.intellijad.IntelliJadResourceBundle;
+import net.stevechaloner.intellijad.decompilers.DecompilationEngine;
 import net.stevechaloner.intellijad.util.FileSystemUtil;
 import net.stevechaloner.intellijad.util.PluginUtil;
 import org.jetbrains.annotations.Nullable;
@@ -109,6 +110,16 @@ public class ConfigForm
     @Control private JCheckBox tempDirectoryCheckBox;
     @Control private JTextField tempDirTextField;
     @Control private JButton browseTempDirButton;
+    @Control private JComboBox decompilationEngine;
+    @Control private JCheckBox useDecompilationCacheCheckBox;
+    @Control private JCheckBox decompileInBackgroundCheckBox;
+    @Control private JCheckBox showSkeletonCheckBox;
+    @Control private JCheckBox streamOutputCheckBox;
+    @Control private JSpinner decompilerTimeoutSpinner;
+    @Control private JSpinner maxDecompilerOutputSpinner;
+    @Control private JSpinner coalescingWindowSpinner;
+    @Control private JSpinner prefetchBudgetSpinner;
+    @Control private JTextField predecompiledLibrariesTextField;
 
     private ExclusionTableModel exclusionTableModel;
 
@@ -139,12 +150,22 @@ public class ConfigForm
 
         reformatStyle.addItem(CodeStyle.PREFERRED_STYLE);
         reformatStyle.addItem(CodeStyle.DEBUGGABLE_STYLE);
+        reformatStyle.addItem(CodeStyle.LINE_MAPPED_STYLE);
+
+        for (DecompilationEngine engine : DecompilationEngine.selector.getEngines())
+        {
+            decompilationEngine.addItem(engine.getName());
+        }
 
         packFieldsWithTheSpinner.setModel(createSpinnerModel());
         splitStringsIntoPiecesSpinner.setModel(createSpinnerModel());
         spacesForIndentationSpinner.setModel(createSpinnerModel());
         displayLongsUsingRadixSpinner.setModel(new SpinnerRadixModel());
         displayIntegersUsingRadixSpinner.setModel(new SpinnerRadixModel());
+        decompilerTimeoutSpinner.setModel(createSpinnerModel());
+        maxDecompilerOutputSpinner.setModel(createSpinnerModel());
+        coalescingWindowSpinner.setModel(createSpinnerModel());
+        prefetchBudgetSpinner.setModel(createSpinnerModel());
 
         if (project != null)
         {
@@ -362,6 +383,11 @@ public class ConfigForm
         displayLongsUsingRadixSpinner.setValue(data.getLongRadix());
         displayIntegersUsingRadixSpinner.setValue(data.getIntRadix());
         reformatStyle.setSelectedItem(CodeStyle.getByName(data.getReformatStyle()));
+        decompilationEngine.setSelectedItem(DecompilationEngine.selector.get(data).getName());
+        decompilerTimeoutSpinner.setValue(data.getDecompilerTimeout());
+        maxDecompilerOutputSpinner.setValue(data.getMaxDecompilerOutput());
+        coalescingWindowSpinner.setValue(data.getCoalescingWindow());
+        prefetchBudgetSpinner.setValue(data.getPrefetchBudget());
         useProjectSpecificIntelliJadCheckBox.setSelected(data.isUseProjectSpecificSettings());
         if (project == null) {
             navTriggeredDecomp.setSelectedItem(NavigationTriggeredDecompile.getByName(data.getDecompileOnNavigation()));
@@ -385,6 +411,11 @@ public class ConfigForm
         data.setIntRadix((Integer) displayIntegersUsingRadixSpinner.getValue());
         data.setDecompileOnNavigation(((NavigationTriggeredDecompile) navTriggeredDecomp.getSelectedItem()).getName());
         data.setReformatStyle(((CodeStyle) reformatStyle.getSelectedItem()).getName());
+        data.setDecompilationEngine((String) decompilationEngine.getSelectedItem());
+        data.setDecompilerTimeout((Integer) decompilerTimeoutSpinner.getValue());
+        data.setMaxDecompilerOutput((Integer) maxDecompilerOutputSpinner.getValue());
+        data.setCoalescingWindow((Integer) coalescingWindowSpinner.getValue());
+        data.setPrefetchBudget((Integer) prefetchBudgetSpinner.getValue());
         data.setUseProjectSpecificSettings(useProjectSpecificIntelliJadCheckBox.isSelected());
     }
 
@@ -425,6 +456,26 @@ public class ConfigForm
         {
             return true;
         }
+        if (!DecompilationEngine.selector.get(data).getName().equals(decompilationEngine.getSelectedItem()))
+        {
+            return true;
+        }
+        if (!decompilerTimeoutSpinner.getValue().equals(data.getDecompilerTimeout()))
+        {
+            return true;
+        }
+        if (!maxDecompilerOutputSpinner.getValue().equals(data.getMaxDecompilerOutput()))
+        {
+            return true;
+        }
+        if (!coalescingWindowSpinner.getValue().equals(data.getCoalescingWindow()))
+        {
+            return true;
+        }
+        if (!prefetchBudgetSpinner.getValue().equals(data.getPrefetchBudget()))
+        {
+            return true;
+        }
         if (exclusionTableModel != null && exclusionTableModel.equals(data.getExclusionTableModel()))
         {
             return true;
@@ -588,6 +639,26 @@ public class ConfigForm
         if (isModified(tempDirTextField.getText(), data.getCustomTempDirPath())) {
             return true;
         }
+        if (useDecompilationCacheCheckBox.isSelected() != data.isUseDecompilationCache())
+        {
+            return true;
+        }
+        if (decompileInBackgroundCheckBox.isSelected() != data.isDecompileInBackground())
+        {
+            return true;
+        }
+        if (showSkeletonCheckBox.isSelected() != data.isShowSkeleton())
+        {
+            return true;
+        }
+        if (streamOutputCheckBox.isSelected() != data.isStreamOutput())
+        {
+            return true;
+        }
+        if (isModified(predecompiledLibrariesTextField.getText(), data.getPredecompiledLibraries()))
+        {
+            return true;
+        }
         return false;
     }
 
@@ -631,6 +702,11 @@ public class ConfigForm
         cleanupSourceRootsCheckBox.setSelected(data.isCleanupSourceRoots());
         tempDirectoryCheckBox.setSelected(data.isUseCustomTempDir());
         tempDirTextField.setText(data.getCustomTempDirPath());
+        useDecompilationCacheCheckBox.setSelected(data.isUseDecompilationCache());
+        decompileInBackgroundCheckBox.setSelected(data.isDecompileInBackground());
+        showSkeletonCheckBox.setSelected(data.isShowSkeleton());
+        streamOutputCheckBox.setSelected(data.isStreamOutput());
+        predecompiledLibrariesTextField.setText(data.getPredecompiledLibraries());
         if (project != null) {
             setControlsEnabled(project, data.isUseProjectSpecificSettings());           
         }
@@ -667,6 +743,11 @@ public class ConfigForm
         data.setCleanupSourceRoots(cleanupSourceRootsCheckBox.isSelected());
         data.setUseCustomTempDir(tempDirectoryCheckBox.isSelected());
         data.setCustomTempDirPath(tempDirTextField.getText());
+        data.setUseDecompilationCache(useDecompilationCacheCheckBox.isSelected());
+        data.setDecompileInBackground(decompileInBackgroundCheckBox.isSelected());
+        data.setShowSkeleton(showSkeletonCheckBox.isSelected());
+        data.setStreamOutput(streamOutputCheckBox.isSelected());
+        data.setPredecompiledLibraries(predecompiledLibrariesTextField.getText());
         if (project != null)
         {
             setControlsEnabled(project, data.isUseProjectSpecificSettings());
@@ -35,7 +35,7 @@ public class ConsoleContextImpl implements ConsoleContext {
 
     private final NodeHandler nodeHandler;
 
-    private boolean worthDisplaying;
+    private volatile boolean worthDisplaying;
 
     /**
      * Initialises a new instance of this class.
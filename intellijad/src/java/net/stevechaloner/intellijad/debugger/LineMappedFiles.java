@@ -0,0 +1,143 @@
+package net.stevechaloner.intellijad.debugger;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.IntelliJadConstants;
+import net.stevechaloner.intellijad.IntelliJadResourceBundle;
+import net.stevechaloner.intellijad.format.LineMapping;
+import net.stevechaloner.intellijad.util.PluginUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps the line mapping of decompiled files in their user data.
+ * <p>
+ * The mapping is read from the line numbers Jad leaves in the source, so it's rebuilt whenever the document
+ * changes, e.g. when a file decompiled in an earlier session is opened again.  Only files carrying the IntelliJad
+ * watermark are read, so the markers of other sources are never mistaken for line numbers.
+ * </p>
+ * <p>
+ * Every decompiled source is written to the output directory in the package structure of its class, so the source
+ * of a class is found by its name alone, without resolving the class, and classes that were never decompiled are
+ * passed over without loading anything.
+ * </p>
+ */
+public class LineMappedFiles {
+    private static final Key<StampedMapping> LINE_MAPPING = Key.create("IntelliJad.LineMapping");
+
+    private LineMappedFiles() {
+    }
+
+    /**
+     * Reads the line mapping of a freshly decompiled file, so the debugger doesn't have to.
+     *
+     * @param file the decompiled file
+     */
+    public static void attach(@NotNull final VirtualFile file) {
+        ApplicationManager.getApplication().runReadAction(new Runnable() {
+            public void run() {
+                getMapping(file);
+            }
+        });
+    }
+
+    /**
+     * Finds the decompiled source of a class in the output directory.  Must be called within a read action.
+     *
+     * @param project   the project
+     * @param className the binary name of the class, which may be nested
+     * @return the source, or null if the class hasn't been decompiled
+     */
+    @Nullable
+    public static VirtualFile findSource(@NotNull Project project,
+                                         @NotNull String className) {
+        VirtualFile outputRoot = getOutputRoot(project);
+        if (outputRoot == null) {
+            return null;
+        }
+        String path = getTopLevelName(className).replace('.', '/') + IntelliJadConstants.DOT_JAVA_EXTENSION;
+        return outputRoot.findFileByRelativePath(path);
+    }
+
+    /**
+     * Checks if a file is in the output directory, i.e. may be a decompiled source.
+     *
+     * @param project the project
+     * @param file    the file
+     * @return true if the file is in the output directory
+     */
+    public static boolean isInOutputDirectory(@NotNull Project project,
+                                              @NotNull VirtualFile file) {
+        VirtualFile outputRoot = getOutputRoot(project);
+        return outputRoot != null && VfsUtilCore.isAncestor(outputRoot, file, true);
+    }
+
+    /**
+     * Gets the name of the class a class is nested in, whose source it's decompiled into.
+     *
+     * @param className the binary name of the class
+     * @return the name of the top-level class
+     */
+    @NotNull
+    public static String getTopLevelName(@NotNull String className) {
+        int nested = className.indexOf('$');
+        return nested < 0 ? className : className.substring(0, nested);
+    }
+
+    @Nullable
+    private static VirtualFile getOutputRoot(@NotNull Project project) {
+        String outputDirectory = PluginUtil.getConfig(project).getOutputDirectory();
+        if (StringUtil.isEmptyOrSpaces(outputDirectory)) {
+            return null;
+        }
+        return LocalFileSystem.getInstance().findFileByPath(FileUtil.toSystemIndependentName(outputDirectory));
+    }
+
+    /**
+     * Gets the line mapping of a file.  Must be called within a read action.
+     *
+     * @param file the file
+     * @return the mapping, or null if the file wasn't decompiled with line numbers
+     */
+    @Nullable
+    public static LineMapping getMapping(@NotNull VirtualFile file) {
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        if (document == null) {
+            return null;
+        }
+        long stamp = document.getModificationStamp();
+        StampedMapping mapping = file.getUserData(LINE_MAPPING);
+        if (mapping == null || mapping.stamp != stamp) {
+            CharSequence text = document.getCharsSequence();
+            String waterMark = IntelliJadResourceBundle.message("message.decompiled-through-intellijad");
+            mapping = new StampedMapping(stamp,
+                                         StringUtil.startsWith(text, waterMark) ? LineMapping.parse(text) : LineMapping.EMPTY);
+            file.putUserData(LINE_MAPPING, mapping);
+        }
+        return mapping.mapping.isEmpty() ? null : mapping.mapping;
+    }
+
+    /**
+     * A mapping with the modification stamp of the document it was read from.
+     */
+    private static class StampedMapping {
+        private final long stamp;
+
+        @NotNull
+        private final LineMapping mapping;
+
+        StampedMapping(long stamp,
+                       @NotNull LineMapping mapping) {
+            this.stamp = stamp;
+            this.mapping = mapping;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package net.stevechaloner.intellijad.debugger;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.intellij.execution.filters.ConsoleFilterProvider;
+import com.intellij.execution.filters.Filter;
+import com.intellij.execution.filters.OpenFileHyperlinkInfo;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.format.LineMapping;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Links the frames of stack traces in the console to the lines of sources decompiled in the line mapped style,
+ * rather than to the lines of the same number.
+ */
+public class LineMappingFilterProvider implements ConsoleFilterProvider {
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    public Filter[] getDefaultFilters(@NotNull Project project) {
+        return new Filter[]{new StackFrameFilter(project)};
+    }
+
+    /**
+     * Matches a frame such as <code>at a.B$C.run(B.java:12)</code>.
+     */
+    private static class StackFrameFilter implements Filter {
+        private static final Pattern FRAME = Pattern.compile("at\\s+([\\w$.]+)\\.[\\w$<>]+\\(([\\w$]+\\.java:(\\d{1,9}))\\)");
+
+        @NotNull
+        private final Project project;
+
+        StackFrameFilter(@NotNull Project project) {
+            this.project = project;
+        }
+
+        @Nullable
+        public Result applyFilter(String line,
+                                  int entireLength) {
+            final Matcher matcher = FRAME.matcher(line);
+            if (!matcher.find()) {
+                return null;
+            }
+            final String className = matcher.group(1);
+            final int originalLine = Integer.parseInt(matcher.group(3));
+            int lineStart = entireLength - line.length();
+            final int start = lineStart + matcher.start(2);
+            final int end = lineStart + matcher.end(2);
+            return ApplicationManager.getApplication().runReadAction(new Computable<Result>() {
+                public Result compute() {
+                    VirtualFile virtualFile = LineMappedFiles.findSource(project, className);
+                    LineMapping mapping = virtualFile == null ? null : LineMappedFiles.getMapping(virtualFile);
+                    int documentLine = mapping == null ? -1 : mapping.getNearestDocumentLine(originalLine);
+                    if (documentLine < 0) {
+                        return null;
+                    }
+                    return new Result(start, end, new OpenFileHyperlinkInfo(project, virtualFile, documentLine));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.stevechaloner.intellijad.debugger;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.intellij.debugger.NoDataException;
+import com.intellij.debugger.PositionManager;
+import com.intellij.debugger.SourcePosition;
+import com.intellij.debugger.engine.DebugProcess;
+import com.intellij.debugger.requests.ClassPrepareRequestor;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.Location;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.request.ClassPrepareRequest;
+import net.stevechaloner.intellijad.format.LineMapping;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Translates the line numbers the debugger reports to and from the lines of sources decompiled in the line mapped
+ * style, which keep Jad's layout.
+ * <p>
+ * Breakpoints, the execution point and stepping all go through here.  Anything that isn't line mapped is left to
+ * the other position managers, by throwing {@link NoDataException}, and classes that were never decompiled are told
+ * apart by the path of their source in the output directory.
+ * </p>
+ */
+public class LineMappingPositionManager implements PositionManager {
+    @NotNull
+    private final DebugProcess process;
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param process the debug process
+     */
+    public LineMappingPositionManager(@NotNull DebugProcess process) {
+        this.process = process;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public SourcePosition getSourcePosition(@Nullable final Location location) throws NoDataException {
+        if (location == null || location.lineNumber() < 0) {
+            throw new NoDataException();
+        }
+        SourcePosition position = ApplicationManager.getApplication().runReadAction(new Computable<SourcePosition>() {
+            public SourcePosition compute() {
+                VirtualFile source = LineMappedFiles.findSource(process.getProject(), location.declaringType().name());
+                LineMapping mapping = source == null ? null : LineMappedFiles.getMapping(source);
+                if (mapping == null) {
+                    return null;
+                }
+                PsiFile file = PsiManager.getInstance(process.getProject()).findFile(source);
+                if (file == null) {
+                    return null;
+                }
+                // a line without a marker of its own is shown on the closest one, rather than on Jad's layout
+                int line = mapping.getNearestDocumentLine(location.lineNumber());
+                return line < 0 ? null : SourcePosition.createFromLine(file, line);
+            }
+        });
+        if (position == null) {
+            throw new NoDataException();
+        }
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    public List<ReferenceType> getAllClasses(SourcePosition classPosition) throws NoDataException {
+        // the classes don't depend on the layout of their source
+        throw new NoDataException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    public List<Location> locationsOfLine(ReferenceType type,
+                                          final SourcePosition position) throws NoDataException {
+        LineMapping mapping = ApplicationManager.getApplication().runReadAction(new Computable<LineMapping>() {
+            public LineMapping compute() {
+                VirtualFile file = position.getFile().getVirtualFile();
+                if (file == null || !LineMappedFiles.isInOutputDirectory(process.getProject(), file)) {
+                    return null;
+                }
+                return LineMappedFiles.getMapping(file);
+            }
+        });
+        if (mapping == null) {
+            throw new NoDataException();
+        }
+        int line = mapping.getOriginalLine(position.getLine());
+        if (line < 0) {
+            // a line without code
+            return Collections.emptyList();
+        }
+        try {
+            return type.locationsOfLine(line);
+        } catch (AbsentInformationException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public ClassPrepareRequest createPrepareRequest(ClassPrepareRequestor requestor,
+                                                    SourcePosition position) throws NoDataException {
+        // neither do the classes waited for
+        throw new NoDataException();
+    }
+}
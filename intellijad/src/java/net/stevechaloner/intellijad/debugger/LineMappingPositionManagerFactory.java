@@ -0,0 +1,18 @@
+package net.stevechaloner.intellijad.debugger;
+
+import com.intellij.debugger.PositionManager;
+import com.intellij.debugger.PositionManagerFactory;
+import com.intellij.debugger.engine.DebugProcess;
+
+/**
+ * Adds the {@link LineMappingPositionManager} to every debug process.
+ */
+public class LineMappingPositionManagerFactory extends PositionManagerFactory {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PositionManager createPositionManager(DebugProcess process) {
+        return new LineMappingPositionManager(process);
+    }
+}
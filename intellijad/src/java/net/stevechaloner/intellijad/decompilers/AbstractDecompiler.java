@@ -15,24 +15,36 @@
 
 package net.stevechaloner.intellijad.decompilers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.google.common.base.Optional;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.JarFile;
 import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.IntelliJadConstants;
+import net.stevechaloner.intellijad.cache.CacheKey;
+import net.stevechaloner.intellijad.cache.DecompilationCache;
+import net.stevechaloner.intellijad.classfile.ClassFileHeader;
 import net.stevechaloner.intellijad.config.CodeStyle;
 import net.stevechaloner.intellijad.config.Config;
 import net.stevechaloner.intellijad.console.ConsoleContext;
 import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.debugger.LineMappedFiles;
 import net.stevechaloner.intellijad.format.SourceReorganiser;
 import net.stevechaloner.intellijad.format.StyleReformatter;
-import net.stevechaloner.intellijad.util.ProcessGobbler;
+import net.stevechaloner.intellijad.util.OutputBuffer;
+import net.stevechaloner.intellijad.util.ProcessTimeoutException;
 import net.stevechaloner.intellijad.vfs.MemoryVF;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -50,6 +62,21 @@ public abstract class AbstractDecompiler implements Decompiler {
         CONTINUE, ABORT
     }
 
+    /**
+     * The cache key of the class being decompiled, present only if the result should be cached.
+     */
+    protected static final Key<CacheKey> CACHE_KEY = new Key<CacheKey>("AbstractDecompiler.cache-key");
+
+    /**
+     * The number of times a transiently failed run is repeated.
+     */
+    private static final int MAX_RETRIES = 3;
+
+    /**
+     * The delay before the first repeated run in milliseconds, doubled for every further one.
+     */
+    private static final long RETRY_DELAY = 100L;
+
     private final Logger LOG = Logger.getInstance(getClass());
 
     /**
@@ -63,8 +90,8 @@ public abstract class AbstractDecompiler implements Decompiler {
                         public VirtualFile execute(@NotNull DecompilationContext context,
                                                    @NotNull DecompilationDescriptor descriptor,
                                                    @NotNull File targetClass,
-                                                   @NotNull ByteArrayOutputStream output,
-                                                   @NotNull ByteArrayOutputStream err) throws DecompilationException {
+                                                   @NotNull OutputBuffer output,
+                                                   @NotNull OutputBuffer err) throws DecompilationException {
                             VirtualFile file = get(ResultType.SUCCESS).execute(context,
                                     descriptor,
                                     targetClass,
@@ -82,8 +109,8 @@ public abstract class AbstractDecompiler implements Decompiler {
                         public VirtualFile execute(@NotNull DecompilationContext context,
                                                    @NotNull DecompilationDescriptor descriptor,
                                                    @NotNull File targetClass,
-                                                   @NotNull ByteArrayOutputStream output,
-                                                   @NotNull ByteArrayOutputStream err) throws DecompilationException {
+                                                   @NotNull OutputBuffer output,
+                                                   @NotNull OutputBuffer err) throws DecompilationException {
                             ConsoleContext consoleContext = context.getConsoleContext();
                             consoleContext.addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
                                     "error",
@@ -172,6 +199,9 @@ public abstract class AbstractDecompiler implements Decompiler {
             case DEBUGGABLE_STYLE:
                 SourceReorganiser.reorganise(context, file);
                 break;
+            case LINE_MAPPED_STYLE:
+                LineMappedFiles.attach(file.asVirtualFile());
+                break;
             case PREFERRED_STYLE:
             default:
                 StyleReformatter.reformat(context, file.asVirtualFile());
@@ -194,46 +224,75 @@ public abstract class AbstractDecompiler implements Decompiler {
                 ConsoleContext consoleContext = context.getConsoleContext();
                 File targetClass = descriptor.getSourceFile(context.getTargetDirectory());
 
-                StringBuilder command = new StringBuilder(context.getCommand());
-
-                String path = targetClass.getAbsolutePath();
-                if (path.indexOf(' ') != -1) {
-                    path = "\"" + path + "\"";
-                }
-                command.append(path);
-                consoleContext.addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
-                        "message.executing-jad",
-                        command.toString());
-
                 try {
                     OperationStatus status = setup(descriptor,
                             context);
-                    if (status == OperationStatus.CONTINUE) {
-                        ByteArrayOutputStream output = new ByteArrayOutputStream();
-                        ByteArrayOutputStream err = new ByteArrayOutputStream();
-                        ResultType resultType = runExternalDecompiler(command.toString(),
-                                context,
-                                output,
-                                err);
-
-                        // occasionally the result will be empty - there's no point in endlessly
-                        // decompiling, so it gives a couple of more chances
-                        int count = 0;
-                        while (output.size() == 0 && count++ < 3) {
+                    if (status == OperationStatus.CONTINUE && routeByClassVersion(context, descriptor, targetClass)) {
+                        Optional<CacheKey> cacheKey = createCacheKey(context, descriptor, targetClass);
+                        String cachedContent = cacheKey.isPresent() ? DecompilationCache.getInstance().get(cacheKey.get()) : null;
+                        if (cachedContent != null) {
                             consoleContext.addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
-                                    "message.reexecuting-jad",
-                                    command.toString());
-                            resultType = runExternalDecompiler(command.toString(),
-                                    context,
-                                    output,
-                                    err);
+                                    "message.cache-hit",
+                                    descriptor.getClassName());
+                            decompiledFile = processCachedOutput(context,
+                                    descriptor,
+                                    targetClass,
+                                    cachedContent);
+                        } else {
+                            if (cacheKey.isPresent()) {
+                                CACHE_KEY.set(context, cacheKey.get());
+                            }
+                            // large outputs go to the scratch directory rather than the heap
+                            OutputBuffer output = new OutputBuffer(context.getTargetDirectory());
+                            OutputBuffer err = new OutputBuffer(context.getTargetDirectory());
+                            output.setListener(context.getUserData(DecompilationContext.OUTPUT_LISTENER));
+                            try {
+                                DecompilationOutcome outcome = runDecompiler(context,
+                                        targetClass,
+                                        output,
+                                        err);
+
+                                // only failures unrelated to the class itself get another chance, a class
+                                // the decompiler can't handle fails the same way every time
+                                int retries = 0;
+                                while (outcome.isRetryable() && retries < MAX_RETRIES) {
+                                    long delay = RETRY_DELAY << retries++;
+                                    consoleContext.addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                                            "message.reexecuting-jad",
+                                            delay,
+                                            descriptor.getClassName());
+                                    DecompilationStatistics.getInstance().recordRetry();
+                                    Thread.sleep(delay);
+                                    output.dispose();
+                                    err.dispose();
+                                    outcome = runDecompiler(context,
+                                            targetClass,
+                                            output,
+                                            err);
+                                }
+                                if (outcome == DecompilationOutcome.UNSUPPORTED_CLASS_VERSION) {
+                                    consoleContext.addSectionMessage(ConsoleEntryType.ERROR,
+                                            "error.unsupported-class-version",
+                                            descriptor.getFullyQualifiedName());
+                                }
+                                decompiledFile = getDecompilationAftermathHandler(outcome.getResultType()).execute(context,
+                                        descriptor,
+                                        targetClass,
+                                        output,
+                                        err);
+                            } finally {
+                                // what has been streamed stays in place until the file is opened
+                                output.setListener(null);
+                                output.dispose();
+                                err.dispose();
+                            }
                         }
-                        decompiledFile = getDecompilationAftermathHandler(resultType).execute(context,
-                                descriptor,
-                                targetClass,
-                                output,
-                                err);
                     }
+                } catch (ProcessTimeoutException e) {
+                    consoleContext.addSectionMessage(ConsoleEntryType.ERROR,
+                            "error.decompiler-timeout",
+                            e.getTimeout() / 1000);
+                    throw new DecompilationException(e);
                 } catch (IOException e) {
                     throw new DecompilationException(e);
                 } catch (InterruptedException e) {
@@ -248,46 +307,151 @@ public abstract class AbstractDecompiler implements Decompiler {
     }
 
     /**
-     * Run the external decompiler (i.e. Jad) to obtain the decompiled content.
+     * Hands the decompilation to an engine supporting the version of the class file, before the configured engine
+     * is run only to refuse it.
      *
-     * @param command the command to execute in the process
-     * @param context the context of the decompilation
-     * @param output  stream containing the process's output
-     * @param err     stream containing the process's error output
-     * @return the result of the operation
-     * @throws IOException          if an IO exception occurs at any point
-     * @throws InterruptedException if the stream pumping operations fail
+     * @param context     the decompilation context
+     * @param descriptor  the decompilation descriptor
+     * @param targetClass the prepared class file
+     * @return false if no engine supports the version
      */
-    private ResultType runExternalDecompiler(String command,
-                                             DecompilationContext context,
-                                             ByteArrayOutputStream output,
-                                             ByteArrayOutputStream err) throws IOException,
-            InterruptedException {
-        boolean debug = LOG.isDebugEnabled();
-        if (debug) {
-            LOG.debug("Running external decompiler: " + command);
+    private boolean routeByClassVersion(@NotNull DecompilationContext context,
+                                        @NotNull DecompilationDescriptor descriptor,
+                                        @NotNull File targetClass) {
+        ClassFileHeader header = context.getUserData(DecompilationContext.CLASS_FILE_HEADER);
+        int majorVersion;
+        try {
+            majorVersion = header != null ? header.getMajorVersion() : ClassFileHeader.readMajorVersion(targetClass);
+        } catch (IOException e) {
+            // the engine reports what's wrong with the file
+            LOG.debug("Could not read the class file version of " + targetClass.getAbsolutePath(), e);
+            return true;
         }
+        DecompilationEngine preferred = context.getEngine();
+        DecompilationEngine engine = DecompilationEngine.selector.get(preferred, majorVersion);
+        ConsoleContext consoleContext = context.getConsoleContext();
+        if (engine == null) {
+            DecompilationStatistics.getInstance().record(DecompilationOutcome.UNSUPPORTED_CLASS_VERSION);
+            consoleContext.addSectionMessage(ConsoleEntryType.ERROR,
+                    "error.no-engine-for-class-version",
+                    descriptor.getFullyQualifiedName(),
+                    majorVersion);
+            consoleContext.setWorthDisplaying(true);
+            return false;
+        }
+        if (engine != preferred) {
+            consoleContext.addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                    "message.class-version-routed",
+                    descriptor.getClassName(),
+                    majorVersion,
+                    preferred.getName(),
+                    engine.getName());
+            context.setEngine(engine);
+        }
+        return true;
+    }
 
-        Process process = Runtime.getRuntime().exec(command);
-        ProcessGobbler gobbler = new ProcessGobbler(process);
-
-        //magic code indicating InterruptedException
-        int exitCode = gobbler.waitFor(context, output, err);
+    /**
+     * Creates the key the result of this decompilation is cached under.
+     *
+     * @param context     the decompilation context
+     * @param descriptor  the decompilation descriptor
+     * @param targetClass the prepared class file
+     * @return the key, or absent if caching is disabled or the class files can't be read
+     */
+    private Optional<CacheKey> createCacheKey(@NotNull DecompilationContext context,
+                                              @NotNull DecompilationDescriptor descriptor,
+                                              @NotNull File targetClass) {
+        Config config = context.getConfig();
+        if (config.isUseDecompilationCache()) {
+            String fingerprint = context.getEngine().getFingerprint(context.getProject()) + '\n'
+                    + config.getReformatStyle() + '\n'
+                    + context.getEngine().getClass().getName();
+            try {
+                return Optional.of(CacheKey.create(collectClassFiles(context, descriptor, targetClass),
+                        fingerprint));
+            } catch (IOException e) {
+                LOG.warn("Could not create cache key for " + targetClass.getAbsolutePath(), e);
+            }
+        }
+        return Optional.absent();
+    }
 
-        return checkDecompilationStatus(exitCode, err, output);
+    /**
+     * Collects the class file and the class files of its nested classes, sorted by name.
+     *
+     * @param context     the decompilation context
+     * @param descriptor  the decompilation descriptor
+     * @param targetClass the prepared class file
+     * @return the class files
+     */
+    private List<File> collectClassFiles(@NotNull DecompilationContext context,
+                                         @NotNull DecompilationDescriptor descriptor,
+                                         @NotNull final File targetClass) {
+        List<File> extracted = context.getUserData(DecompilationContext.NEST_CLASS_FILES);
+        if (extracted != null) {
+            List<File> classFiles = new ArrayList<File>(extracted);
+            Collections.sort(classFiles);
+            return classFiles;
+        }
+        final String nestedPrefix = descriptor.getClassName() + '$';
+        final String classSuffix = '.' + IntelliJadConstants.CLASS_EXTENSION;
+        File[] files = targetClass.getParentFile().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.equals(targetClass.getName()) || (name.startsWith(nestedPrefix) && name.endsWith(classSuffix));
+            }
+        });
+        List<File> classFiles = new ArrayList<File>();
+        if (files != null) {
+            Arrays.sort(files);
+            classFiles.addAll(Arrays.asList(files));
+        }
+        return classFiles;
     }
 
     /**
-     * Calcuates the success of the process execution.
+     * Displays previously decompiled content without running the decompiler.
+     *
+     * @param context     the decompilation context
+     * @param descriptor  the decompilation descriptor
+     * @param targetClass the prepared class file
+     * @param content     the cached, already formatted, content
+     * @return a virtual file representing the decompiled output
+     * @throws DecompilationException if something goes awry.
+     */
+    @Nullable
+    protected abstract VirtualFile processCachedOutput(@NotNull DecompilationContext context,
+                                                       @NotNull DecompilationDescriptor descriptor,
+                                                       @NotNull File targetClass,
+                                                       @NotNull String content) throws DecompilationException;
+
+    /**
+     * Run the decompiler engine of the context to obtain the decompiled content.
      *
-     * @param exitCode the exit code of the process
-     * @param err      the error stream of the process
-     * @param output   the output of the process
-     * @return a result based on the execution of the process
+     * @param context     the context of the decompilation
+     * @param targetClass the class file to decompile
+     * @param output      stream containing the decompiled content
+     * @param err         stream containing the error output
+     * @return the outcome of the operation
+     * @throws IOException             if an IO exception occurs at any point
+     * @throws InterruptedException    if the stream pumping operations fail
+     * @throws ProcessTimeoutException if an external decompiler ran out of time
      */
-    protected abstract ResultType checkDecompilationStatus(int exitCode,
-                                                           ByteArrayOutputStream err,
-                                                           ByteArrayOutputStream output);
+    private DecompilationOutcome runDecompiler(DecompilationContext context,
+                                               File targetClass,
+                                               OutputBuffer output,
+                                               OutputBuffer err) throws IOException,
+            InterruptedException {
+        // decompilations arriving together share a single run of an external decompiler
+        DecompilationOutcome outcome = DecompilationCoalescer.getInstance().decompile(context, targetClass, output, err);
+        DecompilationStatistics.getInstance().record(outcome);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Decompilation status: " + outcome);
+        }
+
+        return outcome;
+    }
 
     /**
      * Extract the class files from the library to the target directory.
@@ -307,6 +471,7 @@ public abstract class AbstractDecompiler implements Decompiler {
                     jarFile.getPath());
             JarExtractor jarExtractor = new JarExtractor();
             jarExtractor.extract(context,
+                    jarFile,
                     lib,
                     decompilationDescriptor.getPackageNameAsPath(),
                     decompilationDescriptor.getClassName());
@@ -334,8 +499,8 @@ public abstract class AbstractDecompiler implements Decompiler {
         VirtualFile execute(@NotNull DecompilationContext context,
                             @NotNull DecompilationDescriptor descriptor,
                             @NotNull File targetClass,
-                            @NotNull ByteArrayOutputStream output,
-                            @NotNull ByteArrayOutputStream err) throws DecompilationException;
+                            @NotNull OutputBuffer output,
+                            @NotNull OutputBuffer err) throws DecompilationException;
     }
 
     /**
@@ -0,0 +1,130 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.IntelliJadConstants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Describes a set of library classes to decompile in one go, grouped by the jar containing them.
+ * <p>
+ * Only top-level classes are recorded - nested classes are always decompiled together with their outer class.
+ * </p>
+ */
+public class BatchDecompilationDescriptor {
+    private static final String DOT_CLASS = '.' + IntelliJadConstants.CLASS_EXTENSION;
+
+    /**
+     * Jar roots mapped to the paths of their classes, without the class extension.
+     */
+    private final Map<VirtualFile, Set<String>> classesByJar = new LinkedHashMap<VirtualFile, Set<String>>();
+
+    private BatchDecompilationDescriptor() {
+    }
+
+    /**
+     * Creates a descriptor from a selection of jars, directories within jars and class files.
+     *
+     * @param files the selected files
+     * @return the descriptor, which is empty if the selection contains no library classes
+     */
+    @NotNull
+    public static BatchDecompilationDescriptor create(@NotNull VirtualFile[] files) {
+        BatchDecompilationDescriptor descriptor = new BatchDecompilationDescriptor();
+        for (VirtualFile file : files) {
+            VirtualFile jarRoot = getJarRoot(file);
+            if (jarRoot != null) {
+                descriptor.collect(jarRoot, file.getFileSystem() instanceof JarFileSystem ? file : jarRoot);
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Checks if the files can be used to create a non-empty descriptor, without scanning any directories.
+     *
+     * @param files the selected files
+     * @return true if any of the files is a jar, or is contained in one
+     */
+    public static boolean isApplicable(@Nullable VirtualFile[] files) {
+        if (files != null) {
+            for (VirtualFile file : files) {
+                if (getJarRoot(file) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static VirtualFile getJarRoot(@NotNull VirtualFile file) {
+        JarFileSystem jarFileSystem = JarFileSystem.getInstance();
+        VirtualFile jarRoot = null;
+        if (file.getFileSystem() instanceof JarFileSystem) {
+            VirtualFile jar = jarFileSystem.getVirtualFileForJar(file);
+            if (jar != null) {
+                jarRoot = jarFileSystem.getJarRootForLocalFile(jar);
+            }
+        } else if (!file.isDirectory() && "jar".equalsIgnoreCase(file.getExtension())) {
+            jarRoot = jarFileSystem.getJarRootForLocalFile(file);
+        }
+        return jarRoot;
+    }
+
+    private void collect(@NotNull VirtualFile jarRoot,
+                         @NotNull VirtualFile file) {
+        if (file.isDirectory()) {
+            for (VirtualFile child : file.getChildren()) {
+                collect(jarRoot, child);
+            }
+        } else if (IntelliJadConstants.CLASS_EXTENSION.equals(file.getExtension())
+                && file.getNameWithoutExtension().indexOf('$') == -1) {
+            String path = VfsUtilCore.getRelativePath(file, jarRoot, '/');
+            if (path != null) {
+                Set<String> classes = classesByJar.get(jarRoot);
+                if (classes == null) {
+                    classes = new TreeSet<String>();
+                    classesByJar.put(jarRoot, classes);
+                }
+                classes.add(path.substring(0, path.length() - DOT_CLASS.length()));
+            }
+        }
+    }
+
+    /**
+     * Gets the classes to decompile.
+     *
+     * @return the jar roots mapped to the paths of their classes, without the class extension
+     */
+    @NotNull
+    public Map<VirtualFile, Set<String>> getClassesByJar() {
+        return Collections.unmodifiableMap(classesByJar);
+    }
+
+    /**
+     * Gets the number of top-level classes to decompile.
+     *
+     * @return the number of classes
+     */
+    public int getClassCount() {
+        int count = 0;
+        for (Set<String> classes : classesByJar.values()) {
+            count += classes.size();
+        }
+        return count;
+    }
+
+    // javadoc unnecessary
+    public boolean isEmpty() {
+        return classesByJar.isEmpty();
+    }
+}
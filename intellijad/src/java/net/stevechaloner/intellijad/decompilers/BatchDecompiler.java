@@ -0,0 +1,415 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.openapi.vfs.JarFile;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.IntelliJadConstants;
+import net.stevechaloner.intellijad.IntelliJadResourceBundle;
+import net.stevechaloner.intellijad.config.CodeStyle;
+import net.stevechaloner.intellijad.config.Config;
+import net.stevechaloner.intellijad.console.ConsoleContext;
+import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.format.SourceReorganiser;
+import net.stevechaloner.intellijad.util.AppInvoker;
+import net.stevechaloner.intellijad.util.LibraryUtil;
+import net.stevechaloner.intellijad.util.OsUtil;
+import net.stevechaloner.intellijad.util.OutputBuffer;
+import net.stevechaloner.intellijad.util.PluginUtil;
+import net.stevechaloner.intellijad.util.ProcessTimeoutException;
+import net.stevechaloner.intellijad.vfs.LightMemoryVF;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decompiles whole libraries or packages into the output directory.
+ * <p>
+ * The classes of each jar are handed to the decompiler in chunks, so the cost of starting the decompiler process
+ * is shared by many classes instead of being paid for every one of them.  The chunks pass through a
+ * {@link BatchPipeline}: while the decompiler runs a chunk, the next one is being extracted and the previous one
+ * post-processed, so disk, decompiler and IDE work overlap rather than wait for each other.
+ * </p>
+ */
+public class BatchDecompiler {
+    private final Logger LOG = Logger.getInstance(getClass());
+
+    /**
+     * Number of class files passed to a single decompiler process, which keeps the command line within
+     * the limits of all supported platforms.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * Number of chunks that can wait for the decompiler, or for post-processing, at once.
+     */
+    private static final int PIPELINE_DEPTH = 2;
+
+    private final AppInvoker appInvoker;
+
+    private final DecompilationWorkerPool workerPool;
+
+    public BatchDecompiler(AppInvoker appInvoker,
+                           DecompilationWorkerPool workerPool) {
+        this.appInvoker = appInvoker;
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Decompiles the classes of the descriptor into the output directory of the configuration.
+     *
+     * @param descriptor     the classes to decompile
+     * @param project        the project
+     * @param consoleContext the console context
+     * @param indicator      the progress indicator
+     * @return the number of classes that were decompiled
+     * @throws DecompilationException if the classes can't be extracted or the decompiler can't be run
+     */
+    public int decompile(@NotNull BatchDecompilationDescriptor descriptor,
+                         @NotNull Project project,
+                         @NotNull ConsoleContext consoleContext,
+                         @NotNull ProgressIndicator indicator) throws DecompilationException {
+        long startTime = System.currentTimeMillis();
+        int total = descriptor.getClassCount();
+        int decompiled = 0;
+        DecompilationEngine engine = DecompilationEngine.selector.get(project);
+        File outputDirectory = new File(PluginUtil.getConfig(project).getOutputDirectory());
+        for (Map.Entry<VirtualFile, Set<String>> entry : descriptor.getClassesByJar().entrySet()) {
+            if (indicator.isCanceled()) {
+                break;
+            }
+            ScratchSpaceManager.Lease lease = ScratchSpaceManager.getInstance().lease(project);
+            DecompilationContext context = new DecompilationContext(project, consoleContext, engine, lease.getDirectory());
+            context.putUserData(DecompilationContext.PROGRESS_INDICATOR, indicator);
+            try {
+                decompiled += decompileJar(context, entry.getKey(), entry.getValue(), outputDirectory,
+                        indicator, decompiled, total);
+            } catch (IOException e) {
+                throw new DecompilationException(e);
+            } catch (InterruptedException e) {
+                throw new DecompilationException(e);
+            } finally {
+                lease.release();
+            }
+        }
+        long time = Math.max(1, System.currentTimeMillis() - startTime);
+        consoleContext.addSectionMessage(ConsoleEntryType.INFO,
+                "message.batch-throughput",
+                decompiled,
+                time,
+                decompiled * 1000L / time);
+        return decompiled;
+    }
+
+    private int decompileJar(@NotNull final DecompilationContext context,
+                             @NotNull final VirtualFile jarRoot,
+                             @NotNull Set<String> classPaths,
+                             @NotNull final File outputDirectory,
+                             @NotNull ProgressIndicator indicator,
+                             int done,
+                             int total) throws IOException, InterruptedException, DecompilationException {
+        ConsoleContext consoleContext = context.getConsoleContext();
+        consoleContext.addMessage(ConsoleEntryType.JAR_OPERATION,
+                "message.examining",
+                jarRoot.getPresentableUrl());
+        final JarFile jarFile = JarFileSystem.getInstance().getJarFile(jarRoot);
+        if (jarFile == null) {
+            consoleContext.addSectionMessage(ConsoleEntryType.ERROR, "error.no-jar-in-path", jarRoot.getPresentableUrl());
+            return 0;
+        }
+        final JarExtractor extractor = new JarExtractor();
+        final List<Chunk> chunks = Chunk.split(classPaths, CHUNK_SIZE);
+        final BatchPipeline<Chunk> pipeline = new BatchPipeline<Chunk>(chunks.size(), PIPELINE_DEPTH, indicator);
+        final List<Future<Void>> runs = Collections.synchronizedList(new ArrayList<Future<Void>>());
+        final ScratchUsers scratchUsers = new ScratchUsers();
+
+        // extraction runs ahead on a thread of its own, the chunks only read the class files extracted for them,
+        // so they can run on several workers at once, and this thread post-processes whatever they have finished
+        Future<?> extraction = ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            public void run() {
+                if (!scratchUsers.enter()) {
+                    return;
+                }
+                try {
+                    for (Chunk chunk : chunks) {
+                        chunk.classFiles = extractor.extractAll(context, jarRoot, jarFile, chunk.classPaths);
+                        unlockSources(outputDirectory, chunk.classPaths);
+                        if (!pipeline.extracted(chunk)) {
+                            return;
+                        }
+                        runs.add(workerPool.submit(context.getProject(), new DecompilationWorkerPool.Job<Void>() {
+                            public Void run(@NotNull File scratchDirectory) throws Exception {
+                                if (!scratchUsers.enter()) {
+                                    // the jar has been given up on
+                                    return null;
+                                }
+                                try {
+                                    Chunk extracted = pipeline.nextExtracted();
+                                    if (extracted != null) {
+                                        if (!extracted.classFiles.isEmpty()) {
+                                            runChunk(context, outputDirectory, extracted.classFiles);
+                                        }
+                                        pipeline.decompiled(extracted);
+                                    }
+                                    return null;
+                                } catch (Exception e) {
+                                    pipeline.fail(e);
+                                    throw e;
+                                } finally {
+                                    scratchUsers.exit();
+                                }
+                            }
+                        }, DecompilationLane.BACKGROUND));
+                        if (runs.size() == 1) {
+                            context.getConsoleContext().addMessage(ConsoleEntryType.INFO,
+                                    "message.queue-depth",
+                                    workerPool.getQueueDepth(DecompilationLane.FOREGROUND),
+                                    workerPool.getQueueDepth(DecompilationLane.NAVIGATION),
+                                    workerPool.getQueueDepth(DecompilationLane.BACKGROUND));
+                        }
+                    }
+                } catch (Throwable e) {
+                    pipeline.fail(e);
+                } finally {
+                    scratchUsers.exit();
+                }
+            }
+        });
+        indicator.setText2(jarRoot.getPresentableName());
+        int completed = 0;
+        List<File> sources = new ArrayList<File>();
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                Chunk chunk = pipeline.nextDecompiled();
+                if (chunk == null) {
+                    Throwable failure = pipeline.getFailure();
+                    if (failure instanceof ProcessCanceledException) {
+                        throw (ProcessCanceledException) failure;
+                    } else if (failure != null) {
+                        throw new DecompilationException(failure);
+                    }
+                    break;
+                }
+                sources.addAll(postProcess(context, outputDirectory, chunk.classPaths));
+                completed += chunk.classPaths.size();
+                indicator.setFraction((double) (done + completed) / total);
+                consoleContext.addMessage(ConsoleEntryType.INFO,
+                        "message.pipeline-depth",
+                        pipeline.getQueueLength(BatchPipeline.Stage.EXTRACTION),
+                        pipeline.getQueueLength(BatchPipeline.Stage.DECOMPILATION),
+                        pipeline.getQueueLength(BatchPipeline.Stage.POST_PROCESSING));
+            }
+        } finally {
+            pipeline.close();
+            extraction.cancel(false);
+            // chunks that have not started yet are dropped, their classes are about to be deleted
+            synchronized (runs) {
+                for (Future<Void> run : runs) {
+                    run.cancel(false);
+                }
+            }
+            // a cancelled future doesn't wait for its job, and the scratch directory is released once this returns
+            scratchUsers.closeAndAwait();
+        }
+
+        attachSourceRoot(context, outputDirectory, classPaths.iterator().next());
+        return sources.size();
+    }
+
+    private void runChunk(@NotNull DecompilationContext context,
+                          @NotNull File outputDirectory,
+                          @NotNull List<File> chunk) throws IOException, InterruptedException {
+        context.getConsoleContext().addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                "message.executing-jad-batch",
+                chunk.size());
+
+        OutputBuffer err = new OutputBuffer(context.getTargetDirectory());
+        try {
+            DecompilationOutcome outcome = context.getEngine().decompileAll(context, chunk, outputDirectory, err);
+            DecompilationStatistics.getInstance().record(outcome);
+            if (outcome.getResultType() == ResultType.FATAL_ERROR) {
+                // the remaining chunks are still worth a try, decompilers fail per class rather than per run
+                context.getConsoleContext().addSectionMessage(ConsoleEntryType.ERROR,
+                        "error",
+                        err.toString());
+                context.getConsoleContext().setWorthDisplaying(true);
+            }
+        } catch (ProcessTimeoutException e) {
+            // a class jad chokes on only costs its own chunk
+            context.getConsoleContext().addSectionMessage(ConsoleEntryType.ERROR,
+                    "error.decompiler-timeout",
+                    e.getTimeout() / 1000);
+            context.getConsoleContext().setWorthDisplaying(true);
+        } finally {
+            err.dispose();
+        }
+    }
+
+    /**
+     * Sources left read-only by an earlier decompilation would make jad skip the class.
+     */
+    private void unlockSources(@NotNull File outputDirectory,
+                               @NotNull Collection<String> classPaths) {
+        for (String classPath : classPaths) {
+            File source = getSourceFile(outputDirectory, classPath);
+            if (source.exists() && !source.setWritable(true)) {
+                LOG.warn("Could not set " + source.getAbsolutePath() + " as writable");
+            }
+        }
+    }
+
+    /**
+     * Applies the watermark and the debuggable style (the preferred style is skipped, reformatting a whole
+     * library through the IDE would cost more than the decompilation itself), and locks the sources.
+     */
+    private List<File> postProcess(@NotNull DecompilationContext context,
+                                   @NotNull File outputDirectory,
+                                   @NotNull Collection<String> classPaths) throws IOException {
+        Config config = context.getConfig();
+        String waterMark = context.getEngine().waterMark() + OsUtil.lineSeparator();
+        List<File> sources = new ArrayList<File>();
+        for (String classPath : classPaths) {
+            File source = getSourceFile(outputDirectory, classPath);
+            if (source.isFile()) {
+                String content = FileUtil.loadFile(source, CharsetToolkit.UTF8);
+                FileUtil.writeToFile(source, (waterMark + content).getBytes(CharsetToolkit.UTF8));
+                sources.add(source);
+            }
+        }
+
+        LocalFileSystem.getInstance().refreshIoFiles(sources);
+        boolean debuggable = CodeStyle.DEBUGGABLE_STYLE == CodeStyle.getByName(config.getReformatStyle());
+        for (File source : sources) {
+            if (debuggable) {
+                VirtualFile file = LocalFileSystem.getInstance().findFileByIoFile(source);
+                if (file != null) {
+                    SourceReorganiser.reorganise(context, new LightMemoryVF(file));
+                }
+            }
+            if (config.isReadOnly() && !source.setReadOnly()) {
+                LOG.info("Could not set " + source.getAbsolutePath() + " as read-only");
+            }
+        }
+        return sources;
+    }
+
+    private void attachSourceRoot(@NotNull final DecompilationContext context,
+                                  @NotNull File outputDirectory,
+                                  @NotNull String classPath) {
+        final Project project = context.getProject();
+        final VirtualFile sourceRoot = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(outputDirectory);
+        final String fqn = classPath.replace('/', '.');
+        if (sourceRoot != null) {
+            appInvoker.runWriteActionAndWait(new Runnable() {
+                public void run() {
+                    ConsoleContext consoleContext = context.getConsoleContext();
+                    List<Library> libraries = LibraryUtil.findLibrariesByClass(fqn, project);
+                    for (Library library : libraries) {
+                        LibraryUtil.attachSourceRoot(library, sourceRoot);
+                        IntelliJadConstants.GENERATED_SOURCE_LIBRARIES.get(project).add(library);
+                        consoleContext.addMessage(ConsoleEntryType.LIBRARY_OPERATION,
+                                "message.associating-source-with-library",
+                                sourceRoot.getPresentableUrl(),
+                                library.getName() == null ? IntelliJadResourceBundle.message("message.unnamed-library") : library.getName());
+                    }
+                }
+            });
+        }
+    }
+
+    private static File getSourceFile(@NotNull File outputDirectory,
+                                      @NotNull String classPath) {
+        return new File(outputDirectory, classPath.replace('/', File.separatorChar)
+                + IntelliJadConstants.DOT_JAVA_EXTENSION);
+    }
+
+    /**
+     * The threads using the scratch directory of a jar, which has to outlive them.  Once closed, nothing else may
+     * start using it.
+     */
+    private static class ScratchUsers {
+        private int active;
+
+        private boolean closed;
+
+        /**
+         * Starts using the scratch directory.
+         *
+         * @return false if the directory is being given up on, and mustn't be used
+         */
+        synchronized boolean enter() {
+            if (closed) {
+                return false;
+            }
+            active++;
+            return true;
+        }
+
+        synchronized void exit() {
+            active--;
+            notifyAll();
+        }
+
+        /**
+         * Stops new users and waits for the current ones to finish.  Their processes are destroyed as soon as the
+         * batch is cancelled, otherwise they run to completion or to the decompiler timeout.
+         */
+        synchronized void closeAndAwait() {
+            closed = true;
+            boolean interrupted = false;
+            while (active > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Classes passing through the pipeline together.
+     */
+    private static class Chunk {
+        private final List<String> classPaths;
+
+        /**
+         * The extracted class files, set by the extraction stage.
+         */
+        private List<File> classFiles;
+
+        private Chunk(@NotNull List<String> classPaths) {
+            this.classPaths = classPaths;
+        }
+
+        @NotNull
+        static List<Chunk> split(@NotNull Collection<String> classPaths,
+                                 int size) {
+            List<String> all = new ArrayList<String>(classPaths);
+            List<Chunk> chunks = new ArrayList<Chunk>();
+            for (int start = 0; start < all.size(); start += size) {
+                chunks.add(new Chunk(all.subList(start, Math.min(start + size, all.size()))));
+            }
+            return chunks;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Hands the chunks of a batch from one stage to the next through bounded queues, so a chunk is extracted while
+ * the decompiler runs the one before it and the one before that is post-processed.
+ * <p>
+ * A stage blocks when the queue of the next one is full, which keeps the extracted classes from piling up on disk
+ * when the decompiler can't keep up.  Every hand-off gives up once the pipeline has stopped, that is when it has
+ * been closed, a stage has failed or the batch has been cancelled.
+ * </p>
+ *
+ * @param <T> the type of the chunks
+ */
+class BatchPipeline<T> {
+    /**
+     * The stages, in the order a chunk passes through them.
+     */
+    enum Stage {
+        EXTRACTION,
+        DECOMPILATION,
+        POST_PROCESSING
+    }
+
+    /**
+     * The interval at which a blocked hand-off checks if the pipeline has stopped.
+     */
+    private static final long STOP_CHECK_INTERVAL = 100;
+
+    private final BlockingQueue<T> extracted;
+
+    private final BlockingQueue<T> decompiled;
+
+    private final AtomicInteger toExtract;
+
+    @Nullable
+    private final ProgressIndicator indicator;
+
+    private volatile Throwable failure;
+
+    private volatile boolean closed;
+
+    /**
+     * @param chunks    the number of chunks of the batch
+     * @param depth     the number of chunks each stage can have waiting at most
+     * @param indicator the indicator of the batch, if it can be cancelled
+     */
+    BatchPipeline(int chunks,
+                  int depth,
+                  @Nullable ProgressIndicator indicator) {
+        this.extracted = new ArrayBlockingQueue<T>(depth);
+        this.decompiled = new ArrayBlockingQueue<T>(depth);
+        this.toExtract = new AtomicInteger(chunks);
+        this.indicator = indicator;
+    }
+
+    /**
+     * Passes an extracted chunk on to the decompilation stage.
+     *
+     * @param chunk the chunk
+     * @return false if the pipeline stopped before the chunk could be passed on
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean extracted(@NotNull T chunk) throws InterruptedException {
+        if (!put(extracted, chunk)) {
+            return false;
+        }
+        toExtract.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Takes the next chunk to decompile.
+     *
+     * @return the chunk, or null if the pipeline stopped
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Nullable
+    T nextExtracted() throws InterruptedException {
+        return take(extracted);
+    }
+
+    /**
+     * Passes a decompiled chunk on to the post-processing stage.
+     *
+     * @param chunk the chunk
+     * @return false if the pipeline stopped before the chunk could be passed on
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean decompiled(@NotNull T chunk) throws InterruptedException {
+        return put(decompiled, chunk);
+    }
+
+    /**
+     * Takes the next chunk to post-process.
+     *
+     * @return the chunk, or null if the pipeline stopped
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Nullable
+    T nextDecompiled() throws InterruptedException {
+        return take(decompiled);
+    }
+
+    /**
+     * Stops the pipeline because a stage failed.  Only the first failure is kept.
+     *
+     * @param failure the cause
+     */
+    void fail(@NotNull Throwable failure) {
+        synchronized (this) {
+            if (this.failure == null) {
+                this.failure = failure;
+            }
+        }
+    }
+
+    /**
+     * Gets the failure that stopped the pipeline.
+     *
+     * @return the failure, or null if no stage failed
+     */
+    @Nullable
+    Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops the pipeline, any stage still waiting gives up.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Gets the number of chunks waiting for a stage.
+     *
+     * @param stage the stage
+     * @return the number of chunks
+     */
+    int getQueueLength(@NotNull Stage stage) {
+        switch (stage) {
+            case EXTRACTION:
+                return toExtract.get();
+            case DECOMPILATION:
+                return extracted.size();
+            default:
+                return decompiled.size();
+        }
+    }
+
+    private boolean isStopped() {
+        return closed || failure != null || (indicator != null && indicator.isCanceled());
+    }
+
+    private boolean put(@NotNull BlockingQueue<T> queue,
+                        @NotNull T chunk) throws InterruptedException {
+        while (!isStopped()) {
+            if (queue.offer(chunk, STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private T take(@NotNull BlockingQueue<T> queue) throws InterruptedException {
+        while (!isStopped()) {
+            T chunk = queue.poll(STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,298 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.io.FileUtil;
+import net.stevechaloner.intellijad.IntelliJadConstants;
+import net.stevechaloner.intellijad.classfile.ClassFileHeader;
+import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.util.OutputBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Merges decompilations arriving close together into a single run of an external decompiler.
+ * <p>
+ * The first decompilation opens a batch and waits for the coalescing window to pass, or for the batch to fill up,
+ * while decompilations of the same project with the same engine and settings join it.  A decompilation the user is
+ * waiting for doesn't open a batch while no other job is queued, nothing would join it.  The batch is then decompiled into a directory
+ * of its own, and each decompilation copies its source from there.  A decompilation arriving alone is run on its
+ * own, as is any decompilation of a batch that didn't run cleanly, so the outcome of every class is still worked
+ * out from its own run whenever something goes wrong.
+ * </p>
+ */
+public class DecompilationCoalescer {
+    private static final Logger LOG = Logger.getInstance(DecompilationCoalescer.class);
+
+    /**
+     * The number of classes decompiled by a single run at most.
+     */
+    static final int MAX_BATCH_SIZE = 16;
+
+    /**
+     * The interval at which a waiting decompilation checks if it has been cancelled.
+     */
+    private static final long CANCELLATION_CHECK_INTERVAL = 100;
+
+    private static final DecompilationCoalescer INSTANCE = new DecompilationCoalescer();
+
+    private final Object lock = new Object();
+
+    /**
+     * Batches still accepting decompilations by project, engine fingerprint and code style, guarded by
+     * {@link #lock}.
+     */
+    private final Map<List<Object>, Batch> open = new HashMap<List<Object>, Batch>();
+
+    DecompilationCoalescer() {
+    }
+
+    // javadoc unnecessary
+    @NotNull
+    public static DecompilationCoalescer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decompiles a single class with the engine of the context, possibly in a single run with other classes.
+     *
+     * @param context   the context of the decompilation
+     * @param classFile the class file
+     * @param output    receives the source
+     * @param err       receives any error messages
+     * @return the outcome
+     * @throws IOException          if the class can't be read or the decompiler can't be run
+     * @throws InterruptedException if the thread is interrupted while waiting for the decompiler
+     */
+    @NotNull
+    public DecompilationOutcome decompile(@NotNull DecompilationContext context,
+                                          @NotNull File classFile,
+                                          @NotNull OutputBuffer output,
+                                          @NotNull OutputBuffer err) throws IOException, InterruptedException {
+        DecompilationEngine engine = context.getEngine();
+        Integer window = context.getConfig().getCoalescingWindow();
+        if (!engine.isExternal() || window == null || window <= 0) {
+            // an in-process engine has no process start-up to save
+            return engine.decompile(context, classFile, output, err);
+        }
+
+        // a batch runs in the context of its first decompilation, which mustn't be another project's
+        List<Object> key = Arrays.<Object>asList(context.getProject(),
+                engine.getName(),
+                engine.getFingerprint(context.getProject()),
+                context.getConfig().getReformatStyle());
+        DecompilationWorkerPool workerPool = context.getUserData(DecompilationContext.WORKER_POOL);
+        boolean alone = context.getUserData(DecompilationContext.LANE) == DecompilationLane.FOREGROUND
+                && workerPool != null && workerPool.getQueueDepth() == 0;
+        Batch batch;
+        boolean leader;
+        synchronized (lock) {
+            batch = open.get(key);
+            leader = batch == null;
+            if (leader && !alone) {
+                batch = new Batch(context);
+                open.put(key, batch);
+            }
+            if (batch != null) {
+                batch.classFiles.add(classFile);
+                if (batch.classFiles.size() >= MAX_BATCH_SIZE) {
+                    open.remove(key);
+                    lock.notifyAll();
+                }
+            }
+        }
+        if (batch == null) {
+            // nothing would join the batch, it would only be waited for
+            return engine.decompile(context, classFile, output, err);
+        }
+
+        File source;
+        try {
+            if (leader) {
+                try {
+                    close(key, batch, window);
+                    batch.run();
+                } finally {
+                    batch.finish();
+                }
+            }
+            source = batch.await(context, classFile);
+            if (source != null) {
+                copy(source, output);
+            }
+        } finally {
+            batch.release();
+        }
+        return source != null ? DecompilationOutcome.SUCCESS : engine.decompile(context, classFile, output, err);
+    }
+
+    /**
+     * Waits until the window has passed or the batch is full, and stops the batch from accepting decompilations.
+     */
+    private void close(@NotNull List<Object> key,
+                       @NotNull Batch batch,
+                       long window) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + window;
+        synchronized (lock) {
+            try {
+                long remaining;
+                while (open.get(key) == batch && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    lock.wait(remaining);
+                }
+            } finally {
+                if (open.get(key) == batch) {
+                    open.remove(key);
+                }
+                batch.closed = true;
+            }
+        }
+    }
+
+    private static void copy(@NotNull File source,
+                             @NotNull OutputBuffer output) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            FileUtil.copy(in, output);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Classes decompiled by a single run, and where their sources ended up.
+     */
+    private class Batch {
+        private final DecompilationContext context;
+
+        /**
+         * The class files of the batch, guarded by {@link DecompilationCoalescer#lock} until the batch is closed.
+         */
+        private final List<File> classFiles = new ArrayList<File>();
+
+        /**
+         * The sources of the class files that were decompiled cleanly, guarded by this.
+         */
+        private final Map<File, File> sources = new HashMap<File, File>();
+
+        private boolean closed;
+
+        private boolean done;
+
+        private int released;
+
+        private ScratchSpaceManager.Lease lease;
+
+        Batch(@NotNull DecompilationContext context) {
+            this.context = context;
+        }
+
+        /**
+         * Decompiles the classes of the batch, unless there's only one of them.
+         */
+        void run() throws InterruptedException {
+            if (classFiles.size() > 1) {
+                runAll();
+            }
+        }
+
+        /**
+         * Wakes up the decompilations waiting for the batch, whether it ran or not.
+         */
+        synchronized void finish() {
+            done = true;
+            notifyAll();
+        }
+
+        private void runAll() throws InterruptedException {
+            context.getConsoleContext().addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                    "message.executing-jad-batch",
+                    classFiles.size());
+            ScratchSpaceManager.Lease outputLease = ScratchSpaceManager.getInstance().lease(context.getProject());
+            synchronized (this) {
+                lease = outputLease;
+            }
+            OutputBuffer err = new OutputBuffer(context.getTargetDirectory());
+            try {
+                File outputDirectory = outputLease.getDirectory();
+                DecompilationOutcome outcome = context.getEngine().decompileAll(context,
+                        classFiles,
+                        outputDirectory,
+                        err);
+                // an error can't be traced back to its class, so every class has to find out on its own
+                if (outcome == DecompilationOutcome.SUCCESS && err.size() == 0) {
+                    Map<File, File> decompiled = new HashMap<File, File>();
+                    Set<File> duplicates = new HashSet<File>();
+                    for (File classFile : classFiles) {
+                        String internalName = ClassFileHeader.read(FileUtil.loadFileBytes(classFile)).getInternalName();
+                        File source = new File(outputDirectory, internalName.replace('/', File.separatorChar)
+                                + IntelliJadConstants.DOT_JAVA_EXTENSION);
+                        if (decompiled.containsValue(source)) {
+                            // classes of the same name overwrote each other's source
+                            duplicates.add(source);
+                        } else if (source.length() > 0) {
+                            decompiled.put(classFile, source);
+                        }
+                    }
+                    decompiled.values().removeAll(duplicates);
+                    synchronized (this) {
+                        sources.putAll(decompiled);
+                    }
+                } else if (LOG.isDebugEnabled()) {
+                    LOG.debug("Coalesced decompilation of " + classFiles.size() + " classes failed: " + outcome);
+                }
+            } catch (IOException e) {
+                LOG.info("Coalesced decompilation of " + classFiles.size() + " classes failed", e);
+            } finally {
+                err.dispose();
+            }
+        }
+
+        /**
+         * Waits for the batch to be decompiled.
+         *
+         * @return the source of the class file, or null if it has to be decompiled on its own
+         */
+        @Nullable
+        synchronized File await(@NotNull DecompilationContext waiting,
+                                @NotNull File classFile) throws InterruptedException {
+            ProgressIndicator indicator = waiting.getUserData(DecompilationContext.PROGRESS_INDICATOR);
+            while (!done) {
+                if (indicator != null && indicator.isCanceled()) {
+                    throw new ProcessCanceledException();
+                }
+                wait(CANCELLATION_CHECK_INTERVAL);
+            }
+            return sources.get(classFile);
+        }
+
+        /**
+         * Signals that a decompilation of the batch no longer needs the sources, the last one deletes them.
+         */
+        void release() {
+            ScratchSpaceManager.Lease outputLease = null;
+            synchronized (lock) {
+                synchronized (this) {
+                    if (++released == classFiles.size() && closed) {
+                        outputLease = lease;
+                    }
+                }
+            }
+            if (outputLease != null) {
+                outputLease.release();
+            }
+        }
+    }
+}
@@ -16,16 +16,22 @@
 package net.stevechaloner.intellijad.decompilers;
 
 import java.io.File;
+import java.util.List;
 import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.UserDataHolder;
+import net.stevechaloner.intellijad.classfile.ClassFileHeader;
+import net.stevechaloner.intellijad.config.CodeStyle;
 import net.stevechaloner.intellijad.config.Config;
+import net.stevechaloner.intellijad.config.rules.RuleContext;
 import net.stevechaloner.intellijad.console.ConsoleContext;
 import net.stevechaloner.intellijad.util.OsUtil;
+import net.stevechaloner.intellijad.util.OutputBuffer;
 import net.stevechaloner.intellijad.util.PluginUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -38,14 +44,45 @@ import org.jetbrains.annotations.Nullable;
 public class DecompilationContext implements UserDataHolder
 {
     /**
-     * The console context to use for reporting.
+     * The indicator of the task the decompilation runs in.  Processes are killed once it's cancelled.
      */
-    private final ConsoleContext consoleContext;
+    public static final Key<ProgressIndicator> PROGRESS_INDICATOR = new Key<ProgressIndicator>("DecompilationContext.progress-indicator");
+
+    /**
+     * The code style used instead of the configured one, e.g. the debuggable style for classes on the stack of
+     * a suspended debugger.
+     */
+    public static final Key<CodeStyle> CODE_STYLE = new Key<CodeStyle>("DecompilationContext.code-style");
+
+    /**
+     * The header of the class file, present if it was read while the class was extracted from its jar.
+     */
+    public static final Key<ClassFileHeader> CLASS_FILE_HEADER = new Key<ClassFileHeader>("DecompilationContext.class-file-header");
 
     /**
-     * The command to execute.
+     * The class file and the class files of its nested classes, present if they were extracted from a jar.
      */
-    private final String command;
+    public static final Key<List<File>> NEST_CLASS_FILES = new Key<List<File>>("DecompilationContext.nest-class-files");
+
+    /**
+     * Follows the output of the decompiler as it's written, present if the output is streamed into an editor.
+     */
+    public static final Key<OutputBuffer.Listener> OUTPUT_LISTENER = new Key<OutputBuffer.Listener>("DecompilationContext.output-listener");
+
+    /**
+     * The worker pool the decompilation runs on, present with {@link #LANE} if it runs on one.
+     */
+    public static final Key<DecompilationWorkerPool> WORKER_POOL = new Key<DecompilationWorkerPool>("DecompilationContext.worker-pool");
+
+    /**
+     * The lane of the worker pool the decompilation was queued in.
+     */
+    public static final Key<DecompilationLane> LANE = new Key<DecompilationLane>("DecompilationContext.lane");
+
+    /**
+     * The console context to use for reporting.
+     */
+    private final ConsoleContext consoleContext;
 
     /**
      * The directory available for placing temporary files.
@@ -62,31 +99,50 @@ public class DecompilationContext implements UserDataHolder
      */
     private final Map<Key, Object> userData = Maps.newConcurrentMap();
 
-    private final DecompilationEngine engine;
+    private volatile DecompilationEngine engine;
+
+    /**
+     * The configuration with the code style of the context, built the first time it's needed.
+     */
+    private volatile Config styledConfig;
 
     /**
      * Initialises a new instance of this class.
      *
      * @param project the project
      * @param consoleContext the reporting console context
+     * @param targetDirectory the directory for temporary files, leased from the {@link ScratchSpaceManager}
      */
     public DecompilationContext(@NotNull Project project,
                                 @NotNull ConsoleContext consoleContext,
-                                @NotNull DecompilationEngine engine
-                                )
+                                @NotNull DecompilationEngine engine,
+                                @NotNull File targetDirectory)
     {
         this.project = Preconditions.checkNotNull(project);
         this.consoleContext = Preconditions.checkNotNull(consoleContext);
         this.engine = Preconditions.checkNotNull(engine);
-        command = Preconditions.checkNotNull(engine.prepareCommand(project));
-        this.targetDirectory = prepareTargetDir(project);
-        targetDirectory.mkdir();
-        targetDirectory.deleteOnExit();
+        this.targetDirectory = Preconditions.checkNotNull(targetDirectory);
+    }
 
+    /**
+     * Gets the directory temporary files of the project's decompilations are placed in.
+     *
+     * @param project the project
+     * @return the temporary directory
+     */
+    @NotNull
+    public static File getTempDirectory(@NotNull Project project) {
+        return getTempDirectory(PluginUtil.getConfig(project));
     }
 
-    private File prepareTargetDir(@NotNull Project project) {
-        Config config = PluginUtil.getConfig(project);
+    /**
+     * Gets the directory temporary files of decompilations using the configuration are placed in.
+     *
+     * @param config the configuration
+     * @return the temporary directory
+     */
+    @NotNull
+    public static File getTempDirectory(@NotNull Config config) {
         File tempDir;
         if (config.isUseCustomTempDir()) {
             tempDir = new File(config.getCustomTempDirPath());
@@ -96,7 +152,7 @@ public class DecompilationContext implements UserDataHolder
         } else {
             tempDir = OsUtil.tempDir();
         }
-        return new File(tempDir, "ij" + System.currentTimeMillis());
+        return tempDir;
     }
 
     // javadoc unnecessary
@@ -105,12 +161,6 @@ public class DecompilationContext implements UserDataHolder
         return consoleContext;
     }
 
-    // javadoc unnecessary
-    public String getCommand()
-    {
-        return command;
-    }
-
     // javadoc unnecessary
     public File getTargetDirectory()
     {
@@ -127,10 +177,61 @@ public class DecompilationContext implements UserDataHolder
         return engine;
     }
 
-    // javadoc unnecessary
+    /**
+     * Hands the decompilation to another engine than the configured one, e.g. because the configured one
+     * doesn't support the version of the class file.
+     *
+     * @param engine the engine
+     */
+    public void setEngine(@NotNull DecompilationEngine engine) {
+        this.engine = Preconditions.checkNotNull(engine);
+    }
+
+    /**
+     * Gets the configuration of the project, with the code style of the context if it has one.
+     * <p>
+     * A context asking for a debuggable style keeps the configured style if that's debuggable too.  The copy of
+     * the configuration with the style of the context is built once.
+     * </p>
+     *
+     * @return the configuration
+     */
     public Config getConfig()
     {
-        return PluginUtil.getConfig(project);
+        Config config = PluginUtil.getConfig(project);
+        String reformatStyle = getReformatStyle(config, getUserData(CODE_STYLE));
+        if (reformatStyle.equals(config.getReformatStyle()))
+        {
+            return config;
+        }
+        Config styled = styledConfig;
+        if (styled == null || !reformatStyle.equals(styled.getReformatStyle()))
+        {
+            styled = new Config(new RuleContext());
+            styled.copyFrom(config);
+            styled.setReformatStyle(reformatStyle);
+            styledConfig = styled;
+        }
+        return styled;
+    }
+
+    /**
+     * Gets the code style a decompilation is reformatted to.
+     *
+     * @param config    the configuration of the project
+     * @param codeStyle the code style asked for instead of the configured one, if any
+     * @return the name of the code style
+     */
+    @NotNull
+    public static String getReformatStyle(@NotNull Config config,
+                                          @Nullable CodeStyle codeStyle)
+    {
+        if (codeStyle == null
+            || (codeStyle.isDebuggable() && CodeStyle.getByName(config.getReformatStyle()).isDebuggable()))
+        {
+            return config.getReformatStyle();
+        }
+        return codeStyle.getName();
     }
 
     @Override
@@ -1,23 +1,144 @@
 package net.stevechaloner.intellijad.decompilers;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
 import com.intellij.openapi.project.Project;
+import net.stevechaloner.intellijad.config.Config;
 import net.stevechaloner.intellijad.decompilers.jad.JadEngine;
+import net.stevechaloner.intellijad.decompilers.procyon.ProcyonEngine;
+import net.stevechaloner.intellijad.util.OutputBuffer;
+import net.stevechaloner.intellijad.util.PluginUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
+ * A decompiler turning class files into source.
+ * <p>
+ * Engines either run an external executable, such as Jad, or decompile in-process.  The class files handed to
+ * an engine have been extracted along with their nested classes, which are found next to them.
+ * </p>
  * Created by Lukasz on 2014-06-10.
  */
 public interface DecompilationEngine {
     public final Selector selector = new Selector();
 
-    String prepareCommand(@NotNull Project project);
+    /**
+     * Gets the name the engine is chosen by in the configuration.
+     *
+     * @return the name
+     */
+    @NotNull
+    String getName();
+
+    /**
+     * Checks if the engine runs an external executable, which must be configured before it can be used.
+     *
+     * @return true if the engine is external
+     */
+    boolean isExternal();
+
+    /**
+     * Checks if the engine can decompile class files of a version, so classes it can't handle are given to
+     * another engine instead of wasting a run.
+     *
+     * @param majorVersion the major version of the class file
+     * @return true if the version is supported
+     */
+    boolean supportsClassVersion(int majorVersion);
+
+    /**
+     * Describes everything affecting the output of the engine, so cached results of different settings
+     * aren't mixed up.
+     *
+     * @param project the project
+     * @return the fingerprint
+     */
+    @NotNull
+    String getFingerprint(@NotNull Project project);
+
+    /**
+     * Decompiles a single class.
+     *
+     * @param context   the context of the decompilation
+     * @param classFile the class file
+     * @param output    receives the source
+     * @param err       receives any error messages
+     * @return the outcome
+     * @throws IOException          if the class can't be read or the decompiler can't be run
+     * @throws InterruptedException if the thread is interrupted while waiting for the decompiler
+     */
+    @NotNull
+    DecompilationOutcome decompile(@NotNull DecompilationContext context,
+                                   @NotNull File classFile,
+                                   @NotNull OutputBuffer output,
+                                   @NotNull OutputBuffer err) throws IOException, InterruptedException;
+
+    /**
+     * Decompiles any number of classes into a directory, in their package structure.
+     *
+     * @param context         the context of the decompilation, whose target directory the class files have been
+     *                        extracted to in their package structure
+     * @param classFiles      the class files
+     * @param outputDirectory the directory the sources are written to
+     * @param err             receives any error messages
+     * @return the outcome
+     * @throws IOException          if the classes can't be read or the decompiler can't be run
+     * @throws InterruptedException if the thread is interrupted while waiting for the decompiler
+     */
+    @NotNull
+    DecompilationOutcome decompileAll(@NotNull DecompilationContext context,
+                                      @NotNull List<File> classFiles,
+                                      @NotNull File outputDirectory,
+                                      @NotNull OutputBuffer err) throws IOException, InterruptedException;
+
     String waterMark();
 
     public static final class Selector {
+        private final DecompilationEngine jad = new JadEngine();
+
+        private final DecompilationEngine procyon = new ProcyonEngine();
+
         private Selector() {}
 
         public DecompilationEngine get(@NotNull Project project) {
-            return new JadEngine();
+            return get(PluginUtil.getConfig(project));
+        }
+
+        public DecompilationEngine get(@NotNull Config config) {
+            return procyon.getName().equals(config.getDecompilationEngine()) ? procyon : jad;
+        }
+
+        /**
+         * Gets the engines that can be chosen in the configuration.
+         *
+         * @return the engines
+         */
+        @NotNull
+        public DecompilationEngine[] getEngines() {
+            return new DecompilationEngine[]{jad, procyon};
+        }
+
+        /**
+         * Gets the engine to decompile a class file of a version with.
+         *
+         * @param preferred    the configured engine, which is used if it supports the version
+         * @param majorVersion the major version of the class file
+         * @return the engine, or null if no engine supports the version
+         */
+        @Nullable
+        public DecompilationEngine get(@NotNull DecompilationEngine preferred,
+                                       int majorVersion) {
+            if (preferred.supportsClassVersion(majorVersion)) {
+                return preferred;
+            }
+            for (DecompilationEngine engine : new DecompilationEngine[]{procyon, jad}) {
+                if (engine.supportsClassVersion(majorVersion)) {
+                    return engine;
+                }
+            }
+            return null;
         }
     }
 }
@@ -0,0 +1,37 @@
+package net.stevechaloner.intellijad.decompilers;
+
+/**
+ * The lanes of the {@link DecompilationWorkerPool}, in the order their jobs are taken.
+ */
+public enum DecompilationLane {
+    /**
+     * Decompilations the user explicitly asked for and is waiting for.
+     */
+    FOREGROUND(false),
+
+    /**
+     * Decompilations triggered by navigation.  A project has a single one waiting at most, a newer one
+     * supersedes it.
+     */
+    NAVIGATION(true),
+
+    /**
+     * Batches, prefetching and any other work nobody is waiting for.  Only some of the workers take these.
+     */
+    BACKGROUND(false);
+
+    private final boolean superseding;
+
+    DecompilationLane(boolean superseding) {
+        this.superseding = superseding;
+    }
+
+    /**
+     * Checks if a job of the lane replaces the waiting job of the same project.
+     *
+     * @return true if a waiting job is superseded
+     */
+    public boolean isSuperseding() {
+        return superseding;
+    }
+}
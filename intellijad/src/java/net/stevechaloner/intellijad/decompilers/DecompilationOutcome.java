@@ -0,0 +1,69 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The outcome of a single run of the external decompiler.
+ */
+public enum DecompilationOutcome {
+    /**
+     * The class was decompiled without complaint.
+     */
+    SUCCESS(ResultType.SUCCESS, false),
+
+    /**
+     * The class was decompiled, but the decompiler reported problems with parts of it.
+     */
+    NON_FATAL_ERROR(ResultType.NON_FATAL_ERROR, false),
+
+    /**
+     * The run failed for a reason unrelated to the class, such as a file that couldn't be read, and is
+     * worth repeating.
+     */
+    TRANSIENT_FAILURE(ResultType.FATAL_ERROR, true),
+
+    /**
+     * The class file is newer than the decompiler understands.
+     */
+    UNSUPPORTED_CLASS_VERSION(ResultType.FATAL_ERROR, false),
+
+    /**
+     * The decompiler wrote more than the output limit, so the source is incomplete.  A larger class doesn't
+     * come out any shorter next time.
+     */
+    OUTPUT_TRUNCATED(ResultType.FATAL_ERROR, false),
+
+    /**
+     * The decompiler failed on the class, and will fail the same way every time.
+     */
+    DECOMPILER_CRASH(ResultType.FATAL_ERROR, false);
+
+    private final ResultType resultType;
+
+    private final boolean retryable;
+
+    DecompilationOutcome(@NotNull ResultType resultType,
+                         boolean retryable) {
+        this.resultType = resultType;
+        this.retryable = retryable;
+    }
+
+    /**
+     * Gets the result type used to choose how the output is handled.
+     *
+     * @return the result type
+     */
+    @NotNull
+    public ResultType getResultType() {
+        return resultType;
+    }
+
+    /**
+     * Checks if running the decompiler again may give a different outcome.
+     *
+     * @return true if the run should be retried
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
@@ -0,0 +1,70 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counts the outcomes of the decompiler runs of the session.
+ */
+public class DecompilationStatistics {
+    private static final DecompilationStatistics INSTANCE = new DecompilationStatistics();
+
+    private final Map<DecompilationOutcome, AtomicLong> outcomes = new EnumMap<DecompilationOutcome, AtomicLong>(DecompilationOutcome.class);
+
+    private final AtomicLong retries = new AtomicLong();
+
+    DecompilationStatistics() {
+        for (DecompilationOutcome outcome : DecompilationOutcome.values()) {
+            outcomes.put(outcome, new AtomicLong());
+        }
+    }
+
+    // javadoc unnecessary
+    @NotNull
+    public static DecompilationStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records the outcome of a decompiler run.
+     *
+     * @param outcome the outcome
+     */
+    public void record(@NotNull DecompilationOutcome outcome) {
+        outcomes.get(outcome).incrementAndGet();
+    }
+
+    /**
+     * Records that a run is repeated.
+     */
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of runs with the outcome.
+     *
+     * @param outcome the outcome
+     * @return the number of runs
+     */
+    public long getCount(@NotNull DecompilationOutcome outcome) {
+        return outcomes.get(outcome).get();
+    }
+
+    /**
+     * Gets the number of runs that repeated a transient failure.
+     *
+     * @return the number of retries
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DecompilationStatistics" + outcomes + ", retries=" + retries;
+    }
+}
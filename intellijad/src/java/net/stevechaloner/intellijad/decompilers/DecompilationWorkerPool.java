@@ -0,0 +1,403 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded pool of workers running decompilations in parallel.
+ * <p>
+ * Jobs wait in the {@link DecompilationLane lanes}, and a worker takes the next job from the first lane that has one,
+ * so work the user is waiting for always overtakes work queued in the background.  Only some of the workers take
+ * background jobs, so the others are free as soon as the user asks for something.  Within a lane every project has
+ * its own queue and the workers take jobs from the queues in turn, so a large batch in one project can't starve
+ * the others.  Every job gets a scratch directory of its own, so concurrent jobs never share extracted class files.
+ * </p>
+ */
+public class DecompilationWorkerPool {
+    private static final Logger LOG = Logger.getInstance(DecompilationWorkerPool.class);
+
+    /**
+     * A unit of work executed by a worker.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Job<T> {
+        /**
+         * Executes the job.
+         *
+         * @param scratchDirectory the scratch directory of the worker, which is not shared with any running job
+         * @return the result
+         * @throws Exception if the job fails
+         */
+        T run(@NotNull File scratchDirectory) throws Exception;
+    }
+
+    private final int size;
+
+    private final int backgroundSize;
+
+    private final Object lock = new Object();
+
+    /**
+     * The pending jobs of every lane, guarded by {@link #lock}.
+     */
+    private final Map<DecompilationLane, LaneQueue> lanes = new EnumMap<DecompilationLane, LaneQueue>(DecompilationLane.class);
+
+    /**
+     * The number of background jobs being run, guarded by {@link #lock}.
+     */
+    private int runningBackground;
+
+    private final List<Thread> workers = new ArrayList<Thread>();
+
+    private boolean shutdown;
+
+    /**
+     * Creates a pool with a worker for every available processor.
+     */
+    public DecompilationWorkerPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    DecompilationWorkerPool(int size) {
+        this.size = Math.max(1, size);
+        // with a single worker the background would never run while anything else is waiting anyway
+        this.backgroundSize = Math.max(1, this.size / 2);
+        for (DecompilationLane lane : DecompilationLane.values()) {
+            lanes.put(lane, new LaneQueue());
+        }
+    }
+
+    // javadoc unnecessary
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Queues a job for the project in the foreground lane.
+     *
+     * @param project the project the job belongs to
+     * @param job     the job
+     * @param <T>     the type of the result
+     * @return the future result of the job
+     */
+    @NotNull
+    public <T> Future<T> submit(@NotNull Project project,
+                                @NotNull Job<T> job) {
+        return submit(project, job, DecompilationLane.FOREGROUND);
+    }
+
+    /**
+     * Queues a job for the project.
+     *
+     * @param project the project the job belongs to
+     * @param job     the job
+     * @param lane    the lane the job waits in
+     * @param <T>     the type of the result
+     * @return the future result of the job
+     */
+    @NotNull
+    public <T> Future<T> submit(@NotNull Project project,
+                                @NotNull Job<T> job,
+                                @NotNull DecompilationLane lane) {
+        QueuedJob<T> queuedJob = new QueuedJob<T>(new JobCallable<T>(project, job), lane);
+        List<QueuedJob<?>> superseded = null;
+        synchronized (lock) {
+            if (shutdown) {
+                throw new IllegalStateException("Worker pool has been shut down");
+            }
+            startWorkers();
+            LaneQueue queue = lanes.get(lane);
+            if (lane.isSuperseding()) {
+                superseded = queue.remove(project);
+            }
+            queue.add(project, queuedJob);
+            lock.notifyAll();
+        }
+        if (superseded != null) {
+            for (QueuedJob<?> supersededJob : superseded) {
+                supersededJob.cancel(false);
+            }
+        }
+        return queuedJob;
+    }
+
+    /**
+     * Moves a job waiting in the navigation lane to the foreground, e.g. because the user has explicitly asked for
+     * its result, so it's neither overtaken nor superseded by later navigations.  A job that has been taken by a
+     * worker, or is in another lane, is left alone.
+     *
+     * @param project the project the job belongs to
+     * @param job     the future result of the job
+     * @return true if the job has been moved
+     */
+    public boolean promote(@NotNull Project project,
+                           @NotNull Future<?> job) {
+        synchronized (lock) {
+            if (!(job instanceof QueuedJob) || !lanes.get(DecompilationLane.NAVIGATION).remove(project, (QueuedJob<?>) job)) {
+                return false;
+            }
+            lanes.get(DecompilationLane.FOREGROUND).add(project, (QueuedJob<?>) job);
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Gets the number of jobs waiting in a lane.
+     *
+     * @param lane the lane
+     * @return the number of jobs not yet taken by a worker
+     */
+    public int getQueueDepth(@NotNull DecompilationLane lane) {
+        synchronized (lock) {
+            return lanes.get(lane).size();
+        }
+    }
+
+    /**
+     * Gets the number of jobs waiting in all lanes.
+     *
+     * @return the number of jobs not yet taken by a worker
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            int depth = 0;
+            for (LaneQueue queue : lanes.values()) {
+                depth += queue.size();
+            }
+            return depth;
+        }
+    }
+
+    /**
+     * Cancels all pending jobs of the project.  Running jobs are left to finish.
+     *
+     * @param project the project
+     */
+    public void cancel(@NotNull Project project) {
+        List<QueuedJob<?>> cancelled = new ArrayList<QueuedJob<?>>();
+        synchronized (lock) {
+            for (LaneQueue queue : lanes.values()) {
+                cancelled.addAll(queue.remove(project));
+            }
+        }
+        for (QueuedJob<?> job : cancelled) {
+            job.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the workers once their current jobs are done, pending jobs are cancelled.
+     */
+    public void shutdown() {
+        List<QueuedJob<?>> cancelled = new ArrayList<QueuedJob<?>>();
+        synchronized (lock) {
+            shutdown = true;
+            for (LaneQueue queue : lanes.values()) {
+                cancelled.addAll(queue.clear());
+            }
+            lock.notifyAll();
+        }
+        for (QueuedJob<?> job : cancelled) {
+            job.cancel(false);
+        }
+    }
+
+    private void startWorkers() {
+        if (workers.isEmpty()) {
+            for (int i = 0; i < size; i++) {
+                Thread worker = new Thread(new Worker(), "IntelliJad worker " + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * Takes the next job from the first lane that has one, skipping the background while enough workers are busy
+     * with it.
+     *
+     * @return the job, or null if the pool has been shut down
+     * @throws InterruptedException if the worker is interrupted while waiting
+     */
+    private QueuedJob<?> take() throws InterruptedException {
+        synchronized (lock) {
+            while (!shutdown) {
+                for (DecompilationLane lane : DecompilationLane.values()) {
+                    if (lane == DecompilationLane.BACKGROUND && runningBackground >= backgroundSize) {
+                        continue;
+                    }
+                    QueuedJob<?> job = lanes.get(lane).poll();
+                    if (job != null) {
+                        if (lane == DecompilationLane.BACKGROUND) {
+                            runningBackground++;
+                        }
+                        return job;
+                    }
+                }
+                lock.wait();
+            }
+            return null;
+        }
+    }
+
+    private void finished(@NotNull DecompilationLane lane) {
+        if (lane == DecompilationLane.BACKGROUND) {
+            synchronized (lock) {
+                runningBackground--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The jobs waiting in a lane, with a queue for every project.
+     */
+    private static class LaneQueue {
+        private final Map<Project, LinkedList<QueuedJob<?>>> queues = new HashMap<Project, LinkedList<QueuedJob<?>>>();
+
+        /**
+         * Projects with pending jobs in the order they are served.
+         */
+        private final LinkedList<Project> projects = new LinkedList<Project>();
+
+        private int size;
+
+        void add(@NotNull Project project,
+                 @NotNull QueuedJob<?> job) {
+            LinkedList<QueuedJob<?>> queue = queues.get(project);
+            if (queue == null) {
+                queue = new LinkedList<QueuedJob<?>>();
+                queues.put(project, queue);
+                projects.addLast(project);
+            }
+            queue.addLast(job);
+            size++;
+        }
+
+        @Nullable
+        QueuedJob<?> poll() {
+            if (projects.isEmpty()) {
+                return null;
+            }
+            Project project = projects.removeFirst();
+            LinkedList<QueuedJob<?>> queue = queues.get(project);
+            QueuedJob<?> job = queue.removeFirst();
+            if (queue.isEmpty()) {
+                queues.remove(project);
+            } else {
+                projects.addLast(project);
+            }
+            size--;
+            return job;
+        }
+
+        @NotNull
+        List<QueuedJob<?>> remove(@NotNull Project project) {
+            LinkedList<QueuedJob<?>> queue = queues.remove(project);
+            if (queue == null) {
+                return Collections.emptyList();
+            }
+            projects.remove(project);
+            size -= queue.size();
+            return queue;
+        }
+
+        boolean remove(@NotNull Project project,
+                       @NotNull QueuedJob<?> job) {
+            LinkedList<QueuedJob<?>> queue = queues.get(project);
+            if (queue == null || !queue.remove(job)) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                queues.remove(project);
+                projects.remove(project);
+            }
+            size--;
+            return true;
+        }
+
+        @NotNull
+        List<QueuedJob<?>> clear() {
+            List<QueuedJob<?>> jobs = new ArrayList<QueuedJob<?>>();
+            for (List<QueuedJob<?>> queue : queues.values()) {
+                jobs.addAll(queue);
+            }
+            queues.clear();
+            projects.clear();
+            size = 0;
+            return jobs;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A job waiting in, or taken from, a lane.
+     */
+    private static class QueuedJob<T> extends FutureTask<T> {
+        private final DecompilationLane lane;
+
+        QueuedJob(@NotNull Callable<T> callable,
+                  @NotNull DecompilationLane lane) {
+            super(callable);
+            this.lane = lane;
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            try {
+                QueuedJob<?> job;
+                while ((job = take()) != null) {
+                    try {
+                        job.run();
+                    } finally {
+                        finished(job.lane);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOG.info("Worker interrupted", e);
+            }
+        }
+    }
+
+    private class JobCallable<T> implements Callable<T> {
+        private final Project project;
+
+        private final Job<T> job;
+
+        JobCallable(Project project,
+                    Job<T> job) {
+            this.project = project;
+            this.job = job;
+        }
+
+        public T call() throws Exception {
+            ScratchSpaceManager.Lease lease = ScratchSpaceManager.getInstance().lease(project);
+            try {
+                return job.run(lease.getDirectory());
+            } finally {
+                lease.release();
+            }
+        }
+    }
+}
@@ -15,22 +15,24 @@
 
 package net.stevechaloner.intellijad.decompilers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import com.google.common.base.Optional;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.vfs.VirtualFile;
 import net.stevechaloner.intellijad.IntelliJadConstants;
 import net.stevechaloner.intellijad.IntelliJadResourceBundle;
+import net.stevechaloner.intellijad.cache.CacheKey;
+import net.stevechaloner.intellijad.cache.DecompilationCache;
 import net.stevechaloner.intellijad.config.CodeStyle;
 import net.stevechaloner.intellijad.config.Config;
 import net.stevechaloner.intellijad.console.ConsoleEntryType;
 import net.stevechaloner.intellijad.util.LibraryUtil;
 import net.stevechaloner.intellijad.util.OsUtil;
+import net.stevechaloner.intellijad.util.OutputBuffer;
 import net.stevechaloner.intellijad.vfs.LightMemoryVF;
 import net.stevechaloner.intellijad.vfs.MemoryVF;
 import net.stevechaloner.intellijad.vfs.MemoryVFS;
@@ -44,8 +46,6 @@ import org.jetbrains.annotations.Nullable;
  * @author Steve Chaloner
  */
 public abstract class DecompilerBase extends AbstractDecompiler {
-    private final Logger LOG = Logger.getInstance(getClass());
-
     /**
      * Initialises a new instance of this class.
      */
@@ -55,11 +55,19 @@ public abstract class DecompilerBase extends AbstractDecompiler {
             public VirtualFile execute(@NotNull DecompilationContext context,
                                        @NotNull DecompilationDescriptor descriptor,
                                        @NotNull File targetClass,
-                                       @NotNull ByteArrayOutputStream output,
-                                       @NotNull ByteArrayOutputStream err) throws DecompilationException {
-                StringBuilder sb = new StringBuilder(output.toString());
-                sb.insert(0, OsUtil.lineSeparator());
-                sb.insert(0, context.getEngine().waterMark());
+                                       @NotNull OutputBuffer output,
+                                       @NotNull OutputBuffer err) throws DecompilationException {
+                // the output is decoded straight into a builder that already holds the watermark,
+                // so the content is only copied once more when the string is created
+                String waterMark = context.getEngine().waterMark() + OsUtil.lineSeparator();
+                StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - waterMark.length(),
+                        output.size()) + waterMark.length());
+                sb.append(waterMark);
+                try {
+                    output.appendTo(sb);
+                } catch (IOException e) {
+                    throw new DecompilationException(e);
+                }
                 String content = sb.toString();
                 if (DecompilationDescriptor.ClassPathType.FS == descriptor.getClassPathType()) {
                     DecompilationDescriptorFactory.getFactoryForFile(targetClass).update(descriptor,
@@ -80,6 +88,24 @@ public abstract class DecompilerBase extends AbstractDecompiler {
         return OperationStatus.CONTINUE;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    protected VirtualFile processCachedOutput(@NotNull DecompilationContext context,
+                                              @NotNull DecompilationDescriptor descriptor,
+                                              @NotNull File targetClass,
+                                              @NotNull String content) throws DecompilationException {
+        if (DecompilationDescriptor.ClassPathType.FS == descriptor.getClassPathType()) {
+            DecompilationDescriptorFactory.getFactoryForFile(targetClass).update(descriptor,
+                    content);
+        }
+        return processOutput(descriptor,
+                context,
+                content,
+                false);
+    }
+
     /**
      * @param descriptor the decompilation descriptor
      * @param context    the decompilation context
@@ -91,13 +117,36 @@ public abstract class DecompilerBase extends AbstractDecompiler {
     protected VirtualFile processOutput(@NotNull final DecompilationDescriptor descriptor,
                                         @NotNull final DecompilationContext context,
                                         @NotNull final String content) throws DecompilationException {
+        return processOutput(descriptor,
+                context,
+                content,
+                true);
+    }
+
+    /**
+     * @param descriptor the decompilation descriptor
+     * @param context    the decompilation context
+     * @param content    the content of the decompiled file
+     * @param reformat   true if the content is raw decompiler output that must be reformatted
+     * @return a file representing the decompiled file
+     * @throws DecompilationException if the processing fails
+     */
+    @Nullable
+    private VirtualFile processOutput(@NotNull final DecompilationDescriptor descriptor,
+                                      @NotNull final DecompilationContext context,
+                                      @NotNull final String content,
+                                      boolean reformat) throws DecompilationException {
         MemoryVFS vfs = TempMemoryVFS.getInstance(context.getProject());
         MemoryVF file = vfs.newMemoryFV(descriptor.getClassName() + IntelliJadConstants.DOT_JAVA_EXTENSION, content);
         IntelliJadConstants.DECOMPILED_BY_INTELLIJAD.set(file.asVirtualFile(), true);
 
         Optional<VirtualFile> actualFile = insertIntoFileSystem(descriptor, context, file);
         if (actualFile.isPresent()) {
-            reformatToStyle(context, new LightMemoryVF(actualFile.get()));
+            if (reformat) {
+                MemoryVF formattedFile = new LightMemoryVF(actualFile.get());
+                reformatToStyle(context, formattedFile);
+                storeInCache(context, formattedFile);
+            }
 
             lockFile(context, file);
 
@@ -120,6 +169,20 @@ public abstract class DecompilerBase extends AbstractDecompiler {
         }
     }
 
+    /**
+     * Stores the final content of the file, if this decompilation is to be cached.
+     *
+     * @param context the decompilation context
+     * @param file    the formatted file
+     */
+    private void storeInCache(@NotNull DecompilationContext context,
+                              @NotNull MemoryVF file) {
+        CacheKey cacheKey = CACHE_KEY.get(context);
+        if (cacheKey != null) {
+            DecompilationCache.getInstance().put(cacheKey, file.getContent());
+        }
+    }
+
     /**
      * Locks the file to prevent source code changes.
      *
@@ -150,36 +213,4 @@ public abstract class DecompilerBase extends AbstractDecompiler {
     protected abstract void attachSourceToLibraries(@NotNull final DecompilationDescriptor descriptor,
                                            @NotNull final DecompilationContext context,
                                            @NotNull final List<Library> libraries);
-
-    /**
-     * Calculates the success of the process execution.
-     *
-     * @param exitCode the exit code of the process
-     * @param err      the error stream of the process
-     * @param output   the output of the process
-     * @return a result based on the execution of the process
-     */
-    protected ResultType checkDecompilationStatus(int exitCode,
-                                                  ByteArrayOutputStream err,
-                                                  ByteArrayOutputStream output) {
-        ResultType resultType = ResultType.SUCCESS;
-        switch (exitCode) {
-            case 0:
-                if (err.size() > 0 && output.size() > 0) {
-                    resultType = ResultType.NON_FATAL_ERROR;
-                } else if (err.size() > 0) {
-                    resultType = ResultType.FATAL_ERROR;
-                }
-                break;
-            default:
-                resultType = ResultType.FATAL_ERROR;
-
-        }
-
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Decompilation status: " + resultType);
-        }
-
-        return resultType;
-    }
 }
@@ -32,7 +32,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.io.Closer;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.OrderRootType;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.io.StreamUtil;
@@ -253,16 +252,7 @@ public class FileSystemDecompiler extends DecompilerBase {
                 if (!libraries.isEmpty()) {
                     ConsoleContext consoleContext = context.getConsoleContext();
                     for (Library library : libraries) {
-                        String[] urls = library.getUrls(OrderRootType.SOURCES);
-                        boolean found = false;
-                        for (int i = 0; !found && i < urls.length; i++) {
-                            found = targetDirectory.getUrl().equals(urls[i]);
-                        }
-                        if (!found) {
-                            Library.ModifiableModel model = library.getModifiableModel();
-                            model.addRoot(targetDirectory, OrderRootType.SOURCES);
-                            model.commit();
-                        }
+                        LibraryUtil.attachSourceRoot(library, targetDirectory);
 
                         IntelliJadConstants.GENERATED_SOURCE_LIBRARIES.get(project).add(library);
                         consoleContext.addMessage(ConsoleEntryType.LIBRARY_OPERATION,
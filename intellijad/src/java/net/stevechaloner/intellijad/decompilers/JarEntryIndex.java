@@ -0,0 +1,148 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.intellij.openapi.vfs.JarFile;
+import com.intellij.openapi.vfs.JarFile.JarEntry;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index of the class entries of a jar, mapping every top-level class to its own entry and the entries
+ * of all its nested classes, as far as their names tell.  The {@link JarExtractor} only relies on it for class
+ * files it can't read the nested classes from.
+ * <p>
+ * Indexes are built on first use and cached per jar.  A cached index is rebuilt when the size or
+ * modification time of its jar changes.
+ * </p>
+ */
+final class JarEntryIndex {
+    private static final String CLASS_EXTENSION = ".class";
+
+    /**
+     * The number of jars whose indexes are kept, least recently used go first.
+     */
+    private static final int MAX_CACHED = 16;
+
+    private static final Map<String, JarEntryIndex> CACHE = new LinkedHashMap<String, JarEntryIndex>(MAX_CACHED, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JarEntryIndex> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private final String stamp;
+
+    /**
+     * Paths of top-level classes, without the class extension, mapped to the names of their entries.
+     */
+    private final Map<String, List<String>> entriesByClass;
+
+    private JarEntryIndex(@NotNull String stamp,
+                          @NotNull Map<String, List<String>> entriesByClass) {
+        this.stamp = stamp;
+        this.entriesByClass = entriesByClass;
+    }
+
+    /**
+     * Gets the index of the jar, building it if it isn't cached or the jar has changed since.
+     *
+     * @param jarRoot the root of the jar in the jar file system
+     * @param jarFile the opened jar
+     * @return the index
+     */
+    @NotNull
+    static JarEntryIndex get(@NotNull VirtualFile jarRoot,
+                             @NotNull JarFile jarFile) {
+        VirtualFile localJar = JarFileSystem.getInstance().getVirtualFileForJar(jarRoot);
+        File jar = localJar == null ? new File(jarRoot.getPath()) : VfsUtilCore.virtualToIoFile(localJar);
+        String path = jar.getAbsolutePath();
+        String stamp = jar.length() + ":" + jar.lastModified();
+        synchronized (CACHE) {
+            JarEntryIndex index = CACHE.get(path);
+            if (index != null && index.stamp.equals(stamp)) {
+                return index;
+            }
+        }
+        JarEntryIndex index = create(stamp, jarFile.entries());
+        synchronized (CACHE) {
+            CACHE.put(path, index);
+        }
+        return index;
+    }
+
+    @NotNull
+    static JarEntryIndex create(@NotNull String stamp,
+                                @NotNull Enumeration<? extends JarEntry> entries) {
+        List<String> names = new ArrayList<String>();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return create(stamp, names);
+    }
+
+    @NotNull
+    static JarEntryIndex create(@NotNull String stamp,
+                                @NotNull Iterable<String> entryNames) {
+        Map<String, List<String>> entriesByClass = new HashMap<String, List<String>>();
+        for (String name : entryNames) {
+            if (name.endsWith(CLASS_EXTENSION)) {
+                String outerClassPath = getOuterClassPath(name.substring(0, name.length() - CLASS_EXTENSION.length()));
+                List<String> classEntries = entriesByClass.get(outerClassPath);
+                if (classEntries == null) {
+                    classEntries = new ArrayList<String>(1);
+                    entriesByClass.put(outerClassPath, classEntries);
+                }
+                classEntries.add(name);
+            }
+        }
+        return new JarEntryIndex(stamp, entriesByClass);
+    }
+
+    /**
+     * Gets the path of the top-level class a class belongs to.
+     *
+     * @param classPath the path of a class, without the class extension
+     * @return the path of the top-level class
+     */
+    @NotNull
+    static String getOuterClassPath(@NotNull String classPath) {
+        int nested = classPath.indexOf('$', classPath.lastIndexOf('/') + 1);
+        return nested == -1 ? classPath : classPath.substring(0, nested);
+    }
+
+    /**
+     * Gets the entries of a class and all classes nested in it.
+     *
+     * @param classPath the path of the class, without the class extension
+     * @return the names of the entries, empty if the jar doesn't contain the class
+     */
+    @NotNull
+    List<String> getEntries(@NotNull String classPath) {
+        String outerClassPath = getOuterClassPath(classPath);
+        List<String> classEntries = entriesByClass.get(outerClassPath);
+        if (classEntries == null) {
+            return Collections.emptyList();
+        }
+        if (outerClassPath.equals(classPath)) {
+            return Collections.unmodifiableList(classEntries);
+        }
+        List<String> nestedEntries = new ArrayList<String>();
+        for (String name : classEntries) {
+            if (name.startsWith(classPath)
+                    && (name.charAt(classPath.length()) == '.' || name.charAt(classPath.length()) == '$')) {
+                nestedEntries.add(name);
+            }
+        }
+        return nestedEntries;
+    }
+}
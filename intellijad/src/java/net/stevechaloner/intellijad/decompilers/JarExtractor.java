@@ -16,32 +16,45 @@
 package net.stevechaloner.intellijad.decompilers;
 
 import com.google.common.io.Closer;
-import com.intellij.openapi.util.io.StreamUtil;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.intellij.openapi.vfs.JarFile;
 import com.intellij.openapi.vfs.JarFile.JarEntry;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.stevechaloner.intellijad.classfile.ClassFileHeader;
+import net.stevechaloner.intellijad.console.ConsoleContext;
 import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * JarExtractor will pull a file from a given path and extract it into
  * a directory on the file system.
+ * <p>
+ * A class is extracted along with exactly the classes nested in it, as listed by the {@code InnerClasses} and
+ * {@code NestMembers} attributes of the class files, rather than every class whose name starts with its own.
+ * Only if a class file can't be read are its nested classes guessed from their names by the {@link JarEntryIndex}.
+ * </p>
  *
  * @author Steve Chaloner
  */
 class JarExtractor {
-    /**
-     * Pattern describing class names, including nested classes.
-     */
-    private static final String CLASS_PATTERN = "((\\$\\w*)?)*";
+    private static final Logger LOG = Logger.getInstance(JarExtractor.class);
+
     private static final String DEFAULT_PACKAGE = "/";
+    private static final String CLASS_EXTENSION = ".class";
 
     private String preparePackage(String packageName) {
         return DEFAULT_PACKAGE.equals(packageName) ? "" : packageName;
@@ -56,44 +69,152 @@ class JarExtractor {
         }
     }
     /**
-     * Extract the given file to the target directory specified in the context.
+     * Extract the given file to the target directory specified in the context.  The header of the class and the
+     * extracted files are left in the context for the following stages.
      *
      * @param context     the context of the decompilation operation
+     * @param jarRoot     the root of the jar in the jar file system
      * @param jarFile     the name of the zip file to open
      * @param packageName the package of the class
      * @param className   the name of the class
      * @throws IOException if an error occurs during the operation
+     * @see DecompilationContext#CLASS_FILE_HEADER
+     * @see DecompilationContext#NEST_CLASS_FILES
      */
     void extract(DecompilationContext context,
+                 VirtualFile jarRoot,
                  JarFile jarFile,
                  String packageName,
                  String className) throws IOException {
-        Pattern p = Pattern.compile(preparePackage(packageName) + className + CLASS_PATTERN + ".class");
+        List<File> classFiles = new ArrayList<File>();
+        ClassFileHeader header = extractNest(jarRoot,
+                jarFile,
+                preparePackage(packageName) + className,
+                context.getTargetDirectory(),
+                false,
+                context.getConsoleContext(),
+                classFiles);
+        if (header != null) {
+            context.putUserData(DecompilationContext.CLASS_FILE_HEADER, header);
+        }
+        context.putUserData(DecompilationContext.NEST_CLASS_FILES, classFiles);
+    }
 
-        Enumeration<? extends JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-            JarEntry entry = entries.nextElement();
-            String name = entry.getName();
-            Matcher matcher = p.matcher(name);
-            if (matcher.matches()) {
-                context.getConsoleContext().addMessage(ConsoleEntryType.JAR_OPERATION,
-                        "message.extracting",
-                        entry.getName());
-                Closer closer = Closer.create();
-                try {
-                    InputStream inputStream = closer.register(jarFile.getInputStream(entry));
+    /**
+     * Extract the given classes, including their nested classes, to the target directory specified in the context.
+     * The package structure of the jar is preserved.
+     *
+     * @param context    the context of the decompilation operation
+     * @param jarRoot    the root of the jar in the jar file system
+     * @param jarFile    the jar containing the classes
+     * @param classPaths the paths of the classes within the jar, without the class extension
+     * @return the extracted class files of the requested (non-nested) classes
+     * @throws IOException if an error occurs during the operation
+     */
+    List<File> extractAll(DecompilationContext context,
+                          VirtualFile jarRoot,
+                          JarFile jarFile,
+                          Collection<String> classPaths) throws IOException {
+        List<File> classFiles = new ArrayList<File>();
+        List<File> nest = new ArrayList<File>();
+        int extracted = 0;
+        for (String classPath : classPaths) {
+            nest.clear();
+            extractNest(jarRoot, jarFile, classPath, context.getTargetDirectory(), true, null, nest);
+            if (!nest.isEmpty()) {
+                classFiles.add(nest.get(0));
+                extracted += nest.size();
+            }
+        }
+        context.getConsoleContext().addMessage(ConsoleEntryType.JAR_OPERATION,
+                "message.extracted-classes",
+                extracted);
+        return classFiles;
+    }
 
-                    File outputFile = new File(context.getTargetDirectory(), justFileName(entry.getName()));
-                    context.getConsoleContext().addMessage(ConsoleEntryType.JAR_OPERATION,
-                            "message.extracting-done",
-                            entry.getName(), outputFile.getAbsolutePath());
-                    outputFile.deleteOnExit();
-                    FileOutputStream fos = closer.register(new FileOutputStream(outputFile));
-                    StreamUtil.copyStreamContent(inputStream, fos);
-                } finally {
-                    closer.close();
+    /**
+     * Extracts a class and the classes nested in it, and in them.
+     *
+     * @param jarRoot         the root of the jar in the jar file system
+     * @param jarFile         the jar containing the class
+     * @param classPath       the path of the class within the jar, without the class extension
+     * @param targetDirectory the directory the class files are extracted to
+     * @param keepPackages    true to extract the class files in the package structure of the jar
+     * @param consoleContext  the console context each class file is reported to, if any
+     * @param classFiles      receives the extracted class files, the class itself first
+     * @return the header of the class, or null if the jar doesn't contain it or it can't be read
+     * @throws IOException if a class file can't be extracted
+     */
+    @Nullable
+    private ClassFileHeader extractNest(@NotNull VirtualFile jarRoot,
+                                        @NotNull JarFile jarFile,
+                                        @NotNull String classPath,
+                                        @NotNull File targetDirectory,
+                                        boolean keepPackages,
+                                        @Nullable ConsoleContext consoleContext,
+                                        @NotNull List<File> classFiles) throws IOException {
+        ClassFileHeader classHeader = null;
+        Deque<String> pending = new ArrayDeque<String>();
+        Set<String> seen = new HashSet<String>();
+        pending.add(classPath);
+        while (!pending.isEmpty()) {
+            String path = pending.removeFirst();
+            String name = path + CLASS_EXTENSION;
+            JarEntry entry = seen.add(path) ? jarFile.getEntry(name) : null;
+            if (entry == null) {
+                // a nested class the jar doesn't contain, or the class itself
+                continue;
+            }
+            if (consoleContext != null) {
+                consoleContext.addMessage(ConsoleEntryType.JAR_OPERATION,
+                        "message.extracting",
+                        name);
+            }
+            File outputFile = new File(targetDirectory, keepPackages ? name : justFileName(name));
+            byte[] bytes = copy(jarFile, entry, outputFile);
+            classFiles.add(outputFile);
+            if (consoleContext != null) {
+                consoleContext.addMessage(ConsoleEntryType.JAR_OPERATION,
+                        "message.extracting-done",
+                        name, outputFile.getAbsolutePath());
+            }
+            try {
+                ClassFileHeader header = ClassFileHeader.read(bytes);
+                if (path.equals(classPath)) {
+                    classHeader = header;
+                }
+                pending.addAll(header.getNestedClasses());
+            } catch (IOException e) {
+                LOG.debug("Could not read the nested classes of " + name, e);
+                for (String nested : JarEntryIndex.get(jarRoot, jarFile).getEntries(path)) {
+                    pending.add(nested.substring(0, nested.length() - CLASS_EXTENSION.length()));
                 }
             }
         }
+        return classHeader;
+    }
+
+    /**
+     * Copies an entry of the jar to a file.
+     *
+     * @return the content of the entry
+     */
+    private byte[] copy(JarFile jarFile,
+                        JarEntry entry,
+                        File outputFile) throws IOException {
+        File parent = outputFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent.getAbsolutePath());
+        }
+        byte[] bytes;
+        Closer closer = Closer.create();
+        try {
+            InputStream inputStream = closer.register(jarFile.getInputStream(entry));
+            bytes = FileUtil.loadBytes(inputStream);
+        } finally {
+            closer.close();
+        }
+        FileUtil.writeToFile(outputFile, bytes);
+        return bytes;
     }
 }
@@ -0,0 +1,221 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Hands out the scratch directories class files are extracted to before decompilation.
+ * <p>
+ * Directories are leased for the duration of a single decompilation, emptied as soon as the lease is released,
+ * and reused by later leases.  Every IDE session works in its own directory, so sessions sharing a temporary
+ * directory never collide, and the directories of earlier sessions are removed at startup.
+ * </p>
+ */
+public class ScratchSpaceManager {
+    private static final Logger LOG = Logger.getInstance(ScratchSpaceManager.class);
+
+    private static final String SCRATCH_ROOT = "intellijad-scratch";
+
+    /**
+     * Directories created by earlier versions directly in the temporary directory.
+     */
+    private static final Pattern LEGACY_DIRECTORY = Pattern.compile("ij(-worker-)?\\d+");
+
+    /**
+     * Age after which a directory of another session is assumed to be abandoned.
+     */
+    private static final long STALE_AGE = 60L * 60 * 1000;
+
+    private static final ScratchSpaceManager INSTANCE = new ScratchSpaceManager();
+
+    private final String session = "session-" + System.currentTimeMillis() + '-' + new Random().nextInt(10000);
+
+    private final AtomicInteger directoryCount = new AtomicInteger();
+
+    private final Object lock = new Object();
+
+    /**
+     * Released directories, guarded by {@link #lock}.
+     */
+    private final LinkedList<File> free = new LinkedList<File>();
+
+    /**
+     * Leased directories, guarded by {@link #lock}.
+     */
+    private final Set<File> leased = new HashSet<File>();
+
+    /**
+     * Temporary directories already cleaned of stale scratch directories, guarded by {@link #lock}.
+     */
+    private final Set<File> cleaned = new HashSet<File>();
+
+    ScratchSpaceManager() {
+    }
+
+    // javadoc unnecessary
+    @NotNull
+    public static ScratchSpaceManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * A scratch directory that is used exclusively by its holder until released.
+     */
+    public final class Lease {
+        private final File directory;
+
+        private boolean released;
+
+        private Lease(@NotNull File directory) {
+            this.directory = directory;
+        }
+
+        // javadoc unnecessary
+        @NotNull
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Deletes the content of the directory and returns it for reuse.  Releasing more than once has no effect.
+         */
+        public void release() {
+            synchronized (lock) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            FileUtil.delete(directory);
+            synchronized (lock) {
+                leased.remove(directory);
+                free.addFirst(directory);
+            }
+        }
+    }
+
+    /**
+     * Leases a scratch directory in the project's temporary directory.  The directory exists and is empty.
+     *
+     * @param project the project
+     * @return the lease, which must be released when the directory is no longer needed
+     */
+    @NotNull
+    public Lease lease(@NotNull Project project) {
+        return lease(DecompilationContext.getTempDirectory(project));
+    }
+
+    @NotNull
+    Lease lease(@NotNull File tempDirectory) {
+        File sessionDirectory = new File(new File(tempDirectory, SCRATCH_ROOT), session);
+        File directory = null;
+        synchronized (lock) {
+            for (File candidate : free) {
+                if (sessionDirectory.equals(candidate.getParentFile())) {
+                    directory = candidate;
+                    free.remove(candidate);
+                    break;
+                }
+            }
+            if (directory == null) {
+                directory = new File(sessionDirectory, String.valueOf(directoryCount.incrementAndGet()));
+            }
+            leased.add(directory);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOG.warn("Could not create scratch directory " + directory.getAbsolutePath());
+        }
+        return new Lease(directory);
+    }
+
+    /**
+     * Removes scratch directories left behind by earlier sessions.  Each temporary directory is only cleaned once.
+     *
+     * @param tempDirectory the temporary directory
+     */
+    public void removeStale(@NotNull File tempDirectory) {
+        synchronized (lock) {
+            if (!cleaned.add(tempDirectory)) {
+                return;
+            }
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_AGE;
+        List<File> stale = new ArrayList<File>();
+        File[] sessions = new File(tempDirectory, SCRATCH_ROOT).listFiles();
+        if (sessions != null) {
+            for (File sessionDirectory : sessions) {
+                if (!session.equals(sessionDirectory.getName()) && sessionDirectory.lastModified() < staleBefore) {
+                    stale.add(sessionDirectory);
+                }
+            }
+        }
+        File[] legacy = tempDirectory.listFiles();
+        if (legacy != null) {
+            for (File directory : legacy) {
+                if (directory.isDirectory()
+                        && LEGACY_DIRECTORY.matcher(directory.getName()).matches()
+                        && directory.lastModified() < staleBefore) {
+                    stale.add(directory);
+                }
+            }
+        }
+        for (File directory : stale) {
+            FileUtil.delete(directory);
+        }
+        if (!stale.isEmpty()) {
+            LOG.info("Removed " + stale.size() + " stale scratch directories from " + tempDirectory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Gets the number of directories currently leased.
+     *
+     * @return the number of leases
+     */
+    public int getLiveLeases() {
+        synchronized (lock) {
+            return leased.size();
+        }
+    }
+
+    /**
+     * Gets the size of the files in the leased directories.
+     *
+     * @return the size in bytes
+     */
+    public long getBytesOnDisk() {
+        List<File> directories;
+        synchronized (lock) {
+            directories = new ArrayList<File>(leased);
+        }
+        long bytes = 0;
+        for (File directory : directories) {
+            bytes += size(directory);
+        }
+        return bytes;
+    }
+
+    private static long size(@NotNull File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += size(child);
+        }
+        return size;
+    }
+}
@@ -1,31 +1,163 @@
 package net.stevechaloner.intellijad.decompilers.jad;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import com.intellij.openapi.project.Project;
 import net.stevechaloner.intellijad.IntelliJadResourceBundle;
 import net.stevechaloner.intellijad.config.CodeStyle;
 import net.stevechaloner.intellijad.config.Config;
+import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.decompilers.DecompilationContext;
 import net.stevechaloner.intellijad.decompilers.DecompilationEngine;
+import net.stevechaloner.intellijad.decompilers.DecompilationOutcome;
+import net.stevechaloner.intellijad.util.OutputBuffer;
 import net.stevechaloner.intellijad.util.PluginUtil;
+import net.stevechaloner.intellijad.util.ProcessLauncher;
+import net.stevechaloner.intellijad.util.ProcessOutputTruncatedException;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Created by Lukasz on 2014-06-10.
  */
 public class JadEngine implements DecompilationEngine {
+    /**
+     * The latest class file version Jad supports, 47.0.
+     */
+    private static final int MAX_CLASS_VERSION = 47;
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "jad";
+    }
+
+    @Override
+    public boolean isExternal() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Jad refuses anything newer than Java 1.3, see {@link JadOutputClassifier}.
+     * </p>
+     */
+    @Override
+    public boolean supportsClassVersion(int majorVersion) {
+        return majorVersion <= MAX_CLASS_VERSION;
+    }
+
+    @NotNull
+    @Override
+    public String getFingerprint(@NotNull Project project) {
+        return ProcessLauncher.render(prepareCommand(project));
+    }
 
+    @NotNull
     @Override
-    public String prepareCommand(@NotNull Project project) {
-        Config config = PluginUtil.getConfig(project);
-        StringBuilder command = new StringBuilder(config.getJadPath()
-                + " " +
-                config.renderCommandLinePropertyDescriptors());
-        command.append(" -p ");
-        if (command.indexOf(" -lnc ") == -1 &&
-                CodeStyle.DEBUGGABLE_STYLE.getName().equals(config.getReformatStyle())) {
+    public DecompilationOutcome decompile(@NotNull DecompilationContext context,
+                                          @NotNull File classFile,
+                                          @NotNull OutputBuffer output,
+                                          @NotNull OutputBuffer err) throws IOException, InterruptedException {
+        List<String> command = prepareCommand(context.getConfig());
+        command.add(classFile.getAbsolutePath());
+        context.getConsoleContext().addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                "message.executing-jad",
+                ProcessLauncher.render(command));
+        int exitCode;
+        try {
+            exitCode = ProcessLauncher.create(command, context.getConfig()).run(context, output, err);
+        } catch (ProcessOutputTruncatedException e) {
+            context.getConsoleContext().addSectionMessage(ConsoleEntryType.ERROR,
+                    "error.output-truncated",
+                    e.getLimit() / 1024);
+            return DecompilationOutcome.OUTPUT_TRUNCATED;
+        }
+        return JadOutputClassifier.classify(exitCode, err.toString(), output.size());
+    }
+
+    @NotNull
+    @Override
+    public DecompilationOutcome decompileAll(@NotNull DecompilationContext context,
+                                             @NotNull List<File> classFiles,
+                                             @NotNull File outputDirectory,
+                                             @NotNull OutputBuffer err) throws IOException, InterruptedException {
+        List<String> command = prepareBatchCommand(context.getConfig(), outputDirectory);
+        for (File classFile : classFiles) {
+            command.add(classFile.getAbsolutePath());
+        }
+        OutputBuffer output = new OutputBuffer(context.getTargetDirectory());
+        try {
+            int exitCode;
+            try {
+                exitCode = ProcessLauncher.create(command, context.getConfig()).run(context, output, err);
+            } catch (ProcessOutputTruncatedException e) {
+                // the output only lists the classes, the sources are written to files
+                exitCode = e.getExitCode();
+            }
+            // the sources go to the output directory, so there's nothing to tell an empty result by
+            return exitCode == 0 ? DecompilationOutcome.SUCCESS : DecompilationOutcome.DECOMPILER_CRASH;
+        } finally {
+            output.dispose();
+        }
+    }
+
+    /**
+     * Prepares a command decompiling a single class file, appended to the command, to the standard output.
+     *
+     * @param project the project
+     * @return the executable followed by its arguments
+     */
+    public List<String> prepareCommand(@NotNull Project project) {
+        return prepareCommand(PluginUtil.getConfig(project));
+    }
+
+    private List<String> prepareCommand(@NotNull Config config) {
+        List<String> command = baseCommand(config);
+        command.add("-p");
+        appendLineNumbers(config, command);
+        return command;
+    }
+
+    /**
+     * Prepares a command decompiling any number of class files, appended to the command, into a directory
+     * instead of the standard output.
+     *
+     * @param project         the project
+     * @param outputDirectory the directory the sources are written to, in their package structure
+     * @return the executable followed by its arguments
+     */
+    public List<String> prepareBatchCommand(@NotNull Project project, @NotNull File outputDirectory) {
+        return prepareBatchCommand(PluginUtil.getConfig(project), outputDirectory);
+    }
+
+    private List<String> prepareBatchCommand(@NotNull Config config, @NotNull File outputDirectory) {
+        List<String> command = baseCommand(config);
+        // restore the package structure and overwrite what a previous run left behind
+        command.add("-o");
+        command.add("-r");
+        command.add("-d");
+        command.add(outputDirectory.getAbsolutePath());
+        appendLineNumbers(config, command);
+        return command;
+    }
+
+    private List<String> baseCommand(Config config) {
+        List<String> command = new ArrayList<String>();
+        command.add(config.getJadPath());
+        command.addAll(config.getArguments());
+        return command;
+    }
+
+    private void appendLineNumbers(Config config, List<String> command) {
+        if (!command.contains("-lnc") &&
+                CodeStyle.getByName(config.getReformatStyle()).isDebuggable()) {
             // technically it wouldn't hurt to have this present twice, but this is neater
-            command.append(" -lnc ");
+            command.add("-lnc");
         }
-        return command.toString();
     }
 
     @Override
@@ -0,0 +1,53 @@
+package net.stevechaloner.intellijad.decompilers.jad;
+
+import java.util.regex.Pattern;
+
+import net.stevechaloner.intellijad.decompilers.DecompilationOutcome;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Works out the outcome of a Jad run from its exit code and error output.
+ * <p>
+ * Jad stopped evolving with Java 1.4, so it refuses class files of later versions with a message naming the
+ * versions it supports.  Failures to open or read files don't depend on the class and are the only ones
+ * worth trying again, as is the occasional run producing no output and no error at all.
+ * </p>
+ */
+public final class JadOutputClassifier {
+    /**
+     * Jad's complaint about a class file version it doesn't support, e.g.
+     * "The class file version is 50.0 (only 45.3, 46.0 and 47.0 are supported)".
+     */
+    private static final Pattern UNSUPPORTED_VERSION = Pattern.compile("(?i)class file version is .*supported");
+
+    private static final Pattern TRANSIENT_ERROR = Pattern.compile("(?i)can't open|cannot open|can't read|cannot read"
+            + "|permission denied|too many open files|resource temporarily unavailable|no space left");
+
+    private JadOutputClassifier() {
+    }
+
+    /**
+     * Classifies a Jad run.
+     *
+     * @param exitCode   the exit code of the process
+     * @param err        the error output of the process
+     * @param outputSize the number of bytes written to the output
+     * @return the outcome
+     */
+    @NotNull
+    public static DecompilationOutcome classify(int exitCode,
+                                                @NotNull String err,
+                                                long outputSize) {
+        boolean hasErrors = err.trim().length() > 0;
+        if (exitCode == 0 && outputSize > 0) {
+            return hasErrors ? DecompilationOutcome.NON_FATAL_ERROR : DecompilationOutcome.SUCCESS;
+        }
+        if (UNSUPPORTED_VERSION.matcher(err).find()) {
+            return DecompilationOutcome.UNSUPPORTED_CLASS_VERSION;
+        }
+        if (TRANSIENT_ERROR.matcher(err).find() || (exitCode == 0 && !hasErrors)) {
+            return DecompilationOutcome.TRANSIENT_FAILURE;
+        }
+        return DecompilationOutcome.DECOMPILER_CRASH;
+    }
+}
@@ -0,0 +1,153 @@
+package net.stevechaloner.intellijad.decompilers.procyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Calls Procyon, which is bundled as a jar of its own and loaded in an isolated class loader, so it can't clash
+ * with any other copy of it in the IDE.
+ */
+final class ProcyonBridge {
+    static final String JAR_NAME = "procyon-decompiler-0.5.25.jar";
+
+    /**
+     * Supplies the content of the classes Procyon asks for.
+     */
+    interface ClassSource {
+        /**
+         * Gets the content of a class file.
+         *
+         * @param internalName the internal name of the class
+         * @return the content, or null if the class isn't available
+         * @throws IOException if the class file can't be read
+         */
+        @Nullable
+        byte[] load(@NotNull String internalName) throws IOException;
+    }
+
+    private final ClassLoader classLoader;
+    private final Class<?> typeLoaderClass;
+    private final Method javaDefaults;
+    private final Method setTypeLoader;
+    private final Constructor<?> plainTextOutput;
+    private final Method decompile;
+    private final Method reset;
+    private final Method putByteArray;
+    private final Method position;
+
+    private ProcyonBridge(@NotNull ClassLoader classLoader) throws ClassNotFoundException, NoSuchMethodException {
+        this.classLoader = classLoader;
+        typeLoaderClass = classLoader.loadClass("com.strobel.assembler.metadata.ITypeLoader");
+        Class<?> settingsClass = classLoader.loadClass("com.strobel.decompiler.DecompilerSettings");
+        Class<?> outputClass = classLoader.loadClass("com.strobel.decompiler.ITextOutput");
+        Class<?> bufferClass = classLoader.loadClass("com.strobel.assembler.metadata.Buffer");
+        javaDefaults = settingsClass.getMethod("javaDefaults");
+        setTypeLoader = settingsClass.getMethod("setTypeLoader", typeLoaderClass);
+        plainTextOutput = classLoader.loadClass("com.strobel.decompiler.PlainTextOutput").getConstructor(Writer.class);
+        decompile = classLoader.loadClass("com.strobel.decompiler.Decompiler").getMethod("decompile",
+                String.class,
+                outputClass,
+                settingsClass);
+        reset = bufferClass.getMethod("reset", int.class);
+        putByteArray = bufferClass.getMethod("putByteArray", byte[].class, int.class, int.class);
+        position = bufferClass.getMethod("position", int.class);
+    }
+
+    /**
+     * Loads Procyon from the jar bundled with the plugin, which is copied to the system directory first
+     * because a jar within the plugin's jar can't be loaded directly.
+     *
+     * @return the bridge
+     * @throws IOException if the jar can't be found or loaded
+     */
+    @NotNull
+    static ProcyonBridge load() throws IOException {
+        File jar = new File(PathManager.getSystemPath(), "intellijad" + File.separator + JAR_NAME);
+        if (!jar.isFile()) {
+            InputStream in = ProcyonBridge.class.getResourceAsStream("/" + JAR_NAME);
+            if (in == null) {
+                throw new IOException(JAR_NAME + " is missing from the plugin");
+            }
+            try {
+                File partial = new File(jar.getPath() + ".tmp");
+                FileUtil.createParentDirs(partial);
+                FileUtil.writeToFile(partial, FileUtil.loadBytes(in));
+                if (!partial.renameTo(jar) && !jar.isFile()) {
+                    throw new IOException("Could not create " + jar.getAbsolutePath());
+                }
+            } finally {
+                in.close();
+            }
+        }
+        try {
+            // Procyon only depends on the JDK, so the parent is the loader of the platform's classes
+            // rather than the plugin's, which might see a different copy of Procyon
+            return new ProcyonBridge(new URLClassLoader(new URL[]{jar.toURI().toURL()},
+                    ClassLoader.getSystemClassLoader().getParent()));
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } catch (NoSuchMethodException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Decompiles a class.
+     *
+     * @param internalName the internal name of the class
+     * @param source       supplies the class and everything it refers to
+     * @param writer       receives the source
+     * @throws Exception if Procyon fails
+     */
+    void decompile(@NotNull String internalName,
+                   @NotNull final ClassSource source,
+                   @NotNull Writer writer) throws Exception {
+        Object typeLoader = Proxy.newProxyInstance(classLoader, new Class<?>[]{typeLoaderClass}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("tryLoadType".equals(method.getName())) {
+                    return tryLoadType(source, (String) args[0], args[1]);
+                } else if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return "IntelliJad type loader";
+            }
+        });
+        Object settings = javaDefaults.invoke(null);
+        setTypeLoader.invoke(settings, typeLoader);
+        try {
+            decompile.invoke(null, internalName, plainTextOutput.newInstance(writer), settings);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private boolean tryLoadType(@NotNull ClassSource source,
+                                @NotNull String internalName,
+                                @NotNull Object buffer) throws Exception {
+        byte[] bytes = source.load(internalName);
+        if (bytes == null) {
+            return false;
+        }
+        reset.invoke(buffer, bytes.length);
+        putByteArray.invoke(buffer, bytes, 0, bytes.length);
+        position.invoke(buffer, 0);
+        return true;
+    }
+}
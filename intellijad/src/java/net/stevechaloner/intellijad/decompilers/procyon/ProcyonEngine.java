@@ -0,0 +1,195 @@
+package net.stevechaloner.intellijad.decompilers.procyon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import net.stevechaloner.intellijad.IntelliJadConstants;
+import net.stevechaloner.intellijad.IntelliJadResourceBundle;
+import net.stevechaloner.intellijad.classfile.ClassFileHeader;
+import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.decompilers.DecompilationContext;
+import net.stevechaloner.intellijad.decompilers.DecompilationEngine;
+import net.stevechaloner.intellijad.decompilers.DecompilationOutcome;
+import net.stevechaloner.intellijad.util.OutputBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decompiles in-process with Procyon, which needs neither an executable nor a process per class and understands
+ * class files of every Java version up to 8.
+ * <p>
+ * Procyon is handed the bytes of the classes it asks for: the class itself, the classes of the same package
+ * next to it, which includes its nested classes, and the classes of the runtime.
+ * </p>
+ */
+public class ProcyonEngine implements DecompilationEngine {
+    private static final Logger LOG = Logger.getInstance(ProcyonEngine.class);
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    private volatile ProcyonBridge bridge;
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "procyon";
+    }
+
+    @Override
+    public boolean isExternal() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Versions after Java 8 are attempted as well, their classes only fail if they use features Procyon doesn't
+     * know about.
+     * </p>
+     */
+    @Override
+    public boolean supportsClassVersion(int majorVersion) {
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public String getFingerprint(@NotNull Project project) {
+        return ProcyonBridge.JAR_NAME;
+    }
+
+    @NotNull
+    @Override
+    public DecompilationOutcome decompile(@NotNull DecompilationContext context,
+                                          @NotNull File classFile,
+                                          @NotNull OutputBuffer output,
+                                          @NotNull OutputBuffer err) throws IOException {
+        context.getConsoleContext().addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                "message.executing-procyon",
+                classFile.getName());
+        return run(context, classFile, output, err);
+    }
+
+    @NotNull
+    @Override
+    public DecompilationOutcome decompileAll(@NotNull DecompilationContext context,
+                                             @NotNull List<File> classFiles,
+                                             @NotNull File outputDirectory,
+                                             @NotNull OutputBuffer err) throws IOException {
+        DecompilationOutcome outcome = DecompilationOutcome.SUCCESS;
+        for (File classFile : classFiles) {
+            String classPath = FileUtil.getRelativePath(context.getTargetDirectory(), classFile);
+            if (classPath == null || !classPath.endsWith(CLASS_EXTENSION)) {
+                throw new IOException(classFile.getAbsolutePath() + " is not in " + context.getTargetDirectory());
+            }
+            File source = new File(outputDirectory,
+                    classPath.substring(0, classPath.length() - CLASS_EXTENSION.length())
+                            + IntelliJadConstants.DOT_JAVA_EXTENSION);
+            FileUtil.createParentDirs(source);
+            OutputStream out = new FileOutputStream(source);
+            try {
+                if (run(context, classFile, out, err) != DecompilationOutcome.SUCCESS) {
+                    outcome = DecompilationOutcome.DECOMPILER_CRASH;
+                }
+            } finally {
+                out.close();
+            }
+        }
+        return outcome;
+    }
+
+    private DecompilationOutcome run(@NotNull DecompilationContext context,
+                                     @NotNull File classFile,
+                                     @NotNull OutputStream output,
+                                     @NotNull OutputStream err) throws IOException {
+        ProgressIndicator indicator = context.getUserData(DecompilationContext.PROGRESS_INDICATOR);
+        if (indicator != null && indicator.isCanceled()) {
+            // Procyon can't be stopped once it has started, but at least it won't start
+            throw new ProcessCanceledException();
+        }
+        final byte[] bytes = FileUtil.loadFileBytes(classFile);
+        final ClassFileHeader header = ClassFileHeader.read(bytes);
+        final File directory = classFile.getParentFile();
+        Writer writer = new OutputStreamWriter(output);
+        try {
+            getBridge().decompile(header.getInternalName(), new ProcyonBridge.ClassSource() {
+                @Nullable
+                public byte[] load(@NotNull String internalName) throws IOException {
+                    if (internalName.equals(header.getInternalName())) {
+                        return bytes;
+                    }
+                    if (packageOf(internalName).equals(packageOf(header.getInternalName()))) {
+                        File sibling = new File(directory, simpleNameOf(internalName) + CLASS_EXTENSION);
+                        if (sibling.isFile()) {
+                            return FileUtil.loadFileBytes(sibling);
+                        }
+                    }
+                    return loadRuntimeClass(internalName);
+                }
+            }, writer);
+            writer.flush();
+            return DecompilationOutcome.SUCCESS;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.info("Procyon failed on " + classFile.getAbsolutePath(), e);
+            PrintStream stream = new PrintStream(err);
+            e.printStackTrace(stream);
+            stream.flush();
+            return DecompilationOutcome.DECOMPILER_CRASH;
+        }
+    }
+
+    @NotNull
+    private ProcyonBridge getBridge() throws IOException {
+        if (bridge == null) {
+            synchronized (this) {
+                if (bridge == null) {
+                    bridge = ProcyonBridge.load();
+                }
+            }
+        }
+        return bridge;
+    }
+
+    @Nullable
+    private static byte[] loadRuntimeClass(@NotNull String internalName) throws IOException {
+        InputStream in = ClassLoader.getSystemResourceAsStream(internalName + CLASS_EXTENSION);
+        if (in == null) {
+            return null;
+        }
+        try {
+            return FileUtil.loadBytes(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @NotNull
+    private static String packageOf(@NotNull String internalName) {
+        int separator = internalName.lastIndexOf('/');
+        return separator == -1 ? "" : internalName.substring(0, separator);
+    }
+
+    @NotNull
+    private static String simpleNameOf(@NotNull String internalName) {
+        return internalName.substring(internalName.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public String waterMark() {
+        return IntelliJadResourceBundle.message("message.decompiled-through-intellijad");
+    }
+}
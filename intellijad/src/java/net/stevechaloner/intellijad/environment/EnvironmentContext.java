@@ -17,6 +17,7 @@ package net.stevechaloner.intellijad.environment;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import net.stevechaloner.intellijad.config.CodeStyle;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -31,6 +32,16 @@ import java.util.Map;
  */
 public class EnvironmentContext
 {
+    /**
+     * Marks a decompilation the user didn't explicitly ask for, such as one triggered by navigation.
+     */
+    public static final Key<Boolean> SPECULATIVE = new Key<Boolean>("EnvironmentContext.speculative");
+
+    /**
+     * The code style the class is decompiled in instead of the configured one.
+     */
+    public static final Key<CodeStyle> CODE_STYLE = new Key<CodeStyle>("EnvironmentContext.code-style");
+
     /**
      * The project.
      */
@@ -34,6 +34,7 @@ import net.stevechaloner.intellijad.config.ConfigAccessor;
 import net.stevechaloner.intellijad.config.ProjectConfigComponent;
 import net.stevechaloner.intellijad.console.ConsoleContext;
 import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.decompilers.DecompilationEngine;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -45,6 +46,21 @@ import org.jetbrains.annotations.NotNull;
 public class EnvironmentValidator {
     private static final Logger LOG = Logger.getInstance(EnvironmentValidator.class);
     
+    /**
+     * Checks the environment without telling anybody about problems, for decompilations nobody is waiting for.
+     *
+     * @param config the configuration
+     * @return true if the decompiler can be run
+     */
+    public static boolean isValid(@NotNull Config config)
+    {
+        if (!DecompilationEngine.selector.get(config).isExternal()) {
+            return true;
+        }
+        String jadPath = config.getJadPath();
+        return !StringUtil.isEmptyOrSpaces(jadPath) && new File(jadPath).isFile();
+    }
+
     /**
      * Validates the environment prior to decompilation.
      *
@@ -59,20 +75,23 @@ public class EnvironmentValidator {
     {
         String message = null;
         Object[] params = {};
-        String jadPath = config.getJadPath();
-        if (StringUtil.isEmptyOrSpaces(jadPath)) {
-            message = "error.unspecified-jad-path";
-        } else {
-            File f = new File(jadPath);
-            if (!f.exists())
-            {
-                message = "error.non-existant-jad-path";
-                params = new String[]{jadPath};
-            }
-            else if (!f.isFile())
-            {
-                message = "error.invalid-jad-path";
-                params = new String[]{jadPath};
+        if (DecompilationEngine.selector.get(config).isExternal()) {
+            // an in-process engine has no executable to configure
+            String jadPath = config.getJadPath();
+            if (StringUtil.isEmptyOrSpaces(jadPath)) {
+                message = "error.unspecified-jad-path";
+            } else {
+                File f = new File(jadPath);
+                if (!f.exists())
+                {
+                    message = "error.non-existant-jad-path";
+                    params = new String[]{jadPath};
+                }
+                else if (!f.isFile())
+                {
+                    message = "error.invalid-jad-path";
+                    params = new String[]{jadPath};
+                }
             }
         }
 
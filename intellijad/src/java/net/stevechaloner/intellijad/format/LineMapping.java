@@ -0,0 +1,182 @@
+package net.stevechaloner.intellijad.format;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Maps the lines of a class as it was compiled onto the lines of its decompiled source, and back.
+ * <p>
+ * Jad marks each line with the line number it was compiled from, as a <code>/* nnn*&#47;</code> comment.  Rather
+ * than moving the lines to those numbers, as {@link SourceReorganiser} does, the markers are read into sorted
+ * tables, so the source keeps Jad's layout and each lookup is a binary search.
+ * </p>
+ * <p>
+ * Original lines are numbered from 1, as in the class file, and document lines from 0, as in the editor.
+ * </p>
+ */
+public class LineMapping {
+    /**
+     * The mapping of a source without line numbers.
+     */
+    public static final LineMapping EMPTY = new LineMapping(new int[0], new int[0], new int[0], new int[0]);
+
+    /**
+     * The document lines with a marker, in ascending order.
+     */
+    @NotNull
+    private final int[] documentLines;
+
+    /**
+     * The original line of each entry of {@link #documentLines}.
+     */
+    @NotNull
+    private final int[] originalLines;
+
+    /**
+     * The original lines, in ascending order.
+     */
+    @NotNull
+    private final int[] sortedOriginalLines;
+
+    /**
+     * The first document line of each entry of {@link #sortedOriginalLines}.
+     */
+    @NotNull
+    private final int[] sortedDocumentLines;
+
+    private LineMapping(@NotNull int[] documentLines,
+                        @NotNull int[] originalLines,
+                        @NotNull int[] sortedOriginalLines,
+                        @NotNull int[] sortedDocumentLines) {
+        this.documentLines = documentLines;
+        this.originalLines = originalLines;
+        this.sortedOriginalLines = sortedOriginalLines;
+        this.sortedDocumentLines = sortedDocumentLines;
+    }
+
+    /**
+     * Reads the line numbers of a decompiled source.
+     *
+     * @param text the source, with line numbers as comments
+     * @return the mapping, which is empty if the source has no line numbers
+     */
+    @NotNull
+    public static LineMapping parse(@NotNull CharSequence text) {
+        int[] documentLines = new int[16];
+        int[] originalLines = new int[16];
+        int count = 0;
+        int[] digits = new int[1];
+        int length = text.length();
+        int line = 0;
+        int start = 0;
+        while (start <= length) {
+            int end = start;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                end++;
+            }
+            int from = SourceReorganiser.trimStart(text, start, end);
+            int markerEnd = SourceReorganiser.lineNumberEnd(text, from, end, digits);
+            if (markerEnd != SourceReorganiser.NONE) {
+                // the digits are followed by the end of the comment
+                int digitsEnd = markerEnd - 2;
+                // line numbers in a class file are unsigned shorts, so longer ones aren't line numbers
+                if (digitsEnd - digits[0] <= 9) {
+                    if (count == documentLines.length) {
+                        documentLines = Arrays.copyOf(documentLines, count * 2);
+                        originalLines = Arrays.copyOf(originalLines, count * 2);
+                    }
+                    documentLines[count] = line;
+                    originalLines[count] = SourceReorganiser.parseLineNumber(text, digits[0], digitsEnd);
+                    count++;
+                }
+            }
+            if (end < length - 1 && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n') {
+                end++;
+            }
+            start = end + 1;
+            line++;
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+
+        // sorting by original line then document line keeps the first document line of each original line first
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) originalLines[i] << 32) | documentLines[i];
+        }
+        Arrays.sort(keys);
+        int[] sortedOriginalLines = new int[count];
+        int[] sortedDocumentLines = new int[count];
+        int distinct = 0;
+        for (long key : keys) {
+            int original = (int) (key >>> 32);
+            if (distinct == 0 || sortedOriginalLines[distinct - 1] != original) {
+                sortedOriginalLines[distinct] = original;
+                sortedDocumentLines[distinct] = (int) key;
+                distinct++;
+            }
+        }
+        return new LineMapping(Arrays.copyOf(documentLines, count),
+                               Arrays.copyOf(originalLines, count),
+                               Arrays.copyOf(sortedOriginalLines, distinct),
+                               Arrays.copyOf(sortedDocumentLines, distinct));
+    }
+
+    /**
+     * Checks if the source has no line numbers.
+     *
+     * @return true if nothing is mapped
+     */
+    public boolean isEmpty() {
+        return documentLines.length == 0;
+    }
+
+    /**
+     * Gets the document line showing an original line.
+     *
+     * @param originalLine the line number in the class file, from 1
+     * @return the first document line marked with the line number, from 0, or -1 if no line is marked with it
+     */
+    public int getDocumentLine(int originalLine) {
+        int i = Arrays.binarySearch(sortedOriginalLines, originalLine);
+        return i < 0 ? -1 : sortedDocumentLines[i];
+    }
+
+    /**
+     * Gets the document line showing an original line, or the line of the closest marker if none is marked with it,
+     * e.g. for a statement Jad merged into the line of another.
+     *
+     * @param originalLine the line number in the class file, from 1
+     * @return the first document line marked with the closest line number, preferring the one before on a tie, or
+     *         -1 if nothing is mapped
+     */
+    public int getNearestDocumentLine(int originalLine) {
+        int i = Arrays.binarySearch(sortedOriginalLines, originalLine);
+        if (i >= 0) {
+            return sortedDocumentLines[i];
+        }
+        int after = -i - 1;
+        if (after == 0) {
+            return isEmpty() ? -1 : sortedDocumentLines[0];
+        }
+        int before = after - 1;
+        if (after == sortedOriginalLines.length
+                || originalLine - sortedOriginalLines[before] <= sortedOriginalLines[after] - originalLine) {
+            return sortedDocumentLines[before];
+        }
+        return sortedDocumentLines[after];
+    }
+
+    /**
+     * Gets the original line shown on a document line.
+     *
+     * @param documentLine the line in the document, from 0
+     * @return the line number in the class file, from 1, or -1 if the document line isn't marked
+     */
+    public int getOriginalLine(int documentLine) {
+        int i = Arrays.binarySearch(documentLines, documentLine);
+        return i < 0 ? -1 : originalLines[i];
+    }
+}
@@ -15,37 +15,29 @@
 
 package net.stevechaloner.intellijad.format;
 
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.intellij.openapi.diagnostic.Logger;
+import java.util.Arrays;
+
 import net.stevechaloner.intellijad.decompilers.DecompilationContext;
 import net.stevechaloner.intellijad.util.AppInvoker;
 import net.stevechaloner.intellijad.util.OsUtil;
 import net.stevechaloner.intellijad.vfs.MemoryVF;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * Reorganises decompiled code to allow debugging.
  * <p>
+ * Jad marks each line with the line number it was compiled from, as a <code>/* nnn*&#47;</code> comment.
+ * The lines are moved to those line numbers, block by block, so the debugger shows the right line.
+ * </p>
+ * <p>
+ * The source is read in a single pass into tables of line contents, line numbers and blocks, and written into
+ * a single buffer, so large classes take little more time than it takes to copy them.
  * This class is based on com.tagtraum.ideajad.LineSorter.java
  * </p>
  *
  * @author Steve Chaloner
  */
 public class SourceReorganiser {
-    /**
-     * Defines the placement of line numbers inserted as comments by Jad.
-     */
-    private static final Pattern LINE_NUMBER_PATTERN = Pattern.compile("^/\\*\\s*(\\d+)\\*/");
-
     /**
      * The system line separator.
      */
@@ -53,430 +45,730 @@ public class SourceReorganiser {
 
     private static final int LINE_NUMBER_MARKER_LENGTH = 8;
 
-    private static int getWriterSize(MemoryVF file) {
-        if (file.size() > Integer.MAX_VALUE) {
-            return Integer.MAX_VALUE;
-        } else {
-            return (int) file.size();
-        }
-    }
+    /**
+     * Marks the absence of an element, or of a line number.
+     */
+    static final int NONE = -1;
 
     public static void reorganise(DecompilationContext context, final MemoryVF file) {
-        LineNumberReader in = null;
-        final StringWriter out = new StringWriter(getWriterSize(file));
-        boolean retainLineNumbers = context.getConfig().isLineNumbersAsComments();
-        try {
-            in = new LineNumberReader(new StringReader(file.getContent()));
-            List<String> lines = reformat(in);
-            Block currentBlock = new Block();
-            for (String line : lines) {
-                Matcher lineNumberMatcher = LINE_NUMBER_PATTERN.matcher(line);
-                if (lineNumberMatcher.find()) {
-                    // we have a line  number
-                    String lineNumberString = lineNumberMatcher.group(1);
-                    int lineNumber = Integer.parseInt(lineNumberString);
-                    String lineStringWithoutNumber = line.substring(lineNumberMatcher.end());
-                    if (currentBlock.getLastLine() != null && currentBlock.getLastLine().getNumber() == lineNumber) {
-                        // if the last line exists and has the same number, add this line to it without number
-                        currentBlock.getLastLine().add(lineStringWithoutNumber);
-                    } else {
-                        // if this line is a new line, i.e. the last line has a different number, add a new line to the block
-                        currentBlock.add(new Line(lineStringWithoutNumber,
-                                lineNumber,
-                                retainLineNumbers));
-                    }
-                    String lastLine = currentBlock.getLastLine().getContent();
-                    if (lastLine.endsWith("{")) {
-                        currentBlock = new Block(currentBlock,
-                                currentBlock.removeLastLine());
-                    }
-                } else {
-                    // no line number
-                    String trimmedLineString = line.trim();
-                    if ("{".equals(trimmedLineString)) {
-                        currentBlock.getLastLine().add("{");
-                        // this means we are starting a new block
-                        currentBlock = new Block(currentBlock, currentBlock.removeLastLine());
-                    } else if (trimmedLineString.endsWith("{")) {
-                        if (trimmedLineString.startsWith("}")) {
-                            int closingBrace = line.indexOf('}');
-                            // get rid of whatever is coming after '}'
-                            currentBlock.add(new Line(line.substring(0,
-                                    closingBrace + 1)));
-                            currentBlock = currentBlock.getParent();
-                            // get rid of '}'
-                            line = line.substring(0, closingBrace) + line.substring(closingBrace + 1).trim();
-                        }
-                        // this means we are starting a new block
-                        currentBlock = new Block(currentBlock,
-                                new Line(line));
-                    } else if ("}".equals(trimmedLineString)) {
-                        currentBlock.add(new Line(line));
-                        currentBlock = currentBlock.getParent();
-                    } else if (trimmedLineString.startsWith("}")) {
-                        int closingBrace = line.indexOf('}');
-                        // get rid of whatever is coming after '}'
-                        currentBlock.add(new Line(line.substring(0,
-                                closingBrace + 1)));
-                        currentBlock = currentBlock.getParent();
-                        // get rid of '}'
-                        line = line.substring(0, closingBrace) + line.substring(closingBrace + 1).trim();
-                        currentBlock.add(new Line(line));
-                    } else {
-                        currentBlock.add(new Line(line));
-                    }
-                }
-            }
-            // try to sort things
-            currentBlock.sort();
-            // let's print it out
-            currentBlock.write(out);
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    Logger.getInstance(SourceReorganiser.class.getName()).error(e);
-                }
-            }
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    Logger.getInstance(SourceReorganiser.class.getName()).error(e);
-                }
-            }
-        }
+        final String content = reorganise(file.getContent());
         AppInvoker.get().runWriteActionAndWait(new Runnable() {
             @Override
             public void run() {
-                file.setContent(out.getBuffer().toString());
+                file.setContent(content);
             }
         });
     }
 
-    private static List<String> reformat(LineNumberReader in) {
-        String lineString;
-        int lastIndent = 0;
-        int indent = -1;
-        boolean lastLineHadNoNumber = false;
-        List<String> lines = new ArrayList<String>();
-        try {
-            while ((lineString = in.readLine()) != null) {
-                if (lineString.length() > LINE_NUMBER_MARKER_LENGTH && !lineString.startsWith("/*")) {
+    /**
+     * Reorganises decompiled code.
+     *
+     * @param source the output of Jad, with line numbers as comments
+     * @return the reorganised source
+     */
+    @NotNull
+    static String reorganise(@NotNull String source) {
+        Reorganisation reorganisation = new Reorganisation(source);
+        reorganisation.read();
+        return reorganisation.write();
+    }
+
+    /**
+     * Finds the end of the line number at the start of a line, which matches <code>^/\*\s*(\d+)\*&#47;</code>.
+     *
+     * @param line   the text containing the line
+     * @param from   the start of the line
+     * @param to     the end of the line
+     * @param digits receives the start of the line number
+     * @return the end of the line number comment, or {@link #NONE} if the line doesn't start with one
+     */
+    static int lineNumberEnd(@NotNull CharSequence line,
+                             int from,
+                             int to,
+                             @NotNull int[] digits) {
+        if (to - from < 2 || line.charAt(from) != '/' || line.charAt(from + 1) != '*') {
+            return NONE;
+        }
+        int i = from + 2;
+        while (i < to && isRegexWhitespace(line.charAt(i))) {
+            i++;
+        }
+        digits[0] = i;
+        while (i < to && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+            i++;
+        }
+        if (i == digits[0] || i + 2 > to || line.charAt(i) != '*' || line.charAt(i + 1) != '/') {
+            return NONE;
+        }
+        return i + 2;
+    }
+
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Parses a line number the way {@link Integer#parseInt(String)} does, including its failure on overflow.
+     */
+    static int parseLineNumber(@NotNull CharSequence line,
+                               int start,
+                               int end) {
+        if (end - start > 9) {
+            return Integer.parseInt(line.subSequence(start, end).toString());
+        }
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            number = number * 10 + line.charAt(i) - '0';
+        }
+        return number;
+    }
+
+    /**
+     * Finds the start of a range without the characters {@link String#trim()} removes.
+     */
+    static int trimStart(@NotNull CharSequence text,
+                         int start,
+                         int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Finds the end of a range without the characters {@link String#trim()} removes.
+     */
+    private static int trimEnd(@NotNull CharSequence text,
+                               int start,
+                               int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Appends a range without the characters {@link String#trim()} removes.
+     */
+    private static void appendTrimmed(@NotNull StringBuilder to,
+                                      @NotNull CharSequence text,
+                                      int start,
+                                      int end) {
+        start = trimStart(text, start, end);
+        to.append(text, start, trimEnd(text, start, end));
+    }
+
+    /**
+     * Finds a string within a range, without looking past its end.
+     */
+    private static int indexOf(@NotNull String text,
+                               @NotNull String str,
+                               int start,
+                               int end) {
+        for (int index = start; index + str.length() <= end; index++) {
+            if (text.startsWith(str, index)) {
+                return index;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * The lines and blocks of a source, held in tables indexed by element.
+     * <p>
+     * An element is either a line, whose content is a range of {@link #text}, or a block, which holds a list of
+     * elements linked through {@link #next} and {@link #previous}.  A block starts with the line that opens it.
+     * </p>
+     */
+    private static final class Reorganisation {
+        @NotNull
+        private final String source;
+
+        /**
+         * The content of all lines, one after another.
+         */
+        @NotNull
+        private final StringBuilder text;
+
+        private int size;
+
+        /**
+         * The start of the content of a line, {@link #NONE} for a block.
+         */
+        private int[] start;
+
+        private int[] end;
+
+        /**
+         * The line number of a line, or the lowest line number in a block, {@link #NONE} if there is none.
+         */
+        private int[] number;
+
+        private int[] next;
+
+        private int[] previous;
+
+        private int[] parent;
+
+        private int[] first;
+
+        private int[] last;
+
+        private int currentBlock;
+
+        private final int[] digits = new int[1];
+
+        Reorganisation(@NotNull String source) {
+            this.source = source;
+            this.text = new StringBuilder(source.length());
+            int capacity = 16;
+            start = new int[capacity];
+            end = new int[capacity];
+            number = new int[capacity];
+            next = new int[capacity];
+            previous = new int[capacity];
+            parent = new int[capacity];
+            first = new int[capacity];
+            last = new int[capacity];
+            currentBlock = newElement();
+            start[currentBlock] = NONE;
+        }
+
+        /**
+         * Reads the lines of the source into blocks.  Lines without a number that are indented twice as
+         * deep as the line before are continuations of that line, and are joined with it first.
+         */
+        void read() {
+            // a line is taken from the source as it is, and only copied once a continuation is joined with it
+            StringBuilder joined = new StringBuilder();
+            CharSequence line = null;
+            int lineFrom = 0;
+            int lineTo = 0;
+            int lastIndent = 0;
+            int indent = NONE;
+            boolean lastLineHadNoNumber = false;
+            int length = source.length();
+            int position = 0;
+            while (position < length) {
+                int lineStart = position;
+                int lineEnd = position;
+                char c = 0;
+                while (lineEnd < length && (c = source.charAt(lineEnd)) != '\n' && c != '\r') {
+                    lineEnd++;
+                }
+                position = c == '\r' && lineEnd + 1 < length && source.charAt(lineEnd + 1) == '\n' ? lineEnd + 2 : lineEnd + 1;
+
+                if (lineEnd - lineStart > LINE_NUMBER_MARKER_LENGTH && !source.startsWith("/*", lineStart)) {
                     int thisIndent = 0;
                     // count spaces or tabs
-                    for (; thisIndent < lineString.length() && (lineString.charAt(thisIndent) == ' ' || lineString.charAt(thisIndent) == '\t'); thisIndent++) {
+                    while (lineStart + thisIndent < lineEnd
+                            && (source.charAt(lineStart + thisIndent) == ' ' || source.charAt(lineStart + thisIndent) == '\t')) {
+                        thisIndent++;
                     }
                     thisIndent = thisIndent - LINE_NUMBER_MARKER_LENGTH;
-                    if (indent == -1 && thisIndent > 0) {
+                    if (indent == NONE && thisIndent > 0) {
                         indent = thisIndent;
                     }
                     if ((thisIndent - lastIndent) / indent == 2 && lastLineHadNoNumber) {
                         // add this line to the last line
-                        String l = lines.get(lines.size() - 1) + ' ' + lineString.trim();
-                        lines.set(lines.size() - 1, l);
-                    } else {
-                        lastIndent = thisIndent;
-                        lines.add(lineString);
+                        if (line != joined) {
+                            joined.setLength(0);
+                            joined.append(line, lineFrom, lineTo);
+                            line = joined;
+                            lineFrom = 0;
+                        }
+                        appendTrimmed(joined.append(' '), source, lineStart, lineEnd);
+                        lineTo = joined.length();
+                        lastLineHadNoNumber = true;
+                        continue;
                     }
+                    lastIndent = thisIndent;
                     lastLineHadNoNumber = true;
                 } else {
                     // strip case statement comments, which have the form "case 2: // '\002'"
-                    int casePos = lineString.indexOf("case");
+                    int casePos = indexOf(source, "case", lineStart, lineEnd);
                     int colon;
-                    if (casePos != -1 && (colon = lineString.indexOf(": //", casePos)) != -1) {
-                        lineString = lineString.substring(0, colon + 2);
+                    if (casePos != NONE && (colon = indexOf(source, ": //", casePos, lineEnd)) != NONE) {
+                        lineEnd = colon + 2;
                     }
-                    lines.add(lineString);
                     lastLineHadNoNumber = false;
                 }
+                if (line != null) {
+                    add(line, lineFrom, lineTo);
+                }
+                line = source;
+                lineFrom = lineStart;
+                lineTo = lineEnd;
+            }
+            if (line != null) {
+                add(line, lineFrom, lineTo);
             }
-        } catch (IOException e) {
-            Logger.getInstance(SourceReorganiser.class.getName()).error(e);
+            computeBlockNumbers();
         }
-        return lines;
-    }
-
-    private abstract static class Element {
-        public abstract boolean hasNumber();
-
-        public abstract int getNumber();
-    }
 
-    private static class Line extends Element {
-        private int number = -1;
-        private String content;
-        private boolean lineNumberAsSuffix;
+        /**
+         * Adds a line to the current block, opening and closing blocks at its braces.
+         */
+        private void add(@NotNull CharSequence line,
+                         int from,
+                         int to) {
+            int numberEnd = lineNumberEnd(line, from, to, digits);
+            if (numberEnd != NONE) {
+                // we have a line number
+                int lineNumber = parseLineNumber(line, digits[0], numberEnd - 2);
+                int lastLine = getLastLine(currentBlock);
+                if (lastLine != NONE && number[lastLine] == lineNumber) {
+                    // if the last line has the same number, add this line to it without number
+                    appendToLastLine(lastLine, line, numberEnd, to);
+                } else {
+                    // if this line is a new line, i.e. the last line has a different number, add a new line to the block
+                    lastLine = newLine(line, numberEnd, to, lineNumber);
+                    append(currentBlock, lastLine);
+                }
+                if (end[lastLine] > start[lastLine] && text.charAt(end[lastLine] - 1) == '{') {
+                    currentBlock = openBlock(currentBlock, removeLast(currentBlock));
+                }
+            } else {
+                // no line number
+                int trimmedStart = trimStart(line, from, to);
+                int trimmedEnd = trimEnd(line, trimmedStart, to);
+                char firstChar = trimmedStart < trimmedEnd ? line.charAt(trimmedStart) : 0;
+                char lastChar = trimmedStart < trimmedEnd ? line.charAt(trimmedEnd - 1) : 0;
+                if (trimmedEnd - trimmedStart == 1 && firstChar == '{') {
+                    int lastLine = getLastLine(currentBlock);
+                    if (lastLine != NONE) {
+                        appendToLastLine(lastLine, line, trimmedStart, trimmedEnd);
+                    } else {
+                        append(currentBlock, newLine(line, from, to, NONE));
+                    }
+                    // this means we are starting a new block
+                    currentBlock = openBlock(currentBlock, removeLast(currentBlock));
+                } else if (lastChar == '{') {
+                    int firstLine;
+                    if (firstChar == '}') {
+                        // get rid of whatever is coming after '}'
+                        append(currentBlock, newLine(line, from, trimmedStart + 1, NONE));
+                        closeBlock();
+                        firstLine = newLineWithoutBrace(line, from, trimmedStart, to);
+                    } else {
+                        firstLine = newLine(line, from, to, NONE);
+                    }
+                    // this means we are starting a new block
+                    currentBlock = openBlock(currentBlock, firstLine);
+                } else if (trimmedEnd - trimmedStart == 1 && firstChar == '}') {
+                    append(currentBlock, newLine(line, from, to, NONE));
+                    closeBlock();
+                } else if (firstChar == '}') {
+                    // get rid of whatever is coming after '}'
+                    append(currentBlock, newLine(line, from, trimmedStart + 1, NONE));
+                    closeBlock();
+                    append(currentBlock, newLineWithoutBrace(line, from, trimmedStart, to));
+                } else {
+                    append(currentBlock, newLine(line, from, to, NONE));
+                }
+            }
+        }
 
-        Line(String content) {
-            this(content,
-                    -1,
-                    false);
+        private void appendToLastLine(int lastLine,
+                                      @NotNull CharSequence line,
+                                      int from,
+                                      int to) {
+            // the last line of the current block is always the latest line, so its content is at the end of the text
+            appendTrimmed(text.append(' '), line, from, to);
+            end[lastLine] = text.length();
         }
 
-        Line(String content,
-             int number,
-             boolean lineNumberAsSuffix) {
-            this.number = number;
-            this.content = content;
-            this.lineNumberAsSuffix = lineNumberAsSuffix;
+        private void closeBlock() {
+            // more closing braces than opening ones leave the outermost block open
+            if (parent[currentBlock] != NONE) {
+                currentBlock = parent[currentBlock];
+            }
         }
 
-        void add(String content) {
-            this.content = this.content + " " + content.trim();
+        /**
+         * Creates a line of the text before the closing brace followed by the trimmed text after it.
+         */
+        private int newLineWithoutBrace(@NotNull CharSequence line,
+                                        int from,
+                                        int closingBrace,
+                                        int to) {
+            int element = newLine(line, from, closingBrace, NONE);
+            appendTrimmed(text, line, closingBrace + 1, to);
+            end[element] = text.length();
+            return element;
         }
 
-        public int getNumber() {
-            return number;
+        private int newElement() {
+            if (size == start.length) {
+                int capacity = size * 2;
+                start = Arrays.copyOf(start, capacity);
+                end = Arrays.copyOf(end, capacity);
+                number = Arrays.copyOf(number, capacity);
+                next = Arrays.copyOf(next, capacity);
+                previous = Arrays.copyOf(previous, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                first = Arrays.copyOf(first, capacity);
+                last = Arrays.copyOf(last, capacity);
+            }
+            int element = size++;
+            number[element] = NONE;
+            next[element] = NONE;
+            previous[element] = NONE;
+            parent[element] = NONE;
+            first[element] = NONE;
+            last[element] = NONE;
+            return element;
         }
 
-        public boolean hasNumber() {
-            return number != -1;
+        private int newLine(@NotNull CharSequence line,
+                            int from,
+                            int to,
+                            int lineNumber) {
+            int element = newElement();
+            start[element] = text.length();
+            text.append(line, from, to);
+            end[element] = text.length();
+            number[element] = lineNumber;
+            return element;
         }
 
-        String getContent() {
-            return content;
+        /**
+         * Opens a block within a block.
+         *
+         * @param block     the enclosing block
+         * @param firstLine the line that opens the block
+         * @return the new block
+         */
+        private int openBlock(int block,
+                              int firstLine) {
+            int opened = newElement();
+            start[opened] = NONE;
+            append(block, opened);
+            append(opened, firstLine);
+            return opened;
         }
 
-        boolean getLineNumberAsSuffix() {
-            return lineNumberAsSuffix;
+        private boolean isBlock(int element) {
+            return start[element] == NONE;
         }
-    }
 
-    private static class Block extends Element {
+        private void append(int block,
+                            int element) {
+            parent[element] = block;
+            previous[element] = last[block];
+            next[element] = NONE;
+            if (last[block] != NONE) {
+                next[last[block]] = element;
+            } else {
+                first[block] = element;
+            }
+            last[block] = element;
+        }
 
-        private Block parent;
-        private List<Element> elements;
+        private int removeLast(int block) {
+            int element = last[block];
+            last[block] = previous[element];
+            if (previous[element] != NONE) {
+                next[previous[element]] = NONE;
+            } else {
+                first[block] = NONE;
+            }
+            previous[element] = NONE;
+            return element;
+        }
 
-        Block() {
-            elements = new ArrayList<Element>();
+        private int getLastLine(int block) {
+            int element = last[block];
+            return element != NONE && !isBlock(element) ? element : NONE;
         }
 
-        Block(Block parent, Line firstLine) {
-            this();
-            this.parent = parent;
-            if (parent != null) {
-                parent.add(this);
-            }
-            add(firstLine);
-        }
-
-        void sort() {
-            if (isSorted()) {
-                // naive sorting algo
-                List<Element> sortedElements = new ArrayList<Element>();
-                int insertionPos = 0;
-                Element lastElement = elements.get(elements.size() - 1);
-                int size = elements.size();
-                if (lastElement instanceof Line) {
-                    size--;
-                }
-                for (int i = 0; i < size; i++) {
-                    Element element = elements.get(i);
-                    if (element instanceof Block) {
-                        ((Block) element).sort();
-                    }
-                    if (!element.hasNumber()) {
-                        sortedElements.add(insertionPos, element);
-                    } else {
-                        for (insertionPos = 0; insertionPos < sortedElements.size(); insertionPos++) {
-                            Element sortedElement = sortedElements.get(insertionPos);
-                            if (sortedElement.hasNumber() && sortedElement.getNumber() > element.getNumber()) {
-                                break;
-                            }
-                        }
-                        sortedElements.add(insertionPos, element);
-                    }
-                    insertionPos++;
+        /**
+         * Sets the number of each block to the lowest line number within it.  Blocks are created after the blocks
+         * enclosing them, so walking backwards completes each block before it's passed on to its parent.
+         */
+        private void computeBlockNumbers() {
+            for (int element = 0; element < size; element++) {
+                if (!isBlock(element) && parent[element] != NONE) {
+                    number[parent[element]] = lowest(number[parent[element]], number[element]);
                 }
-                if (lastElement instanceof Line) {
-                    sortedElements.add(lastElement);
+            }
+            for (int element = size - 1; element >= 0; element--) {
+                if (isBlock(element) && parent[element] != NONE) {
+                    number[parent[element]] = lowest(number[parent[element]], number[element]);
                 }
-                elements = sortedElements;
             }
         }
 
-        Block getParent() {
-            return parent;
+        private static int lowest(int a,
+                                  int b) {
+            if (a == NONE) {
+                return b;
+            }
+            return b == NONE ? a : Math.min(a, b);
         }
 
-        Line getLastLine() {
-            Object lastElement = elements.get(elements.size() - 1);
-            if (lastElement instanceof Line) {
-                return (Line) lastElement;
+        /**
+         * Checks whether the lines in this block are sorted.
+         *
+         * @param block the block
+         * @return true if the lines are sorted
+         */
+        private boolean isSorted(int block) {
+            int currentLineNumber = 0;
+            for (int element = first[block]; element != NONE; element = next[element]) {
+                if (!isBlock(element) && number[element] != NONE) {
+                    if (number[element] < currentLineNumber) {
+                        return false;
+                    }
+                    currentLineNumber = number[element];
+                }
             }
-            return null;
+            return true;
         }
 
-        Line removeLastLine() {
-            Object lastElement = elements.get(elements.size() - 1);
-            if (lastElement instanceof Line) {
-                elements.remove(elements.size() - 1);
-                return (Line) lastElement;
+        /**
+         * Orders the elements of a block, except a closing line, by their line numbers.  Elements without a
+         * number stay with the element before them, and elements with the same number keep their order.
+         * <p>
+         * Only blocks whose own lines are in order are sorted, along with the blocks within them.
+         * </p>
+         *
+         * @param block the block
+         */
+        private void sort(int block) {
+            if (first[block] == NONE || !isSorted(block)) {
+                return;
             }
-            return null;
-        }
+            int closingLine = isBlock(last[block]) ? NONE : last[block];
 
-        void add(Element element) {
-            elements.add(element);
-        }
+            // the elements form runs, each led by an element with a number, which are sorted by that number
+            int runs = 0;
+            for (int element = first[block]; element != closingLine; element = next[element]) {
+                if (number[element] != NONE) {
+                    runs++;
+                }
+            }
+            long[] keys = new long[runs];
+            int[] runFirst = new int[runs];
+            int[] runLast = new int[runs];
+            int run = NONE;
+            int leadingLast = NONE;
+            boolean ordered = true;
+            for (int element = first[block]; element != closingLine; element = next[element]) {
+                if (isBlock(element)) {
+                    sort(element);
+                }
+                if (number[element] != NONE) {
+                    run++;
+                    keys[run] = ((long) number[element] << 32) | run;
+                    runFirst[run] = element;
+                    ordered &= run == 0 || keys[run - 1] < keys[run];
+                } else if (run == NONE) {
+                    leadingLast = element;
+                }
+                if (run != NONE) {
+                    runLast[run] = element;
+                }
+            }
+            if (ordered) {
+                return;
+            }
 
-        public boolean hasNumber() {
-            return getNumber() != -1;
+            Arrays.sort(keys);
+            int tail = leadingLast;
+            for (long key : keys) {
+                int sorted = (int) key;
+                if (tail == NONE) {
+                    first[block] = runFirst[sorted];
+                } else {
+                    next[tail] = runFirst[sorted];
+                }
+                previous[runFirst[sorted]] = tail;
+                tail = runLast[sorted];
+            }
+            next[tail] = closingLine;
+            if (closingLine != NONE) {
+                previous[closingLine] = tail;
+            } else {
+                last[block] = tail;
+            }
         }
 
-        public int getNumber() {
-            int lowestNumber = -1;
-            for (Element element : elements) {
-                if (element.hasNumber()) {
-                    if (lowestNumber == -1 || element.getNumber() < lowestNumber) {
-                        lowestNumber = element.getNumber();
-                    }
+        /**
+         * Collects the lines of a block and the blocks within it, in order.
+         *
+         * @param block the block
+         * @param lines receives the lines
+         * @param count the number of lines collected so far
+         * @return the number of lines collected
+         */
+        private int collectLines(int block,
+                                 @NotNull int[] lines,
+                                 int count) {
+            for (int element = first[block]; element != NONE; element = next[element]) {
+                if (isBlock(element)) {
+                    count = collectLines(element, lines, count);
+                } else {
+                    lines[count++] = element;
                 }
             }
-            return lowestNumber;
+            return count;
         }
 
         /**
-         * Checks whether the lines in this block are sorted.
+         * Writes the lines of the current block, which is the outermost block unless the source has more
+         * opening braces than closing ones, at their line numbers.
+         * <p>
+         * Lines without a number are written on the lines before the next line with a number, as far as there is
+         * space for them.  A line whose number has already been passed is written where it is, and marked with
+         * an empty comment.  Where such a line was left out because the line written at its number is different,
+         * it is noted in a comment.
+         * </p>
          *
-         * @return true if the lines are sorted
+         * @return the source
          */
-        boolean isSorted() {
-            int currentLineNumber = 0;
-            for (Element element : elements) {
-                if (element instanceof Line) {
-                    Line line = (Line) element;
-                    if (line.hasNumber() && line.getNumber() < currentLineNumber) {
-                        return false;
-                    }
-                    if (line.hasNumber()) {
-                        currentLineNumber = line.getNumber();
+        @NotNull
+        String write() {
+            sort(currentBlock);
+            int[] lines = new int[size];
+            int count = collectLines(currentBlock, lines, 0);
+
+            // the next line with a number after each line
+            int[] nextNumbered = new int[count];
+            int following = NONE;
+            for (int i = count - 1; i >= 0; i--) {
+                nextNumbered[i] = following;
+                if (number[lines[i]] != NONE) {
+                    following = i;
+                }
+            }
+
+            // the lines numbered lower than a line before them, by number and position
+            int offCount = 0;
+            long[] offLines = new long[count];
+            int highest = 1;
+            for (int i = 0; i < count; i++) {
+                int lineNumber = number[lines[i]];
+                if (lineNumber != NONE) {
+                    if (lineNumber < highest) {
+                        offLines[offCount++] = ((long) lineNumber << 32) | i;
+                    } else {
+                        highest = lineNumber;
                     }
                 }
             }
-            return true;
-        }
+            Arrays.sort(offLines, 0, offCount);
+            OffLines off = new OffLines(offLines, offCount);
 
-        void write(StringWriter out) {
-            List<Line> lines = getLines();
-            Map<Integer, Line> offLines = findOffLines(lines);
+            // the markers removed mostly make up for the blank lines inserted
+            StringBuilder out = new StringBuilder(source.length());
             int currentLine = 1;
             boolean lastLineHadNumber = false;
-            for (int i = 0; i < lines.size(); i++) {
-                Line line = lines.get(i);
-                if (line.hasNumber()) {
-                    while (currentLine < line.getNumber()) {
-                        out.write(LINE_SEPARATOR);
+            for (int i = 0; i < count; i++) {
+                int line = lines[i];
+                if (number[line] != NONE) {
+                    while (currentLine < number[line]) {
+                        out.append(LINE_SEPARATOR);
                         currentLine++;
-                        checkOffLines(offLines,
-                                line,
-                                currentLine,
-                                out);
+                        checkOffLines(off, lines, line, currentLine, out);
                     }
                     lastLineHadNumber = true;
-                    if (currentLine != line.getNumber()) {
-                        out.write("/*  */");
+                    if (currentLine != number[line]) {
+                        out.append("/*  */");
                     }
                 } else {
-                    Line nextLineWithNumber = null;
-                    int linesInbetween = 0;
-                    for (int j = i + 1; j < lines.size(); j++) {
-                        Line l = lines.get(j);
-                        if (l.hasNumber()) {
-                            nextLineWithNumber = l;
-                            linesInbetween = j - i;
-                            break;
-                        }
-                    }
-                    if (nextLineWithNumber != null) {
-                        int linesToSkip = nextLineWithNumber.getNumber() - currentLine - linesInbetween;
+                    int nextLineWithNumber = nextNumbered[i];
+                    if (nextLineWithNumber != NONE) {
+                        int linesInbetween = nextLineWithNumber - i;
+                        int linesToSkip = number[lines[nextLineWithNumber]] - currentLine - linesInbetween;
                         if (lastLineHadNumber) {
                             linesToSkip = Math.min(1,
                                     linesToSkip);
                         }
-                        for (int k = 0, max = linesToSkip; k < max; k++) {
-                            out.write(LINE_SEPARATOR);
+                        for (int k = 0; k < linesToSkip; k++) {
+                            out.append(LINE_SEPARATOR);
                             currentLine++;
-                            checkOffLines(offLines,
-                                    line,
-                                    currentLine,
-                                    out);
+                            checkOffLines(off, lines, line, currentLine, out);
                         }
                     } else {
-                        out.write(LINE_SEPARATOR);
+                        out.append(LINE_SEPARATOR);
                         currentLine++;
-                        checkOffLines(offLines,
-                                line,
-                                currentLine,
-                                out);
+                        checkOffLines(off, lines, line, currentLine, out);
                     }
                     lastLineHadNumber = false;
                 }
-                out.write(line.getContent());// + (line.hasNumber() && line.getLineNumberAsSuffix() ? " // " + line.getNumber() : ""));
+                out.append(text, start[line], end[line]);
             }
+            return out.toString();
         }
 
-        private void checkOffLines(Map offLines,
-                                   Line line,
+        private void checkOffLines(@NotNull OffLines off,
+                                   @NotNull int[] lines,
+                                   int line,
                                    int currentLine,
-                                   StringWriter out) {
-            if (offLines.containsKey(currentLine)) {
-                Line offLine = (Line) offLines.get(currentLine);
-                if (!offLine.getContent().equals(line.getContent())) {
-                    out.write("// off: " + offLine.getContent().substring(8));
+                                   @NotNull StringBuilder out) {
+            int offLine = off.get(currentLine);
+            if (offLine != NONE) {
+                offLine = lines[offLine];
+                if (!sameContent(offLine, line)) {
+                    out.append("// off: ").append(text,
+                            Math.min(start[offLine] + LINE_NUMBER_MARKER_LENGTH, end[offLine]),
+                            end[offLine]);
                 }
             }
         }
 
-        private Map<Integer, Line> findOffLines(List<Line> lines) {
-            Map<Integer, Line> offLines = new HashMap<Integer, Line>();
-            int currentLine = 1;
-            for (Line line : lines) {
-                if (line.hasNumber()) {
-                    if (line.getNumber() < currentLine) {
-                        offLines.put(line.getNumber(),
-                                line);
-                    } else {
-                        currentLine = line.getNumber();
-                    }
-                }
+        private boolean sameContent(int a,
+                                    int b) {
+            int length = end[a] - start[a];
+            if (length != end[b] - start[b]) {
+                return false;
             }
-            return offLines;
-        }
-
-        private List<Line> getLines() {
-            List<Line> lines = new ArrayList<Line>();
-            for (Element element : elements) {
-                if (element instanceof Line) {
-                    lines.add((Line) element);
-                } else {
-                    Block block = (Block) element;
-                    lines.addAll(block.getLines());
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(start[a] + i) != text.charAt(start[b] + i)) {
+                    return false;
                 }
             }
-            return lines;
+            return true;
         }
+    }
 
-        public String toString() {
-            return toString(0);
+    /**
+     * Looks up the last line left out at each line number, for line numbers asked for in increasing order.
+     */
+    private static final class OffLines {
+        @NotNull
+        private final long[] lines;
+
+        private final int count;
+
+        private int index;
+
+        /**
+         * @param lines the line numbers and positions of the lines, sorted
+         * @param count the number of lines
+         */
+        OffLines(@NotNull long[] lines,
+                 int count) {
+            this.lines = lines;
+            this.count = count;
         }
 
-        private String toString(int indent) {
-            StringBuffer sb = new StringBuffer();
-            sb.append("Block ").append(getNumber()).append("\r\n");
-            for (Element element : elements) {
-                if (element instanceof Line) {
-                    for (int j = 0; j < indent; j++) {
-                        sb.append("+");
-                    }
-                    sb.append("|").append(element.getNumber()).append(' ').append(((Line) element).getContent()).append("\r\n");
-                } else {
-                    sb.append(((Block) element).toString(indent + 1));
-                }
+        /**
+         * Gets the position of the last line left out at a line number.
+         *
+         * @param lineNumber the line number, higher than the one asked for before
+         * @return the position of the line, or {@link #NONE} if there is none
+         */
+        int get(int lineNumber) {
+            while (index < count && (int) (lines[index] >>> 32) < lineNumber) {
+                index++;
+            }
+            int position = NONE;
+            while (index < count && (int) (lines[index] >>> 32) == lineNumber) {
+                position = (int) lines[index++];
             }
-            return sb.toString();
+            return position;
         }
     }
 }
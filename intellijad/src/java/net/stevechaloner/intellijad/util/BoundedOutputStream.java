@@ -0,0 +1,73 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Passes at most a fixed number of bytes on to another stream and silently drops the rest, so a process
+ * flooding its output can't exhaust the memory it is captured in.
+ */
+public class BoundedOutputStream extends OutputStream {
+    private final OutputStream delegate;
+
+    private final long limit;
+
+    private long count;
+
+    private boolean truncated;
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param delegate the stream the bytes are passed on to
+     * @param limit    the number of bytes passed on, zero or less for no limit
+     */
+    public BoundedOutputStream(@NotNull OutputStream delegate,
+                               long limit) {
+        this.delegate = delegate;
+        this.limit = limit <= 0 ? Long.MAX_VALUE : limit;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        if (count < limit) {
+            delegate.write(b);
+            count++;
+        } else {
+            truncated = true;
+        }
+    }
+
+    @Override
+    public synchronized void write(@NotNull byte[] b, int off, int len) throws IOException {
+        int accepted = (int) Math.min(len, limit - count);
+        if (accepted > 0) {
+            delegate.write(b, off, accepted);
+            count += accepted;
+        }
+        if (accepted < len) {
+            truncated = true;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Checks if any bytes were dropped.
+     *
+     * @return true if the limit was exceeded
+     */
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -25,8 +25,10 @@ import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.roots.OrderRootType;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -82,6 +84,32 @@ public class LibraryUtil
         return libraries;
     }
     
+    /**
+     * Adds the directory as a source root of the library, unless it already is one.
+     * Must be called within a write action.
+     *
+     * @param library the library
+     * @param sourceRoot the source root
+     * @return true if the root was added
+     */
+    public static boolean attachSourceRoot(@NotNull Library library,
+                                           @NotNull VirtualFile sourceRoot)
+    {
+        String[] urls = library.getUrls(OrderRootType.SOURCES);
+        boolean found = false;
+        for (int i = 0; !found && i < urls.length; i++)
+        {
+            found = sourceRoot.getUrl().equals(urls[i]);
+        }
+        if (!found)
+        {
+            Library.ModifiableModel model = library.getModifiableModel();
+            model.addRoot(sourceRoot, OrderRootType.SOURCES);
+            model.commit();
+        }
+        return !found;
+    }
+
     @Nullable
     private static Library findInLibraries(OrderEnumerator enumerator, final String fqn) {
         final AtomicReference<Library> libraryRef = new AtomicReference<Library>();
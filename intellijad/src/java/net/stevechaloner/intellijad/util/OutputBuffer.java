@@ -0,0 +1,230 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Collects the output of a process in memory until it grows past a threshold, after which everything is
+ * moved to a temporary file and further output is appended there.
+ * <p>
+ * The content is read back as a stream, so even very large outputs never have to be held on the heap
+ * as a single byte array.  The temporary file is deleted by {@link #dispose()}.
+ * </p>
+ */
+public class OutputBuffer extends OutputStream {
+    private static final Logger LOG = Logger.getInstance(OutputBuffer.class);
+
+    /**
+     * The number of bytes kept in memory by default.
+     */
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    @Nullable
+    private final File directory;
+
+    private final int threshold;
+
+    private Memory memory = new Memory();
+
+    private File file;
+
+    private OutputStream fileOutput;
+
+    private long size;
+
+    @Nullable
+    private Listener listener;
+
+    /**
+     * Initialises a new instance of this class with the default threshold.
+     *
+     * @param directory the directory the temporary file is created in, or null for the system default
+     */
+    public OutputBuffer(@Nullable File directory) {
+        this(directory, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param directory the directory the temporary file is created in, or null for the system default
+     * @param threshold the number of bytes kept in memory
+     */
+    public OutputBuffer(@Nullable File directory,
+                        int threshold) {
+        this.directory = directory;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(@NotNull byte[] b, int off, int len) throws IOException {
+        if (fileOutput == null && memory.size() + len > threshold) {
+            spill();
+        }
+        if (fileOutput != null) {
+            fileOutput.write(b, off, len);
+        } else {
+            memory.write(b, off, len);
+        }
+        size += len;
+        if (listener != null) {
+            listener.written(b, off, len);
+        }
+    }
+
+    /**
+     * Sets the listener notified of everything written from now on, and of the content being discarded.
+     *
+     * @param listener the listener, or null for none
+     */
+    public synchronized void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("intellijad-output", ".tmp", directory);
+        fileOutput = new BufferedOutputStream(new FileOutputStream(file));
+        memory.writeTo(fileOutput);
+        memory = null;
+    }
+
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return the size of the content
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Checks if the content has been moved to a temporary file.
+     *
+     * @return true if the threshold was exceeded
+     */
+    public synchronized boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Opens a stream reading the content written so far.
+     *
+     * @return the stream, which must be closed by the caller
+     * @throws IOException if the temporary file can't be read
+     */
+    @NotNull
+    public synchronized InputStream openStream() throws IOException {
+        if (fileOutput != null) {
+            fileOutput.flush();
+            return new FileInputStream(file);
+        }
+        return memory.openStream();
+    }
+
+    /**
+     * Appends the content, decoded with the platform's default charset, to the builder.
+     *
+     * @param builder the builder
+     * @throws IOException if the temporary file can't be read
+     */
+    public void appendTo(@NotNull StringBuilder builder) throws IOException {
+        Reader reader = new InputStreamReader(openStream());
+        try {
+            char[] buffer = new char[READ_BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Deletes the temporary file, if there is one.  The content is no longer available afterwards.
+     */
+    public synchronized void dispose() {
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            } catch (IOException e) {
+                LOG.info("Could not close " + file.getAbsolutePath(), e);
+            }
+            fileOutput = null;
+            if (!file.delete()) {
+                LOG.info("Could not delete " + file.getAbsolutePath());
+            }
+        }
+        memory = new Memory();
+        file = null;
+        size = 0;
+        if (listener != null) {
+            listener.discarded();
+        }
+    }
+
+    /**
+     * Gets the content decoded with the platform's default charset.
+     *
+     * @return the content
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            appendTo(builder);
+        } catch (IOException e) {
+            LOG.warn("Could not read buffered output", e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Follows the content of a buffer as it's written, e.g. to show it before the process has finished.
+     * The listener is called on the thread writing to the buffer, which it mustn't hold up.
+     */
+    public interface Listener {
+        /**
+         * Called after bytes have been written.
+         *
+         * @param b   the bytes
+         * @param off the offset of the written bytes
+         * @param len the number of written bytes
+         */
+        void written(@NotNull byte[] b, int off, int len);
+
+        /**
+         * Called after the content has been discarded, e.g. before the process is run again.
+         */
+        void discarded();
+    }
+
+    /**
+     * Exposes the buffer of the byte array stream so it can be read without being copied.
+     */
+    private static class Memory extends ByteArrayOutputStream {
+        InputStream openStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
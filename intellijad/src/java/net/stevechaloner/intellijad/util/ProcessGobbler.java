@@ -5,18 +5,67 @@ package net.stevechaloner.intellijad.util;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import net.stevechaloner.intellijad.decompilers.DecompilationContext;
 
 /**
- * <p></p>
+ * <p>Drains the output and error streams of a process while waiting for it to finish.</p>
  * <br/>
  * <p>Created on 06.02.14</p>
  *
  * @author Lukasz Zielinski
  */
 public class ProcessGobbler {
+    private static final Logger STATIC_LOG = Logger.getInstance(ProcessGobbler.class);
+
+    /**
+     * Runs the pumps of all processes.  Every running process needs two threads at once, and a pump waiting for
+     * a thread would leave its process blocked on a full pipe, so the pool isn't bounded - idle threads are
+     * reused, and die after a minute.
+     */
+    private static final ExecutorService PUMPS = createPumpExecutor();
+
+    /**
+     * Checks the running processes for cancellation.
+     */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(daemonThreads("IntelliJad process watchdog"));
+
+    /**
+     * How often a process is checked for cancellation and timeout, in milliseconds.
+     */
+    private static final long WATCH_INTERVAL = 100L;
+
+    /**
+     * {@code Process.descendants()}, available from Java 9.
+     */
+    private static final Method DESCENDANTS = findMethod("java.lang.Process", "descendants");
+
+    /**
+     * {@code Stream.toArray()}, available from Java 8.
+     */
+    private static final Method TO_ARRAY = findMethod("java.util.stream.Stream", "toArray");
+
+    /**
+     * {@code ProcessHandle.destroyForcibly()}, available from Java 9.
+     */
+    private static final Method DESTROY_FORCIBLY = findMethod("java.lang.ProcessHandle", "destroyForcibly");
+
     private final Logger LOG = Logger.getInstance(getClass());
     
     private final Process process;
@@ -24,27 +73,79 @@ public class ProcessGobbler {
     public ProcessGobbler(Process process) {
         this.process = process;
     }
+
+    static ExecutorService createPumpExecutor() {
+        try {
+            // pumping is blocking I/O, which is what virtual threads are for - if the runtime has them
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            STATIC_LOG.info("Pumping process streams on virtual threads");
+            return executor;
+        } catch (Exception e) {
+            return new ThreadPoolExecutor(0,
+                                          Integer.MAX_VALUE,
+                                          60L,
+                                          TimeUnit.SECONDS,
+                                          new SynchronousQueue<Runnable>(),
+                                          daemonThreads("IntelliJad stream pumper"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
     
-    public int waitFor(DecompilationContext context, OutputStream output, OutputStream err) 
+    /**
+     * Waits for the process to finish, draining its streams.  If the context carries a progress indicator,
+     * the process is destroyed as soon as the indicator is cancelled.
+     *
+     * @param timeout the time the process may run in milliseconds, zero or less to wait indefinitely
+     * @throws ProcessCanceledException if the process was destroyed because of cancellation
+     * @throws ProcessTimeoutException  if the process was destroyed because it ran out of time
+     */
+    public int waitFor(DecompilationContext context, OutputStream output, OutputStream err, final long timeout)
         throws IOException, InterruptedException {
         
         final boolean debug = LOG.isDebugEnabled();
-        
-        StreamPumper outputPumper = new StreamPumper(context,
-                                                     "output",
-                                                     process.getInputStream(),
-                                                     output);
-        Thread outputThread = new Thread(outputPumper);
-        outputThread.start();
-        StreamPumper errPumper = new StreamPumper(context,
-                                                  "error",
-                                                  process.getErrorStream(),
-                                                  err);
-        Thread errThread = new Thread(errPumper);
-        errThread.start();
-        
+
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final ProgressIndicator indicator = context.getUserData(DecompilationContext.PROGRESS_INDICATOR);
+        final long deadline = System.currentTimeMillis() + timeout;
+        ScheduledFuture<?> watch = null;
+        if (indicator != null || timeout > 0) {
+            watch = WATCHDOG.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    if (indicator != null && indicator.isCanceled() && cancelled.compareAndSet(false, true)) {
+                        destroy(process);
+                    } else if (timeout > 0 && System.currentTimeMillis() > deadline
+                            && timedOut.compareAndSet(false, true)) {
+                        destroy(process);
+                    }
+                }
+            }, WATCH_INTERVAL, WATCH_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        Future<?> outputPump = PUMPS.submit(new StreamPumper(context,
+                                                             "output",
+                                                             process.getInputStream(),
+                                                             output));
+        Future<?> errPump = PUMPS.submit(new StreamPumper(context,
+                                                          "error",
+                                                          process.getErrorStream(),
+                                                          err));
+
         //magic code indicating InterruptedException
         int exitCode = 9000;
+        boolean drained = false;
         try {
             if (debug) {
                 LOG.debug("Waiting for process finish");
@@ -52,14 +153,66 @@ public class ProcessGobbler {
             
             exitCode = process.waitFor();
 
+            // the pumps reach the end of their streams once the process is gone, which
+            // guarantees the output is complete
+            outputPump.get();
+            errPump.get();
+            drained = true;
+
             if (debug) {
                 LOG.debug("Process finished, exit code: "+exitCode);
             }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
         } finally {
-            //always stop pumping
-            outputPumper.stopPumping();
-            errPumper.stopPumping();
+            if (watch != null) {
+                watch.cancel(false);
+            }
+            if (!drained) {
+                // closes the streams, which releases the pumps
+                destroy(process);
+            }
+        }
+        if (cancelled.get()) {
+            throw new ProcessCanceledException();
+        }
+        if (timedOut.get()) {
+            throw new ProcessTimeoutException(timeout);
         }
         return exitCode;
     }
+
+    /**
+     * Destroys the process and, on runtimes able to list them, every process it started.  The descendants are
+     * collected first, they can't be found any more once their parent is gone.
+     *
+     * @param process the process
+     */
+    static void destroy(Process process) {
+        Object[] descendants = new Object[0];
+        if (DESCENDANTS != null) {
+            try {
+                descendants = (Object[]) TO_ARRAY.invoke(DESCENDANTS.invoke(process));
+            } catch (Exception e) {
+                STATIC_LOG.debug("Could not list descendants of process", e);
+            }
+        }
+        process.destroy();
+        for (Object descendant : descendants) {
+            try {
+                DESTROY_FORCIBLY.invoke(descendant);
+            } catch (Exception e) {
+                STATIC_LOG.debug("Could not destroy descendant of process", e);
+            }
+        }
+    }
+
+    private static Method findMethod(String className, String name) {
+        try {
+            return Class.forName(className).getMethod(name);
+        } catch (Exception e) {
+            // the runtime predates the method
+            return null;
+        }
+    }
 }
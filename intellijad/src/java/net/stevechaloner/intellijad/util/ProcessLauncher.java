@@ -0,0 +1,106 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import net.stevechaloner.intellijad.config.Config;
+import net.stevechaloner.intellijad.console.ConsoleEntryType;
+import net.stevechaloner.intellijad.decompilers.DecompilationContext;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs an external decompiler.
+ * <p>
+ * The command is passed to the process as a list of arguments, so paths containing spaces need no quoting.
+ * A process running longer than the timeout, or whose decompilation is cancelled, is destroyed along with
+ * any process it started, and the captured output of each stream is limited.  Output beyond the limit fails
+ * the run, since the decompiled source would be incomplete, while error output beyond it is only dropped.
+ * </p>
+ */
+public class ProcessLauncher {
+    private final Logger LOG = Logger.getInstance(getClass());
+
+    private final List<String> command;
+
+    private final long timeout;
+
+    private final long outputLimit;
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param command     the executable followed by its arguments
+     * @param timeout     the time the process may run in milliseconds, zero or less for no limit
+     * @param outputLimit the number of bytes captured from each stream, zero or less for no limit
+     */
+    public ProcessLauncher(@NotNull List<String> command,
+                           long timeout,
+                           long outputLimit) {
+        this.command = new ArrayList<String>(command);
+        this.timeout = timeout;
+        this.outputLimit = outputLimit;
+    }
+
+    /**
+     * Creates a launcher using the limits of the configuration.
+     *
+     * @param command the executable followed by its arguments
+     * @param config  the configuration
+     * @return the launcher
+     */
+    @NotNull
+    public static ProcessLauncher create(@NotNull List<String> command,
+                                         @NotNull Config config) {
+        return new ProcessLauncher(command,
+                                   config.getDecompilerTimeout() * 1000L,
+                                   config.getMaxDecompilerOutput() * 1024L);
+    }
+
+    /**
+     * Renders the command for display.
+     *
+     * @param command the executable followed by its arguments
+     * @return the command line
+     */
+    @NotNull
+    public static String render(@NotNull List<String> command) {
+        return StringUtil.join(command, " ");
+    }
+
+    /**
+     * Runs the process and waits for it to finish.
+     *
+     * @param context the context of the decompilation
+     * @param output  receives the output of the process
+     * @param err     receives the error output of the process
+     * @return the exit code of the process
+     * @throws IOException             if the process can't be started or its streams can't be read
+     * @throws InterruptedException    if the thread is interrupted while waiting
+     * @throws ProcessTimeoutException if the process was destroyed because it ran out of time
+     * @throws ProcessOutputTruncatedException if the output exceeded the limit
+     */
+    public int run(@NotNull DecompilationContext context,
+                   @NotNull OutputStream output,
+                   @NotNull OutputStream err) throws IOException, InterruptedException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Running external decompiler: " + render(command));
+        }
+        Process process = new ProcessBuilder(command).start();
+        BoundedOutputStream boundedOutput = new BoundedOutputStream(output, outputLimit);
+        BoundedOutputStream boundedErr = new BoundedOutputStream(err, outputLimit);
+        int exitCode = new ProcessGobbler(process).waitFor(context, boundedOutput, boundedErr, timeout);
+        if (boundedOutput.isTruncated()) {
+            throw new ProcessOutputTruncatedException(outputLimit, exitCode);
+        }
+        if (boundedErr.isTruncated()) {
+            context.getConsoleContext().addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
+                                                   "message.output-truncated",
+                                                   outputLimit / 1024);
+        }
+        return exitCode;
+    }
+}
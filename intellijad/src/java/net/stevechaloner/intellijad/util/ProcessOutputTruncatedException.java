@@ -0,0 +1,33 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a process wrote more output than is captured, so what was captured is incomplete.
+ */
+public class ProcessOutputTruncatedException extends IOException {
+    private final long limit;
+
+    private final int exitCode;
+
+    public ProcessOutputTruncatedException(long limit,
+                                           int exitCode) {
+        super("Process output truncated after " + limit + " bytes");
+        this.limit = limit;
+        this.exitCode = exitCode;
+    }
+
+    // javadoc unnecessary
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the exit code of the process, which finished despite its output being truncated.
+     *
+     * @return the exit code
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+}
@@ -0,0 +1,20 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a process is destroyed because it ran longer than it was allowed to.
+ */
+public class ProcessTimeoutException extends IOException {
+    private final long timeout;
+
+    public ProcessTimeoutException(long timeout) {
+        super("Process destroyed after running for " + timeout + " ms");
+        this.timeout = timeout;
+    }
+
+    // javadoc unnecessary
+    public long getTimeout() {
+        return timeout;
+    }
+}
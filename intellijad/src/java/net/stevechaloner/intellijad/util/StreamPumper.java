@@ -18,7 +18,6 @@ package net.stevechaloner.intellijad.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.intellij.openapi.diagnostic.Logger;
 import net.stevechaloner.intellijad.console.ConsoleEntryType;
@@ -27,17 +26,26 @@ import org.jetbrains.annotations.NotNull;
 
 /**
  * Pumps the input stream of a process, ensuring it doesn't block.
+ * <p>
+ * Reads block until data is available, and the pump only finishes once the end of the stream has been reached,
+ * so no output written just before the process exits is lost.
+ * </p>
  *
  * @author Steve Chaloner
  */
 public class StreamPumper implements Runnable {
     
     private final Logger LOG = Logger.getInstance(getClass());
-    
+
+    /**
+     * The size of the buffer the pump starts with, enough for the error stream and small classes.
+     */
+    static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
     /**
-     * End of stream flag.
+     * The size the buffer may grow to while the stream keeps filling it.
      */
-    private final AtomicBoolean pump = new AtomicBoolean(true);
+    static final int MAX_BUFFER_SIZE = 64 * 1024;
 
     /**
      * The target output stream.
@@ -78,8 +86,7 @@ public class StreamPumper implements Runnable {
     }
 
     /**
-     * While the end of the stream hasn't been reached, pump
-     * the content of the input stream into the output stream.
+     * Pump the content of the input stream into the output stream until the end of the stream is reached.
      */
     public void run() {
         final boolean debug = LOG.isDebugEnabled();
@@ -87,56 +94,42 @@ public class StreamPumper implements Runnable {
         if (debug) {
             LOG.debug("["+name+"] started");
         }
-        
+
+        long total = 0;
         try {
-            byte[] buffer = new byte[512];
-            while (!Thread.currentThread().isInterrupted() && pump.get()) {
-                int pumped = pump(buffer);
-                if (debug) {
-                    LOG.debug("["+name+"] pumped "+pumped+" bytes");
-                }
-                if (pumped <= 0) {
-                    Thread.sleep(5);
-                }
-            }
-        } catch (InterruptedException e) {
-            context.getConsoleContext().addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
-                                                   "error",
-                                                   e.getMessage());
+            total = pump(in, out);
         } catch (IOException e) {
             context.getConsoleContext().addMessage(ConsoleEntryType.DECOMPILATION_OPERATION,
                                                    "error",
                                                    e.getMessage());
         } finally {
             if (debug) {
-                if (Thread.currentThread().isInterrupted()) {
-                    LOG.info("["+name+"] interrupted");                    
-                } else {
-                    LOG.debug("["+name+"] finished");
-                }
+                LOG.debug("["+name+"] finished, pumped "+total+" bytes");
             }
         }
     }
 
     /**
-     * Pumps chunk of the stream if content is available.
+     * Copies the input into the output until the end of the input is reached.  The buffer is doubled
+     * whenever a read fills it completely, so large outputs need fewer reads.
      *
+     * @param in the input
+     * @param out the output
+     * @return the number of bytes copied
      * @throws IOException if there is an error accessing one of the streams.
      */
-    private int pump(byte[] buffer) throws IOException {
-        
-        int bytesRead = in.read(buffer, 0, buffer.length);
-
-        if (bytesRead > 0) {
-            out.write(buffer, 0, bytesRead);            
+    static long pump(@NotNull InputStream in,
+                     @NotNull OutputStream out) throws IOException {
+        byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        long total = 0;
+        int bytesRead;
+        while ((bytesRead = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, bytesRead);
+            total += bytesRead;
+            if (bytesRead == buffer.length && buffer.length < MAX_BUFFER_SIZE) {
+                buffer = new byte[buffer.length * 2];
+            }
         }
-        return bytesRead;
-    }
-
-    /**
-     * Stops the pump.
-     */
-    public void stopPumping() {
-        pump.compareAndSet(true, false);
+        return total;
     }
 }
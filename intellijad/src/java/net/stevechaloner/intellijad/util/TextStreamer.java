@@ -0,0 +1,143 @@
+package net.stevechaloner.intellijad.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decodes the output of a process as it's written into text that's picked up in chunks, e.g. by the event
+ * dispatch thread.
+ * <p>
+ * A character split between two writes is decoded once its last byte arrives, and line separators are
+ * normalised to <code>\n</code>, as documents expect.  The consumer is told when text becomes available and
+ * takes everything pending at once, so a process writing faster than the text is consumed doesn't flood it.
+ * </p>
+ */
+public class TextStreamer implements OutputBuffer.Listener {
+    @NotNull
+    private final CharsetDecoder decoder;
+
+    @NotNull
+    private final Runnable onAvailable;
+
+    private final StringBuilder pending = new StringBuilder();
+
+    /**
+     * The bytes of an incomplete character at the end of the last write.
+     */
+    private ByteBuffer remainder = ByteBuffer.allocate(0);
+
+    private boolean afterCarriageReturn;
+
+    private boolean replacing;
+
+    /**
+     * Initialises a new instance of this class.
+     *
+     * @param charset     the charset of the output
+     * @param onAvailable run whenever text becomes available while none was pending
+     */
+    public TextStreamer(@NotNull Charset charset,
+                        @NotNull Runnable onAvailable) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.onAvailable = onAvailable;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void written(@NotNull byte[] b, int off, int len) {
+        boolean available;
+        synchronized (this) {
+            ByteBuffer in = ByteBuffer.allocate(remainder.remaining() + len);
+            in.put(remainder).put(b, off, len).flip();
+            CharBuffer out = CharBuffer.allocate((int) Math.ceil(in.remaining() * (double) decoder.maxCharsPerByte()));
+            decoder.decode(in, out, false);
+            remainder = in;
+            out.flip();
+
+            available = pending.length() == 0;
+            while (out.hasRemaining()) {
+                char c = out.get();
+                if (c == '\n' && afterCarriageReturn) {
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                afterCarriageReturn = c == '\r';
+                pending.append(afterCarriageReturn ? '\n' : c);
+            }
+            available &= pending.length() > 0;
+        }
+        if (available) {
+            onAvailable.run();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The text taken next replaces everything taken before.
+     * </p>
+     */
+    public synchronized void discarded() {
+        decoder.reset();
+        remainder = ByteBuffer.allocate(0);
+        afterCarriageReturn = false;
+        pending.setLength(0);
+        replacing = true;
+    }
+
+    /**
+     * Takes the pending text.
+     *
+     * @return the text, or null if there is none
+     */
+    @Nullable
+    public synchronized Chunk take() {
+        if (pending.length() == 0) {
+            return null;
+        }
+        Chunk chunk = new Chunk(pending.toString(), replacing);
+        pending.setLength(0);
+        replacing = false;
+        return chunk;
+    }
+
+    /**
+     * Text taken from the streamer.
+     */
+    public static class Chunk {
+        @NotNull
+        private final String text;
+
+        private final boolean replacing;
+
+        private Chunk(@NotNull String text,
+                      boolean replacing) {
+            this.text = text;
+            this.replacing = replacing;
+        }
+
+        // javadoc unnecessary
+        @NotNull
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Checks if the text replaces the text taken before, because the output was discarded in between.
+         *
+         * @return true if the text replaces the text taken before
+         */
+        public boolean isReplacing() {
+            return replacing;
+        }
+    }
+}
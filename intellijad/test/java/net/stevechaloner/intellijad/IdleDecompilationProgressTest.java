@@ -0,0 +1,50 @@
+package net.stevechaloner.intellijad;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdleDecompilationProgressTest {
+    private File tempDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDirectory = FileUtil.createTempDirectory("idle-test", null);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.delete(tempDirectory);
+    }
+
+    @Test
+    public void testProgressSurvivesARestart() {
+        File file = new File(tempDirectory, "idle" + File.separator + "project.properties");
+        IdleDecompilationProgress progress = new IdleDecompilationProgress(file);
+        assertFalse(progress.isDone("/lib/a.jar", "100/1/jad"));
+
+        progress.markDone("/lib/a.jar", "100/1/jad");
+        assertTrue(progress.isDone("/lib/a.jar", "100/1/jad"));
+        assertTrue(file.isFile());
+
+        IdleDecompilationProgress restarted = new IdleDecompilationProgress(file);
+        assertTrue(restarted.isDone("/lib/a.jar", "100/1/jad"));
+        assertFalse(restarted.isDone("/lib/b.jar", "100/1/jad"));
+    }
+
+    @Test
+    public void testChangedJarIsNotDone() {
+        IdleDecompilationProgress progress = new IdleDecompilationProgress(new File(tempDirectory, "project.properties"));
+        progress.markDone("/lib/a.jar", "100/1/jad");
+
+        assertFalse(progress.isDone("/lib/a.jar", "120/2/jad"));
+        assertFalse(progress.isDone("/lib/a.jar", "100/1/procyon"));
+    }
+}
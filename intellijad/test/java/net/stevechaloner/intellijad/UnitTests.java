@@ -1,7 +1,19 @@
 package net.stevechaloner.intellijad;
 
+import net.stevechaloner.intellijad.classfile.ClassFileHeaderTest;
+import net.stevechaloner.intellijad.classfile.ClassSkeletonTest;
+import net.stevechaloner.intellijad.decompilers.BatchPipelineTest;
+import net.stevechaloner.intellijad.decompilers.JarEntryIndexTest;
 import net.stevechaloner.intellijad.decompilers.JarExtractorTest;
+import net.stevechaloner.intellijad.decompilers.ScratchSpaceManagerTest;
+import net.stevechaloner.intellijad.decompilers.jad.JadOutputClassifierTest;
+import net.stevechaloner.intellijad.format.LineMappingTest;
+import net.stevechaloner.intellijad.format.SourceReorganiserTest;
 import net.stevechaloner.intellijad.gui.IntelliJadIconTest;
+import net.stevechaloner.intellijad.util.BoundedOutputStreamTest;
+import net.stevechaloner.intellijad.util.OutputBufferTest;
+import net.stevechaloner.intellijad.util.StreamPumperTest;
+import net.stevechaloner.intellijad.util.TextStreamerTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
@@ -9,7 +21,20 @@ import org.junit.runners.Suite;
  * Created by Lukasz on 2014-06-11.
  */
 @Suite.SuiteClasses({
-        IntelliJadIconTest.class
+        BatchPipelineTest.class,
+        BoundedOutputStreamTest.class,
+        ClassFileHeaderTest.class,
+        ClassSkeletonTest.class,
+        IdleDecompilationProgressTest.class,
+        IntelliJadIconTest.class,
+        JadOutputClassifierTest.class,
+        JarEntryIndexTest.class,
+        LineMappingTest.class,
+        OutputBufferTest.class,
+        ScratchSpaceManagerTest.class,
+        SourceReorganiserTest.class,
+        StreamPumperTest.class,
+        TextStreamerTest.class
         //,JarExtractorTest.class
 })
 @RunWith(Suite.class)
@@ -0,0 +1,121 @@
+package net.stevechaloner.intellijad.classfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassFileHeaderTest {
+
+    @Test
+    public void testReadsVersionAndName() throws IOException {
+        ClassFileHeader header = ClassFileHeader.read(load(ClassFileHeaderTest.class));
+
+        assertEquals("net/stevechaloner/intellijad/classfile/ClassFileHeaderTest", header.getInternalName());
+        assertTrue(header.getMajorVersion() >= 50);
+        assertEquals(0, header.getMinorVersion());
+    }
+
+    @Test
+    public void testReadsNestedClassName() throws IOException {
+        ClassFileHeader header = ClassFileHeader.read(load(Map.Entry.class));
+
+        assertEquals("java/util/Map$Entry", header.getInternalName());
+    }
+
+    @Test
+    public void testReadsReferencedClasses() throws IOException {
+        List<String> referencedClasses = ClassFileHeader.read(load(Referrer.class)).getReferencedClasses();
+
+        assertTrue(referencedClasses.contains("java/util/Map"));
+        assertTrue(referencedClasses.contains("java/lang/StringBuilder"));
+        assertTrue(referencedClasses.contains("java/lang/Thread"));
+        assertFalse(referencedClasses.contains("net/stevechaloner/intellijad/classfile/ClassFileHeaderTest$Referrer"));
+        for (String referencedClass : referencedClasses) {
+            assertFalse(referencedClass, referencedClass.startsWith("["));
+        }
+    }
+
+    @Test
+    public void testReadsNestedClasses() throws IOException {
+        String outer = "net/stevechaloner/intellijad/classfile/ClassFileHeaderTest$Outer";
+        List<String> nestedClasses = ClassFileHeader.read(load(Outer.class)).getNestedClasses();
+
+        assertTrue(nestedClasses.contains(outer + "$Member"));
+        assertTrue(nestedClasses.contains(outer + "$1"));
+        assertFalse(nestedClasses.contains(outer));
+        assertFalse(nestedClasses.contains(outer + "$Member$Deeper"));
+        assertFalse(nestedClasses.contains("java/util/Map$Entry"));
+        assertTrue(ClassFileHeader.read(load(Outer.Member.class)).getNestedClasses().contains(outer + "$Member$Deeper"));
+    }
+
+    @Test
+    public void testReadsMajorVersionOnly() throws IOException {
+        byte[] bytes = load(ClassFileHeaderTest.class);
+        byte[] header = new byte[8];
+        System.arraycopy(bytes, 0, header, 0, header.length);
+        File classFile = FileUtil.createTempFile("header", ".class");
+        try {
+            FileUtil.writeToFile(classFile, header);
+
+            assertEquals(ClassFileHeader.read(bytes).getMajorVersion(), ClassFileHeader.readMajorVersion(classFile));
+        } finally {
+            FileUtil.delete(classFile);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherContent() throws IOException {
+        ClassFileHeader.read("package a; class A {}".getBytes());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncatedClassFile() throws IOException {
+        byte[] bytes = load(ClassFileHeaderTest.class);
+        byte[] truncated = new byte[bytes.length / 4];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        ClassFileHeader.read(truncated);
+    }
+
+    private static byte[] load(Class<?> type) throws IOException {
+        String name = type.getName();
+        InputStream in = type.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class");
+        try {
+            return FileUtil.loadBytes(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class Referrer {
+        Object refer(Map<String, Object> map) {
+            int[][] numbers = new int[map.size()][1];
+            Thread[] threads = new Thread[numbers.length];
+            return new StringBuilder().append(threads.length).append(map.get("key"));
+        }
+    }
+
+    private static class Outer {
+        Runnable anonymous(final Map.Entry<String, Object> entry) {
+            return new Runnable() {
+                public void run() {
+                    entry.getValue();
+                }
+            };
+        }
+
+        private static class Member {
+            private static class Deeper {
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.stevechaloner.intellijad.classfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassSkeletonTest {
+
+    @Test
+    public void testRendersDeclarations() throws IOException {
+        String skeleton = ClassSkeleton.render(load(Sample.class));
+
+        assertTrue(skeleton.startsWith("package net.stevechaloner.intellijad.classfile;\n"));
+        assertTrue(skeleton.contains("import java.io.Serializable;\n"));
+        assertTrue(skeleton.contains("import java.util.List;\n"));
+        assertFalse(skeleton.contains("import java.lang."));
+        assertTrue(skeleton.contains("abstract class Sample extends Number implements Serializable {\n"));
+        assertTrue(skeleton.contains("    protected static final long serialVersionUID;\n"));
+        assertTrue(skeleton.contains("    private transient Map.Entry[] entries;\n"));
+        assertTrue(skeleton.contains("    public Sample(int arg0, String... arg1) { /* line "));
+        assertTrue(skeleton.contains("    public abstract List sorted(List arg0) throws IOException;\n"));
+        assertTrue(skeleton.contains("    static synchronized int[][] count(Sample arg0) { /* line "));
+    }
+
+    @Test
+    public void testRendersInterfaces() throws IOException {
+        String skeleton = ClassSkeleton.render(load(Shape.class));
+
+        assertTrue(skeleton.contains("interface Shape extends Comparable {\n"));
+        assertTrue(skeleton.contains("    double area();\n"));
+        assertTrue(skeleton.contains("    int SIDES;\n"));
+    }
+
+    @Test
+    public void testRendersEnumConstantsFirst() throws IOException {
+        String skeleton = ClassSkeleton.render(load(Direction.class));
+
+        assertTrue(skeleton.contains("enum Direction {\n    NORTH, SOUTH;\n\n    private final int degrees;\n"));
+    }
+
+    @Test
+    public void testLeavesOutSyntheticMembers() throws IOException {
+        String skeleton = ClassSkeleton.render(load(Sample.class));
+
+        assertFalse(skeleton.contains("<clinit>"));
+        assertFalse(skeleton.contains("access$"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherContent() throws IOException {
+        ClassSkeleton.render("package a; class A {}".getBytes());
+    }
+
+    private static byte[] load(Class<?> type) throws IOException {
+        InputStream in = type.getResourceAsStream('/' + type.getName().replace('.', '/') + ".class");
+        try {
+            return FileUtil.loadBytes(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private abstract static class Sample extends Number implements Serializable {
+        protected static final long serialVersionUID = 1L;
+
+        private static int created;
+
+        private transient Map.Entry<String, Object>[] entries;
+
+        public Sample(int size, String... names) {
+            created++;
+        }
+
+        public abstract List<String> sorted(List<String> values) throws IOException;
+
+        static synchronized int[][] count(Sample sample) {
+            return new int[created][];
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private interface Shape extends Comparable<Shape> {
+        int SIDES = 4;
+
+        double area();
+    }
+
+    @SuppressWarnings("unused")
+    private enum Direction {
+        NORTH(0), SOUTH(180);
+
+        private final int degrees;
+
+        Direction(int degrees) {
+            this.degrees = degrees;
+        }
+    }
+}
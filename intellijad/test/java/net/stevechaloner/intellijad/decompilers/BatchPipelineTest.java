@@ -0,0 +1,95 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BatchPipelineTest {
+    @Test
+    public void testChunksPassThroughAllStages() throws InterruptedException {
+        BatchPipeline<String> pipeline = new BatchPipeline<String>(2, 2, null);
+        assertEquals(2, pipeline.getQueueLength(BatchPipeline.Stage.EXTRACTION));
+
+        assertTrue(pipeline.extracted("a"));
+        assertTrue(pipeline.extracted("b"));
+        assertEquals(0, pipeline.getQueueLength(BatchPipeline.Stage.EXTRACTION));
+        assertEquals(2, pipeline.getQueueLength(BatchPipeline.Stage.DECOMPILATION));
+
+        assertEquals("a", pipeline.nextExtracted());
+        assertTrue(pipeline.decompiled("a"));
+        assertEquals(1, pipeline.getQueueLength(BatchPipeline.Stage.DECOMPILATION));
+        assertEquals(1, pipeline.getQueueLength(BatchPipeline.Stage.POST_PROCESSING));
+        assertEquals("a", pipeline.nextDecompiled());
+        assertEquals(0, pipeline.getQueueLength(BatchPipeline.Stage.POST_PROCESSING));
+    }
+
+    @Test
+    public void testFullStageHoldsBackThePreviousOne() throws InterruptedException {
+        final BatchPipeline<String> pipeline = new BatchPipeline<String>(3, 1, null);
+        assertTrue(pipeline.extracted("a"));
+
+        final CountDownLatch passed = new CountDownLatch(1);
+        Thread extraction = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    if (pipeline.extracted("b")) {
+                        passed.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        extraction.start();
+        assertFalse(passed.await(300, TimeUnit.MILLISECONDS));
+
+        assertEquals("a", pipeline.nextExtracted());
+        assertTrue(passed.await(1, TimeUnit.SECONDS));
+        extraction.join();
+        assertEquals(1, pipeline.getQueueLength(BatchPipeline.Stage.EXTRACTION));
+    }
+
+    @Test
+    public void testFailureStopsWaitingStages() throws InterruptedException {
+        final BatchPipeline<String> pipeline = new BatchPipeline<String>(1, 1, null);
+        final AtomicBoolean gaveUp = new AtomicBoolean();
+        Thread postProcessing = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    gaveUp.set(pipeline.nextDecompiled() == null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        postProcessing.start();
+
+        IllegalStateException first = new IllegalStateException();
+        pipeline.fail(first);
+        pipeline.fail(new IllegalStateException());
+        postProcessing.join(1000);
+
+        assertTrue(gaveUp.get());
+        assertSame(first, pipeline.getFailure());
+        assertFalse(pipeline.extracted("a"));
+    }
+
+    @Test
+    public void testClosedPipelineHandsNothingOver() throws InterruptedException {
+        BatchPipeline<String> pipeline = new BatchPipeline<String>(1, 1, null);
+        assertTrue(pipeline.extracted("a"));
+        pipeline.close();
+
+        assertNull(pipeline.nextExtracted());
+        assertFalse(pipeline.decompiled("a"));
+        assertNull(pipeline.getFailure());
+    }
+}
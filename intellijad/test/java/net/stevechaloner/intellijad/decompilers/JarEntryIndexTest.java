@@ -0,0 +1,58 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JarEntryIndexTest {
+    private final JarEntryIndex index = JarEntryIndex.create("stamp", Arrays.asList(
+            "META-INF/MANIFEST.MF",
+            "Default.class",
+            "org/example/",
+            "org/example/Foo.class",
+            "org/example/Foo$Bar.class",
+            "org/example/Foo$Bar$Baz.class",
+            "org/example/Foo$1.class",
+            "org/example/FooBar.class",
+            "org/example/Foo$Bar2.class"));
+
+    @Test
+    public void testOuterClassIncludesAllNestedClasses() {
+        assertEquals(Arrays.asList("org/example/Foo.class",
+                "org/example/Foo$Bar.class",
+                "org/example/Foo$Bar$Baz.class",
+                "org/example/Foo$1.class",
+                "org/example/Foo$Bar2.class"), index.getEntries("org/example/Foo"));
+    }
+
+    @Test
+    public void testClassesWithCommonPrefixAreSeparate() {
+        assertEquals(Collections.singletonList("org/example/FooBar.class"), index.getEntries("org/example/FooBar"));
+    }
+
+    @Test
+    public void testNestedClassIncludesOnlyItsOwnNestedClasses() {
+        assertEquals(Arrays.asList("org/example/Foo$Bar.class",
+                "org/example/Foo$Bar$Baz.class"), index.getEntries("org/example/Foo$Bar"));
+    }
+
+    @Test
+    public void testDefaultPackage() {
+        assertEquals(Collections.singletonList("Default.class"), index.getEntries("Default"));
+    }
+
+    @Test
+    public void testUnknownClass() {
+        assertTrue(index.getEntries("org/example/Missing").isEmpty());
+    }
+
+    @Test
+    public void testOuterClassPath() {
+        assertEquals("a/b/C", JarEntryIndex.getOuterClassPath("a/b/C$D$1"));
+        assertEquals("a/b$c/D", JarEntryIndex.getOuterClassPath("a/b$c/D"));
+    }
+}
@@ -0,0 +1,84 @@
+package net.stevechaloner.intellijad.decompilers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScratchSpaceManagerTest {
+    private File tempDirectory;
+
+    private ScratchSpaceManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDirectory = FileUtil.createTempDirectory("scratch-test", null);
+        manager = new ScratchSpaceManager();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.delete(tempDirectory);
+    }
+
+    @Test
+    public void testLeasesAreExclusiveAndReused() throws IOException {
+        ScratchSpaceManager.Lease first = manager.lease(tempDirectory);
+        ScratchSpaceManager.Lease second = manager.lease(tempDirectory);
+        assertFalse(first.getDirectory().equals(second.getDirectory()));
+        assertTrue(first.getDirectory().isDirectory());
+        assertEquals(2, manager.getLiveLeases());
+
+        write(new File(first.getDirectory(), "A.class"), 10);
+        assertEquals(10, manager.getBytesOnDisk());
+
+        first.release();
+        first.release();
+        assertFalse(first.getDirectory().exists());
+        assertEquals(1, manager.getLiveLeases());
+
+        ScratchSpaceManager.Lease third = manager.lease(tempDirectory);
+        assertEquals(first.getDirectory(), third.getDirectory());
+        assertTrue(third.getDirectory().isDirectory());
+        assertEquals(0, manager.getBytesOnDisk());
+    }
+
+    @Test
+    public void testRemovesStaleDirectories() throws IOException {
+        long old = System.currentTimeMillis() - 2L * 60 * 60 * 1000;
+        File staleSession = new File(tempDirectory, "intellijad-scratch/session-1-1");
+        File recentSession = new File(tempDirectory, "intellijad-scratch/session-2-2");
+        File legacy = new File(tempDirectory, "ij1392000000000");
+        File unrelated = new File(tempDirectory, "unrelated");
+        for (File directory : new File[]{staleSession, recentSession, legacy, unrelated}) {
+            assertTrue(directory.mkdirs());
+        }
+        assertTrue(staleSession.setLastModified(old));
+        assertTrue(legacy.setLastModified(old));
+        assertTrue(unrelated.setLastModified(old));
+
+        manager.removeStale(tempDirectory);
+
+        assertFalse(staleSession.exists());
+        assertFalse(legacy.exists());
+        assertTrue(recentSession.exists());
+        assertTrue(unrelated.exists());
+    }
+
+    private static void write(File file, int size) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.stevechaloner.intellijad.decompilers.jad;
+
+import net.stevechaloner.intellijad.decompilers.DecompilationOutcome;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JadOutputClassifierTest {
+
+    @Test
+    public void testSuccess() {
+        assertEquals(DecompilationOutcome.SUCCESS, JadOutputClassifier.classify(0, "", 100));
+    }
+
+    @Test
+    public void testWarningsWithOutput() {
+        assertEquals(DecompilationOutcome.NON_FATAL_ERROR,
+                JadOutputClassifier.classify(0, "Couldn't fully decompile method foo", 100));
+    }
+
+    @Test
+    public void testUnsupportedClassVersion() {
+        DecompilationOutcome outcome = JadOutputClassifier.classify(0,
+                "Parsing A.class... The class file version is 50.0 (only 45.3, 46.0 and 47.0 are supported)",
+                0);
+
+        assertEquals(DecompilationOutcome.UNSUPPORTED_CLASS_VERSION, outcome);
+        assertFalse(outcome.isRetryable());
+    }
+
+    @Test
+    public void testTransientFailures() {
+        assertEquals(DecompilationOutcome.TRANSIENT_FAILURE,
+                JadOutputClassifier.classify(1, "ERROR: Can't open input file A.class", 0));
+        assertEquals(DecompilationOutcome.TRANSIENT_FAILURE,
+                JadOutputClassifier.classify(0, "", 0));
+        assertTrue(DecompilationOutcome.TRANSIENT_FAILURE.isRetryable());
+    }
+
+    @Test
+    public void testCrash() {
+        DecompilationOutcome outcome = JadOutputClassifier.classify(139, "Segmentation fault", 0);
+
+        assertEquals(DecompilationOutcome.DECOMPILER_CRASH, outcome);
+        assertFalse(outcome.isRetryable());
+    }
+}
@@ -0,0 +1,79 @@
+package net.stevechaloner.intellijad.format;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class LineMappingTest {
+
+    @Test
+    public void testMapsLinesBothWays() {
+        LineMapping mapping = LineMapping.parse("/* Decompiled through IntelliJad */\n"
+                + "package a;\n"
+                + "public class A\n"
+                + "{\n"
+                + "    public int sum(int ai[])\n"
+                + "    {\n"
+                + "/*  11*/        int i = 0;\n"
+                + "/*  12*/        for(int j = 0; j < ai.length; j++)\n"
+                + "/*  13*/            i += ai[j];\n"
+                + "\n"
+                + "/*  15*/        return i;\n"
+                + "    }\n"
+                + "}\n");
+
+        assertFalse(mapping.isEmpty());
+        assertEquals(6, mapping.getDocumentLine(11));
+        assertEquals(8, mapping.getDocumentLine(13));
+        assertEquals(10, mapping.getDocumentLine(15));
+        assertEquals(-1, mapping.getDocumentLine(14));
+        assertEquals(12, mapping.getOriginalLine(7));
+        assertEquals(15, mapping.getOriginalLine(10));
+        assertEquals(-1, mapping.getOriginalLine(9));
+        assertEquals(-1, mapping.getOriginalLine(0));
+    }
+
+    @Test
+    public void testMapsAnOriginalLineToItsFirstDocumentLine() {
+        LineMapping mapping = LineMapping.parse("class A {\r\n"
+                + "    /*  21*/ B() {\r\n"
+                + "/*   7*/        super();\r\n"
+                + "/*   7*/        b = 1;\r"
+                + "/*   3*/        c = 2;\r\n"
+                + "    }\r\n"
+                + "}");
+
+        assertEquals(2, mapping.getDocumentLine(7));
+        assertEquals(4, mapping.getDocumentLine(3));
+        assertEquals(1, mapping.getDocumentLine(21));
+        assertEquals(7, mapping.getOriginalLine(3));
+        assertEquals(3, mapping.getOriginalLine(4));
+    }
+
+    @Test
+    public void testSnapsUnmarkedLinesToTheClosestMarker() {
+        LineMapping mapping = LineMapping.parse("class A {\n"
+                + "/*  10*/    int a;\n"
+                + "/*  14*/    int b;\n"
+                + "/*  20*/    int c;\n"
+                + "}\n");
+
+        assertEquals(2, mapping.getNearestDocumentLine(14));
+        assertEquals(1, mapping.getNearestDocumentLine(12));
+        assertEquals(2, mapping.getNearestDocumentLine(13));
+        assertEquals(2, mapping.getNearestDocumentLine(16));
+        assertEquals(3, mapping.getNearestDocumentLine(18));
+        assertEquals(1, mapping.getNearestDocumentLine(1));
+        assertEquals(3, mapping.getNearestDocumentLine(400));
+        assertEquals(-1, LineMapping.EMPTY.getNearestDocumentLine(12));
+    }
+
+    @Test
+    public void testIgnoresSourcesWithoutLineNumbers() {
+        assertSame(LineMapping.EMPTY, LineMapping.parse("class A {\n    /* a comment */\n}\n"));
+        assertSame(LineMapping.EMPTY, LineMapping.parse(""));
+        assertSame(LineMapping.EMPTY, LineMapping.parse("/* 12345678901*/ int i;"));
+    }
+}
@@ -0,0 +1,196 @@
+package net.stevechaloner.intellijad.format;
+
+import net.stevechaloner.intellijad.util.OsUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The expected sources are the output of the original, object based implementation, which the single-pass one
+ * must reproduce exactly, quirks included.
+ */
+public class SourceReorganiserTest {
+
+    @Test
+    public void testMovesLinesToTheirLineNumbers() {
+        String source = jad("// Decompiled by Jad v1.5.8g.",
+                "",
+                "package a;",
+                "",
+                "public class A",
+                "{",
+                "",
+                "    public A()",
+                "    {",
+                "/*   7*/        count = 0;",
+                "    }",
+                "",
+                "    public int sum(int ai[])",
+                "    {",
+                "/*  11*/        int i = 0;",
+                "/*  12*/        for(int j = 0; j < ai.length; j++)",
+                "/*  13*/            i += ai[j];",
+                "",
+                "/*  15*/        return i;",
+                "    }",
+                "",
+                "    private int count;",
+                "}");
+
+        assertEquals(reorganised("// Decompiled by Jad v1.5.8g.",
+                "package a;",
+                "",
+                "public class A {",
+                "",
+                "    public A() {",
+                "        count = 0;",
+                "    }",
+                "",
+                "    public int sum(int ai[]) {",
+                "        int i = 0;",
+                "        for(int j = 0; j < ai.length; j++)",
+                "            i += ai[j];",
+                "",
+                "        return i;",
+                "    }",
+                "",
+                "    private int count;",
+                "}"), SourceReorganiser.reorganise(source));
+    }
+
+    @Test
+    public void testNotesLinesWhoseNumberHasPassed() {
+        String source = jad("// Decompiled by Jad v1.5.8g.",
+                "",
+                "package a;",
+                "",
+                "public class B",
+                "{",
+                "",
+                "    public String describe(int i)",
+                "    {",
+                "/*   6*/        switch(i)",
+                "        {",
+                "        case 1: // '\\001'",
+                "/*   8*/            return \"one\";",
+                "",
+                "        case 2: // '\\002'",
+                "/*  10*/            return \"two \"",
+                "                        + i;",
+                "        }",
+                "/*  12*/        return \"many\";",
+                "    }",
+                "",
+                "    public void loop()",
+                "    {",
+                "/*  16*/        do",
+                "/*  17*/            tick();",
+                "/*  18*/        while(running);",
+                "/*  16*/        if(done)",
+                "/*  20*/            stop();",
+                "    }",
+                "}");
+
+        assertEquals(reorganised("// Decompiled by Jad v1.5.8g.package a;",
+                "",
+                "public class B {",
+                "",
+                "    public String describe(int i) {",
+                "        switch(i) {",
+                "        case 1: // '\\001'",
+                "            return \"one\";",
+                "        case 2: // '\\002'",
+                "            return \"two \"                        + i;",
+                "        }",
+                "        return \"many\";",
+                "    }",
+                "",
+                "    public void loop() {",
+                "// off: if(done)        do",
+                "            tick();",
+                "        while(running);/*  */        if(done)",
+                "",
+                "            stop();",
+                "    }",
+                "}"), SourceReorganiser.reorganise(source));
+    }
+
+    @Test
+    public void testSortsBlocksByLineNumber() {
+        String source = jad("// Decompiled by Jad v1.5.8g.",
+                "",
+                "package a;",
+                "",
+                "public class C",
+                "{",
+                "",
+                "    public void run()",
+                "    {",
+                "/*  10*/        try",
+                "        {",
+                "/*  11*/            open();",
+                "        }",
+                "/*  13*/        catch(Exception exception)",
+                "        {",
+                "/*  14*/            exception.printStackTrace();",
+                "        }",
+                "/*  16*/        if(closed) {",
+                "/*  17*/            reopen();",
+                "        } else {",
+                "/*  19*/            close();",
+                "        }",
+                "/*   9*/        start();",
+                "    }",
+                "}");
+
+        assertEquals(reorganised("",
+                "// Decompiled by Jad v1.5.8g.",
+                "",
+                "package a;",
+                "",
+                "public class C {",
+                "",
+                "    public void run() {",
+                "        start();",
+                "        try {",
+                "            open();",
+                "        }",
+                "        catch(Exception exception) {",
+                "            exception.printStackTrace();",
+                "        }",
+                "        if(closed) {",
+                "            reopen();        }",
+                "        else {",
+                "            close();",
+                "        }",
+                "    }",
+                "}"), SourceReorganiser.reorganise(source));
+    }
+
+    @Test
+    public void testReadsAllLineSeparators() {
+        String source = "// Decompiled by Jad\r\npublic class D\r{\n/*   4*/    int i;\r\n}\r\n";
+
+        assertEquals(reorganised("",
+                "// Decompiled by Jad",
+                "public class D {",
+                "    int i;",
+                "}"), SourceReorganiser.reorganise(source));
+    }
+
+    private static String jad(String... lines) {
+        return join(lines, "\n") + "\n";
+    }
+
+    private static String reorganised(String... lines) {
+        return join(lines, OsUtil.lineSeparator());
+    }
+
+    private static String join(String[] lines, String separator) {
+        StringBuilder sb = new StringBuilder(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            sb.append(separator).append(lines[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedOutputStreamTest {
+
+    @Test
+    public void testPassesOutputWithinLimit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BoundedOutputStream bounded = new BoundedOutputStream(out, 5);
+
+        bounded.write("abc".getBytes("UTF-8"));
+        bounded.write('d');
+
+        assertEquals("abcd", out.toString("UTF-8"));
+        assertFalse(bounded.isTruncated());
+    }
+
+    @Test
+    public void testDropsOutputBeyondLimit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BoundedOutputStream bounded = new BoundedOutputStream(out, 5);
+
+        bounded.write("abcd".getBytes("UTF-8"));
+        bounded.write("efgh".getBytes("UTF-8"));
+        bounded.write('i');
+
+        assertEquals("abcde", out.toString("UTF-8"));
+        assertTrue(bounded.isTruncated());
+    }
+
+    @Test
+    public void testUnlimited() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BoundedOutputStream bounded = new BoundedOutputStream(out, 0);
+
+        bounded.write(new byte[100000]);
+
+        assertEquals(100000, out.size());
+        assertFalse(bounded.isTruncated());
+    }
+}
@@ -0,0 +1,67 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputBufferTest {
+
+    @Test
+    public void testKeepsSmallOutputInMemory() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(null, 16);
+
+        buffer.write("class A {}".getBytes());
+
+        assertFalse(buffer.isSpilled());
+        assertEquals(10, buffer.size());
+        assertEquals("class A {}", buffer.toString());
+    }
+
+    @Test
+    public void testSpillsLargeOutputToDisk() throws IOException {
+        File directory = createDirectory();
+        OutputBuffer buffer = new OutputBuffer(directory, 16);
+
+        buffer.write("package a;\n".getBytes());
+        buffer.write("class A { int field; }".getBytes());
+        buffer.write('\n');
+
+        assertTrue(buffer.isSpilled());
+        assertEquals(1, directory.list().length);
+        assertEquals("package a;\nclass A { int field; }\n", read(buffer));
+
+        StringBuilder sb = new StringBuilder("// header\n");
+        buffer.appendTo(sb);
+        assertEquals("// header\npackage a;\nclass A { int field; }\n", sb.toString());
+
+        buffer.dispose();
+        assertEquals(0, directory.list().length);
+        assertEquals(0, buffer.size());
+        directory.delete();
+    }
+
+    private static String read(OutputBuffer buffer) throws IOException {
+        InputStream in = buffer.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamPumper.pump(in, out);
+            return out.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("output-buffer", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        return directory;
+    }
+}
@@ -0,0 +1,246 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compares the latency of draining the output of a process with the pumps of {@link ProcessGobbler} against the
+ * pumps it replaced, which ran on two new threads per process, read 512 bytes at a time and slept whenever a read
+ * returned nothing.
+ * <p>
+ * The process is simulated by a thread writing its output and error into pipes as large as an operating system
+ * pipe, and the latency is measured from the start of the process until its output is complete.  The Ant build
+ * has no JMH, so this is run by hand: <code>java net.stevechaloner.intellijad.util.StreamPumperBenchmark</code>
+ * with the test classpath.
+ * </p>
+ */
+public class StreamPumperBenchmark {
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final int ERROR_SIZE = 120;
+
+    private static final int WARM_UP = 200;
+
+    private static final int RUNS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {4 * 1024, 64 * 1024, 1024 * 1024};
+        ExecutorService pumps = ProcessGobbler.createPumpExecutor();
+        try {
+            System.out.println("output     implementation  median (us)  p99 (us)");
+            for (int size : sizes) {
+                report(size, "polling", measure(new PollingPumps(), size));
+                report(size, "blocking", measure(new BlockingPumps(pumps), size));
+            }
+        } finally {
+            pumps.shutdown();
+        }
+    }
+
+    private static long[] measure(Pumps pumps,
+                                  int size) throws Exception {
+        byte[] output = new byte[size];
+        byte[] error = new byte[ERROR_SIZE];
+        Arrays.fill(output, (byte) 'a');
+        Arrays.fill(error, (byte) 'e');
+        long[] latencies = new long[RUNS];
+        for (int i = 0; i < WARM_UP + RUNS; i++) {
+            long latency = run(pumps, output, error);
+            if (i >= WARM_UP) {
+                latencies[i - WARM_UP] = latency;
+            }
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static long run(Pumps pumps,
+                            byte[] output,
+                            byte[] error) throws Exception {
+        PipedOutputStream outputSink = new PipedOutputStream();
+        PipedOutputStream errorSink = new PipedOutputStream();
+        PipedInputStream outputSource = new PipedInputStream(outputSink, PIPE_SIZE);
+        PipedInputStream errorSource = new PipedInputStream(errorSink, PIPE_SIZE);
+        ByteArrayOutputStream pumpedOutput = new ByteArrayOutputStream(output.length);
+        ByteArrayOutputStream pumpedError = new ByteArrayOutputStream(error.length);
+
+        long start = System.nanoTime();
+        Thread process = new Thread(new FakeProcess(outputSink, errorSink, output, error));
+        process.start();
+        pumps.drain(process, outputSource, pumpedOutput, errorSource, pumpedError);
+        long latency = System.nanoTime() - start;
+
+        if (pumpedOutput.size() != output.length || pumpedError.size() != error.length) {
+            throw new IllegalStateException("Output lost: " + pumpedOutput.size() + " of " + output.length
+                                            + " bytes, " + pumpedError.size() + " of " + error.length + " error bytes");
+        }
+        return latency;
+    }
+
+    private static void report(int size,
+                               String implementation,
+                               long[] latencies) {
+        System.out.println(String.format("%7d KB  %-14s  %11d  %8d",
+                                         size / 1024,
+                                         implementation,
+                                         latencies[latencies.length / 2] / 1000,
+                                         latencies[latencies.length * 99 / 100] / 1000));
+    }
+
+    /**
+     * Drains a process.
+     */
+    private interface Pumps {
+        void drain(Thread process,
+                   InputStream output,
+                   OutputStream outputSink,
+                   InputStream error,
+                   OutputStream errorSink) throws Exception;
+    }
+
+    /**
+     * The pumps of {@link ProcessGobbler}: blocking reads on the shared executor, until the end of the streams.
+     */
+    private static class BlockingPumps implements Pumps {
+        private final ExecutorService executor;
+
+        BlockingPumps(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        public void drain(Thread process,
+                          final InputStream output,
+                          final OutputStream outputSink,
+                          final InputStream error,
+                          final OutputStream errorSink) throws Exception {
+            Future<?> outputPump = executor.submit(new Pump(output, outputSink));
+            Future<?> errorPump = executor.submit(new Pump(error, errorSink));
+            process.join();
+            outputPump.get();
+            errorPump.get();
+        }
+    }
+
+    private static class Pump implements Runnable {
+        private final InputStream in;
+
+        private final OutputStream out;
+
+        Pump(InputStream in,
+             OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        public void run() {
+            try {
+                StreamPumper.pump(in, out);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The pumps replaced by {@link ProcessGobbler}.  They were stopped without being waited for once the process
+     * finished, which could lose its last output, here they're also run to the end of their streams and joined,
+     * so the output is complete and the latency is the best they could do.
+     */
+    private static class PollingPumps implements Pumps {
+        public void drain(Thread process,
+                          InputStream output,
+                          OutputStream outputSink,
+                          InputStream error,
+                          OutputStream errorSink) throws Exception {
+            PollingPump outputPump = new PollingPump(output, outputSink);
+            PollingPump errorPump = new PollingPump(error, errorSink);
+            Thread outputThread = new Thread(outputPump);
+            Thread errorThread = new Thread(errorPump);
+            outputThread.start();
+            errorThread.start();
+            process.join();
+            outputPump.pump.set(false);
+            errorPump.pump.set(false);
+            outputThread.join();
+            errorThread.join();
+        }
+    }
+
+    private static class PollingPump implements Runnable {
+        private final AtomicBoolean pump = new AtomicBoolean(true);
+
+        private final InputStream in;
+
+        private final OutputStream out;
+
+        PollingPump(InputStream in,
+                    OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        public void run() {
+            try {
+                byte[] buffer = new byte[512];
+                while (true) {
+                    int read = in.read(buffer, 0, buffer.length);
+                    if (read > 0) {
+                        out.write(buffer, 0, read);
+                    } else if (read < 0 && !pump.get()) {
+                        break;
+                    } else {
+                        Thread.sleep(5);
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the output and error of a process in chunks, the way Jad flushes them.
+     */
+    private static class FakeProcess implements Runnable {
+        private final OutputStream output;
+
+        private final OutputStream error;
+
+        private final byte[] outputContent;
+
+        private final byte[] errorContent;
+
+        FakeProcess(OutputStream output,
+                    OutputStream error,
+                    byte[] outputContent,
+                    byte[] errorContent) {
+            this.output = output;
+            this.error = error;
+            this.outputContent = outputContent;
+            this.errorContent = errorContent;
+        }
+
+        public void run() {
+            try {
+                error.write(errorContent);
+                error.close();
+                for (int i = 0; i < outputContent.length; i += CHUNK_SIZE) {
+                    output.write(outputContent, i, Math.min(CHUNK_SIZE, outputContent.length - i));
+                }
+                output.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
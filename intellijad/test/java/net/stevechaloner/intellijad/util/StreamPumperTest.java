@@ -0,0 +1,59 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StreamPumperTest {
+
+    @Test
+    public void testPumpsLargeInputCompletely() throws IOException {
+        byte[] content = new byte[StreamPumper.MAX_BUFFER_SIZE * 3 + 17];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long pumped = StreamPumper.pump(new ByteArrayInputStream(content), out);
+
+        assertEquals(content.length, pumped);
+        assertArrayEquals(content, out.toByteArray());
+    }
+
+    @Test
+    public void testPumpsUntilEndOfStream() throws Exception {
+        final PipedOutputStream source = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(source);
+        final byte[] tail = new byte[100];
+        Arrays.fill(tail, (byte) 'x');
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    source.write('a');
+                    // a slow writer must not end the pump early
+                    Thread.sleep(50);
+                    source.write(tail);
+                    source.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long pumped = StreamPumper.pump(in, out);
+        writer.join();
+
+        assertEquals(tail.length + 1, pumped);
+        assertEquals('a', out.toByteArray()[0]);
+    }
+}
@@ -0,0 +1,90 @@
+package net.stevechaloner.intellijad.util;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TextStreamerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testDecodesCharactersSplitBetweenWrites() throws IOException {
+        TextStreamer streamer = new TextStreamer(UTF_8, new Counter());
+        byte[] bytes = "String s = \"\u00e9\u20ac\";\r\n".getBytes(UTF_8);
+        OutputBuffer buffer = new OutputBuffer(null);
+        buffer.setListener(streamer);
+
+        for (byte b : bytes) {
+            buffer.write(b);
+        }
+
+        assertEquals("String s = \"\u00e9\u20ac\";\n", streamer.take().getText());
+        assertEquals(bytes.length, buffer.size());
+    }
+
+    @Test
+    public void testNormalisesLineSeparatorsSplitBetweenWrites() {
+        TextStreamer streamer = new TextStreamer(UTF_8, new Counter());
+
+        write(streamer, "class A {\r");
+        write(streamer, "\n}\r");
+        write(streamer, "\r\n");
+
+        assertEquals("class A {\n}\n\n", streamer.take().getText());
+    }
+
+    @Test
+    public void testTellsOnlyWhenTextBecomesAvailable() {
+        Counter counter = new Counter();
+        TextStreamer streamer = new TextStreamer(UTF_8, counter);
+
+        write(streamer, "package a;\n");
+        write(streamer, "class A {}\n");
+        assertEquals(1, counter.count);
+
+        TextStreamer.Chunk chunk = streamer.take();
+        assertEquals("package a;\nclass A {}\n", chunk.getText());
+        assertFalse(chunk.isReplacing());
+        assertNull(streamer.take());
+
+        write(streamer, "\n");
+        assertEquals(2, counter.count);
+    }
+
+    @Test
+    public void testReplacesTheTextTakenBeforeOnceDiscarded() throws IOException {
+        TextStreamer streamer = new TextStreamer(UTF_8, new Counter());
+        OutputBuffer buffer = new OutputBuffer(null);
+        buffer.setListener(streamer);
+
+        buffer.write("class A {".getBytes(UTF_8));
+        streamer.take();
+        buffer.write("\r".getBytes(UTF_8));
+        buffer.dispose();
+        assertNull(streamer.take());
+
+        buffer.write("\nclass A {}".getBytes(UTF_8));
+        TextStreamer.Chunk chunk = streamer.take();
+        assertEquals("\nclass A {}", chunk.getText());
+        assertTrue(chunk.isReplacing());
+    }
+
+    private static void write(TextStreamer streamer, String text) {
+        byte[] bytes = text.getBytes(UTF_8);
+        streamer.written(bytes, 0, bytes.length);
+    }
+
+    private static class Counter implements Runnable {
+        int count;
+
+        public void run() {
+            count++;
+        }
+    }
+}